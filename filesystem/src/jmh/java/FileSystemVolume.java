@@ -0,0 +1,52 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import benchmark.Volume;
+
+/**
+ * {@link FileSystem} для бенчмарков из пакета benchmark
+ */
+public class FileSystemVolume implements Volume {
+	private FileSystem fs = new FileSystem();
+
+	public void createNewFile(String fileName) {
+		fs.createNewFile(fileName);
+	}
+
+	public void appendToFile(String fileName, String text) {
+		fs.appendToFile(fileName, text);
+	}
+
+	public void writeToFile(String fileName, String text) {
+		fs.writeToFile(fileName, text);
+	}
+
+	public String readFile(String fileName) {
+		return fs.readFile(fileName);
+	}
+
+	public int getFileSize(String fileName) {
+		return fs.getFileSize(fileName);
+	}
+
+	public void dir(PrintStream out) {
+		fs.dir(out);
+	}
+
+	public void undo(int count) {
+		fs.undo(count);
+	}
+
+	public void createFileSystemImage(File file) throws IOException {
+		fs.createFileSystemImage(file);
+	}
+
+	public void saveAsync(File file) throws IOException {
+		fs.saveAsync(file).join();
+	}
+
+	public void loadFileSystem(File file) throws IOException {
+		fs.loadFileSystem(file);
+	}
+}
@@ -0,0 +1,65 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Дозапись в файл: маленькие куски (внутри одного кластера)
+ * и куски, занимающие несколько кластеров.
+ * Итерация - {@link #BATCH} дозаписей в новую ФС, ФС создается вне замера:
+ * больше дозаписей крупными кусками в нее не влезает.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 200)
+@Measurement(iterations = 1000)
+@Fork(value = 2, jvmArgsAppend = "-Dfile.encoding=UTF8")
+@State(Scope.Thread)
+public class AppendBenchmark {
+	/**
+	 * 100 кусков по 600 байт еще помещаются в {@link FileSystemBenchmarks#CAPACITY}
+	 */
+	static final int BATCH = 100;
+	private static final String FILE = "file";
+
+	/**
+	 * 16 байт - внутри кластера, 600 байт - больше двух кластеров
+	 */
+	@Param({ "16", "600" })
+	int payloadSize;
+
+	private String payload;
+	private Volume fs;
+
+	@Setup
+	public void setUp() {
+		payload = FileSystemBenchmarks.text(payloadSize);
+	}
+
+	@Setup(Level.Iteration)
+	public void newVolume() {
+		fs = FileSystemBenchmarks.newVolume();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public Volume appendToFile() {
+		for (int i = 0; i < BATCH; ++i) {
+			fs.appendToFile(FILE, payload);
+		}
+		return fs;
+	}
+}
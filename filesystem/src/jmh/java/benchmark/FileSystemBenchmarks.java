@@ -0,0 +1,72 @@
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Общие заготовки для бенчмарков ФС
+ */
+final class FileSystemBenchmarks {
+	/**
+	 * байт данных в кластере
+	 */
+	static final int CLUSTER_DATA = 255;
+	/**
+	 * байт данных во всей ФС
+	 */
+	static final int CAPACITY = CLUSTER_DATA * 255;
+
+	private static final String VOLUME_CLASS = "FileSystemVolume";
+
+	/**
+	 * Поток, выбрасывающий все, что в него пишут
+	 */
+	static final PrintStream NULL_OUT = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+
+	private FileSystemBenchmarks() {
+	}
+
+	/**
+	 * Новая пустая ФС
+	 */
+	static Volume newVolume() {
+		try {
+			return (Volume) Class.forName(VOLUME_CLASS).newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static String text(int length) {
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; ++i) {
+			text.append((char) ('a' + i % 26));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * ФС из files файлов, занимающих size байт в сумме
+	 */
+	static Volume fill(int files, int size) {
+		return fill(FileSystemBenchmarks.newVolume(), files, size);
+	}
+
+	/**
+	 * Записывает в fs files файлов, занимающих size байт в сумме (прежнее содержимое этих файлов стирается)
+	 */
+	static Volume fill(Volume fs, int files, int size) {
+		for (int i = 0; i < files; ++i) {
+			fs.writeToFile("file" + i, text(size / files));
+		}
+		return fs;
+	}
+}
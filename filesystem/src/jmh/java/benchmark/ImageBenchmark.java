@@ -0,0 +1,82 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Сохранение и загрузка образа полностью занятой ФС
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Dfile.encoding=UTF8")
+@State(Scope.Thread)
+public class ImageBenchmark {
+	/**
+	 * число файлов, между которыми поделены все кластеры ФС
+	 */
+	@Param({ "1", "255" })
+	int files;
+
+	/**
+	 * сколько событий дописать в журнал сверх событий заполнения (четное:
+	 * события идут парами - дописывание и его откат)
+	 */
+	@Param({ "0", "10000" })
+	int extraLog;
+
+	private Volume fs;
+	private Volume loaded;
+	private File image;
+
+	@Setup
+	public void setUp() throws IOException {
+		// журнал растет до заполнения: в полной ФС дописывать некуда,
+		// а новые файлы не поместились бы в таблицу файлов
+		fs = FileSystemBenchmarks.newVolume();
+		for (int i = 0; i < extraLog / 2; ++i) {
+			fs.appendToFile("file0", "x");
+			fs.undo(1);
+		}
+		FileSystemBenchmarks.fill(fs, files, FileSystemBenchmarks.CAPACITY);
+		image = File.createTempFile("filesystem", ".img");
+		fs.createFileSystemImage(image);
+		loaded = FileSystemBenchmarks.newVolume();
+	}
+
+	@TearDown
+	public void tearDown() {
+		image.delete();
+	}
+
+	@Benchmark
+	public void createFileSystemImage() throws IOException {
+		fs.createFileSystemImage(image);
+	}
+
+	@Benchmark
+	public void saveAsync() throws IOException {
+		fs.saveAsync(image);
+	}
+
+	@Benchmark
+	public Volume loadFileSystem() throws IOException {
+		loaded.loadFileSystem(image);
+		return loaded;
+	}
+}
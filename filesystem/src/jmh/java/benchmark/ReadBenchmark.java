@@ -0,0 +1,58 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Чтение: содержимое файла, размер файла и листинг ФС
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Dfile.encoding=UTF8")
+@State(Scope.Benchmark)
+public class ReadBenchmark {
+	/**
+	 * размер читаемого файла: один кластер, 40 кластеров, почти вся ФС
+	 */
+	@Param({ "200", "10000", "60000" })
+	int fileSize;
+
+	private Volume fs;
+
+	@Setup
+	public void setUp() {
+		fs = FileSystemBenchmarks.fill(1, fileSize);
+		// листинг по 50 файлам
+		for (int i = 1; i < 50; ++i) {
+			fs.createNewFile("file" + i);
+		}
+	}
+
+	@Benchmark
+	public String readFile() {
+		return fs.readFile("file0");
+	}
+
+	@Benchmark
+	public int getFileSize() {
+		return fs.getFileSize("file0");
+	}
+
+	@Benchmark
+	public void dir() {
+		fs.dir(FileSystemBenchmarks.NULL_OUT);
+	}
+}
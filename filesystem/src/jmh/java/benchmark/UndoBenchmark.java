@@ -0,0 +1,53 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Откат k последних событий при разной длине журнала.
+ * Откат меняет ФС, поэтому журнал строится заново перед каждой итерацией,
+ * а итерация - один откат (вне замера остается построение журнала до 10000 событий).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 200)
+@Measurement(iterations = 500)
+@Fork(value = 2, jvmArgsAppend = "-Dfile.encoding=UTF8")
+@State(Scope.Thread)
+public class UndoBenchmark {
+	@Param({ "100", "1000", "10000" })
+	int logLength;
+
+	@Param({ "1", "10", "100" })
+	int count;
+
+	private Volume fs;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		fs = FileSystemBenchmarks.newVolume();
+		// создание и дозапись чередуются, места хватает на любую длину журнала
+		for (int i = 0; i < logLength; i += 2) {
+			fs.createNewFile("file" + (i % 100));
+			fs.appendToFile("file" + (i % 100), "x");
+		}
+	}
+
+	@Benchmark
+	public Volume undo() {
+		fs.undo(count);
+		return fs;
+	}
+}
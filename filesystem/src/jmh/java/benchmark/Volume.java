@@ -0,0 +1,33 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Операции ФС, которые меряют бенчмарки.
+ * JMH не работает с классами из пакета по умолчанию, а классы из именованного
+ * пакета не видят FileSystem, поэтому ФС подключается через этот интерфейс
+ * (реализация - FileSystemVolume в пакете по умолчанию).
+ */
+public interface Volume {
+	void createNewFile(String fileName);
+
+	void appendToFile(String fileName, String text);
+
+	void writeToFile(String fileName, String text);
+
+	String readFile(String fileName);
+
+	int getFileSize(String fileName);
+
+	void dir(PrintStream out);
+
+	void undo(int count);
+
+	void createFileSystemImage(File file) throws IOException;
+
+	void saveAsync(File file) throws IOException;
+
+	void loadFileSystem(File file) throws IOException;
+}
@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Scanner;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Пакетное выполнение команд ФС.
+ * Скрипт целиком разбирается в список команд, после чего команды выполняются
+ * подряд без приглашения, а их вывод буферизуется.
+ */
+class BatchRunner {
+	private static final String SUMMARY_FORMAT = "Выполнено команд: %d за %d мс (%.0f оп/с)";
+
+	private List<Command> commands;
+
+	private int executed = 0;
+
+	private long time = 0;
+
+	public BatchRunner(List<Command> commands) {
+		this.commands = commands;
+	}
+
+	/**
+	 * Разбирает скрипт в список команд.
+	 * Неизвестные команды пропускаются, так же как и в интерактивном режиме.
+	 * @param script
+	 * @return
+	 */
+	static BatchRunner parse(InputStream script) {
+		List<Command> commands = Lists.newArrayList();
+		Scanner reader = new Scanner(script);
+		Command command;
+		while (reader.hasNextLine()) {
+			command = Command.parse(reader.nextLine(), reader);
+			if (command != null) {
+				commands.add(command);
+			}
+		}
+		return new BatchRunner(commands);
+	}
+
+	/**
+	 * Выполняет команды до конца скрипта или до команды exit
+	 * @param fs
+	 * @param out - буферизованный поток для вывода команд, сбрасывается по окончании
+	 * @throws IOException
+	 */
+	public void run(FileSystem fs, PrintStream out) throws IOException {
+		run(fs, out, false);
+	}
+
+	/**
+	 * Выполняет команды до конца скрипта или до команды exit
+	 * @param fs
+	 * @param out - буферизованный поток для вывода команд, сбрасывается по окончании
+	 * @param transactional - выполнить весь скрипт одной транзакцией,
+	 * при ошибке все изменения скрипта откатываются
+	 * @throws IOException
+	 */
+	public void run(FileSystem fs, PrintStream out, boolean transactional) throws IOException {
+		long startTime = System.nanoTime();
+		executed = 0;
+		boolean completed = false;
+		if (transactional) {
+			fs.beginTransaction();
+		}
+		try {
+			for (Command command : commands) {
+				executed++;
+				if (!command.execute(fs, out)) {
+					break;
+				}
+			}
+			completed = true;
+		} finally {
+			if (transactional && fs.inTransaction()) {
+				if (completed) {
+					fs.commit();
+				} else {
+					fs.rollback();
+				}
+			}
+			time = System.nanoTime() - startTime;
+			out.flush();
+		}
+	}
+
+	public List<Command> getCommands() {
+		return commands;
+	}
+
+	/**
+	 * Число выполненных команд последнего запуска
+	 */
+	public int getExecuted() {
+		return executed;
+	}
+
+	/**
+	 * Время последнего запуска в наносекундах
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public String getSummary() {
+		double seconds = time / 1e9;
+		return String.format(SUMMARY_FORMAT, executed, time / 1000000,
+				seconds == 0 ? 0.0 : executed / seconds);
+	}
+}
@@ -0,0 +1,298 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Scanner;
+import java.util.function.BiConsumer;
+
+/**
+ * Команда оболочки ФС.
+ * Строка разбирается один раз, после чего команду можно выполнять
+ * как из интерактивного цикла, так и пакетом.
+ */
+class Command {
+	private static final String TOUCH = "touch";
+	private static final String SAVE = "save";
+	private static final String LOAD = "load";
+	private static final String SHOW = "show";
+	private static final String LOG = "log";
+	private static final String UNDO = "undo";
+	private static final String CAT = "cat";
+	private static final String EXIT = "exit";
+	private static final String DIR = "dir";
+	private static final String BEGIN = "begin";
+	private static final String COMMIT = "commit";
+	private static final String ROLLBACK = "rollback";
+	private static final String STATS = "stats";
+	private static final String GREP = "grep";
+	private static final String CHECKSUMS = "checksums";
+	private static final String ON = "on";
+	private static final String OFF = "off";
+	private static final String SCRUB = "scrub";
+	private static final String ARG_SEPARATOR = " ";
+	private static final String REMOVE = "rm";
+	private static final String REMOVE_FLAG = "-f";
+	private static final String BACKGROUND = "&";
+
+	private static final char REROUTING = '>';
+
+	private static final String FOUND = "%s:%d";
+	private static final String SAVED = "Образ %s сохранен (%d байт)";
+	private static final String SAVE_EXC = "Не удалось сохранить образ %s: %s";
+	private static final String SCRUB_EXC = "Не удалось проверить образ %s: %s";
+
+	private static final String UNDO_EXC = "Откат невозможен.\n Число отменяемых действий либо больше общего числа действий в журнале либо меньше нуля.";
+
+	CommandType type;
+	/**
+	 * имя файла ФС, имя файла реальной ФС или число отменяемых действий
+	 */
+	String argument;
+	/**
+	 * данные для cat > и cat >>, скорость проверки образа
+	 */
+	String payload;
+
+	public Command(CommandType type, String argument, String payload) {
+		this.type = type;
+		this.argument = argument;
+		this.payload = payload;
+	}
+
+	public Command(CommandType type, String argument) {
+		this(type, argument, null);
+	}
+
+	/**
+	 * Разбирает очередную команду.
+	 * Для cat >filename и cat >>filename данными считается следующая строка input
+	 * (пустая строка, если ввод кончился).
+	 * @param line - строка команды
+	 * @param input - откуда брать данные для записи в файл
+	 * @return команду или null, если строка не является известной командой
+	 */
+	static Command parse(String line, Scanner input) {
+		if (line.equals(EXIT)) {
+			return new Command(CommandType.EXIT, null);
+		} else if (line.equals(DIR)) {
+			return new Command(CommandType.DIR, null);
+		} else if (line.equals(BEGIN)) {
+			return new Command(CommandType.BEGIN, null);
+		} else if (line.equals(COMMIT)) {
+			return new Command(CommandType.COMMIT, null);
+		} else if (line.equals(ROLLBACK)) {
+			return new Command(CommandType.ROLLBACK, null);
+		} else if (line.equals(STATS)) {
+			return new Command(CommandType.STATS, null);
+		}
+		if (line.startsWith(GREP + ARG_SEPARATOR) && line.length() > GREP.length() + 1) {
+			// образец - вся строка после grep, может содержать пробелы
+			return new Command(CommandType.GREP, line.substring(GREP.length() + 1));
+		}
+		String[] parts = line.split(ARG_SEPARATOR);
+		if (parts.length < 2 || parts[1].length() == 0) {
+			return null;
+		}
+		if (parts[0].equals(CAT)) {
+			if (parts[1].charAt(0) == REROUTING) {
+				String payload = input.hasNextLine() ? input.nextLine() : "";
+				if (parts[1].length() > 1 && parts[1].charAt(1) == REROUTING) {
+					return new Command(CommandType.APPEND, parts[1].substring(2), payload);
+				}
+				return new Command(CommandType.WRITE, parts[1].substring(1), payload);
+			}
+			return new Command(CommandType.READ, parts[1]);
+		} else if (parts[0].equals(REMOVE)) {
+			if (parts[1].equals(REMOVE_FLAG) && parts.length > 2) {
+				return new Command(CommandType.REMOVE, parts[2]);
+			}
+		} else if (parts[0].equals(TOUCH)) {
+			return new Command(CommandType.TOUCH, parts[1]);
+		} else if (parts[0].equals(SAVE)) {
+			if (parts.length > 2 && parts[2].equals(BACKGROUND)) {
+				return new Command(CommandType.SAVE_ASYNC, parts[1]);
+			}
+			return new Command(CommandType.SAVE, parts[1]);
+		} else if (parts[0].equals(LOAD)) {
+			return new Command(CommandType.LOAD, parts[1]);
+		} else if (parts[0].equals(SHOW)) {
+			if (parts[1].equals(LOG)) {
+				return new Command(CommandType.SHOW_LOG, null);
+			}
+		} else if (parts[0].equals(UNDO)) {
+			return new Command(CommandType.UNDO, parts[1]);
+		} else if (parts[0].equals(CHECKSUMS)) {
+			if (parts[1].equals(ON) || parts[1].equals(OFF)) {
+				return new Command(CommandType.CHECKSUMS, parts[1]);
+			}
+		} else if (parts[0].equals(SCRUB)) {
+			return new Command(CommandType.SCRUB, parts[1], parts.length > 2 ? parts[2] : null);
+		}
+		return null;
+	}
+
+	/**
+	 * Выполняет команду над ФС
+	 * @param fs
+	 * @param out - куда выводить результат команды
+	 * @return false, если после этой команды работу надо завершить
+	 * @throws IOException
+	 */
+	boolean execute(FileSystem fs, PrintStream out) throws IOException {
+		switch (type) {
+		case TOUCH:
+			fs.createNewFile(argument);
+			break;
+		case READ:
+			out.println(fs.readFile(argument));
+			break;
+		case WRITE:
+			fs.writeToFile(argument, payload);
+			break;
+		case APPEND:
+			fs.appendToFile(argument, payload);
+			break;
+		case REMOVE:
+			fs.deleteFile(argument);
+			break;
+		case DIR:
+			fs.dir(out);
+			break;
+		case SAVE:
+			fs.createFileSystemImage(new File(argument));
+			break;
+		case SAVE_ASYNC:
+			saveAsync(fs, out);
+			break;
+		case LOAD:
+			fs.loadFileSystem(new File(argument));
+			break;
+		case SHOW_LOG:
+			fs.showLog(out);
+			break;
+		case STATS:
+			fs.getMetrics().dump(out);
+			break;
+		case GREP:
+			grep(fs, out);
+			break;
+		case CHECKSUMS:
+			fs.setChecksums(argument.equals(ON));
+			break;
+		case SCRUB:
+			scrub(out);
+			break;
+		case UNDO:
+			try {
+				fs.undo(Integer.valueOf(argument));
+			} catch (Exception e) {
+				out.println(UNDO_EXC);
+			}
+			break;
+		case BEGIN:
+		case COMMIT:
+		case ROLLBACK:
+			try {
+				transaction(fs);
+			} catch (IllegalStateException e) {
+				out.println(e.getMessage());
+			}
+			break;
+		case EXIT:
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Запускает сохранение в фоне, о результате сообщает в out по окончании
+	 */
+	private void saveAsync(FileSystem fs, final PrintStream out) throws IOException {
+		final ImageTransfer transfer = fs.saveAsync(new File(argument));
+		transfer.whenComplete(new BiConsumer<Void, Throwable>() {
+			public void accept(Void result, Throwable exc) {
+				if (exc == null) {
+					out.println(String.format(SAVED, argument, transfer.getBytesTransferred()));
+				} else {
+					out.println(String.format(SAVE_EXC, argument, exc.getMessage()));
+				}
+				out.flush();
+			}
+		});
+	}
+
+	/**
+	 * Выводит вхождения в виде файл:смещение по мере их нахождения
+	 */
+	private void grep(FileSystem fs, final PrintStream out) {
+		fs.grep(argument, new BiConsumer<String, Integer>() {
+			public void accept(String file, Integer offset) {
+				out.println(String.format(FOUND, file, offset));
+			}
+		});
+	}
+
+	/**
+	 * Запускает проверку образа в фоне, отчет выводит в out по окончании
+	 */
+	private void scrub(final PrintStream out) {
+		long rate;
+		try {
+			rate = payload == null ? 0 : Long.valueOf(payload);
+		} catch (NumberFormatException e) {
+			rate = 0;
+		}
+		new ImageScrubber(new File(argument), rate).start().whenComplete(new BiConsumer<ImageScrubber.Report, Throwable>() {
+			public void accept(ImageScrubber.Report report, Throwable exc) {
+				if (exc == null) {
+					out.print(report);
+					out.println();
+				} else {
+					out.println(String.format(SCRUB_EXC, argument, exc.getMessage()));
+				}
+				out.flush();
+			}
+		});
+	}
+
+	private void transaction(FileSystem fs) {
+		if (type == CommandType.BEGIN) {
+			fs.beginTransaction();
+		} else if (type == CommandType.COMMIT) {
+			fs.commit();
+		} else {
+			fs.rollback();
+		}
+	}
+
+	/**
+	 * @return true для команд, аргумент которых - файл образа на реальной ФС
+	 */
+	boolean isImageCommand() {
+		return type == CommandType.SAVE || type == CommandType.SAVE_ASYNC || type == CommandType.LOAD
+				|| type == CommandType.SCRUB;
+	}
+
+	/**
+	 * @return true для команд управления транзакцией
+	 */
+	boolean isTransactional() {
+		return type == CommandType.BEGIN || type == CommandType.COMMIT || type == CommandType.ROLLBACK;
+	}
+
+	public String toString() {
+		if (type == CommandType.SAVE_ASYNC) {
+			return SAVE + ARG_SEPARATOR + argument + ARG_SEPARATOR + BACKGROUND;
+		}
+		if (type == CommandType.SCRUB && payload != null) {
+			return SCRUB + ARG_SEPARATOR + argument + ARG_SEPARATOR + payload;
+		}
+		StringBuilder result = new StringBuilder(type.strValue);
+		if (argument != null) {
+			if (type != CommandType.WRITE && type != CommandType.APPEND) {
+				result.append(ARG_SEPARATOR);
+			}
+			result.append(argument);
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,35 @@
+/**
+ * Тип команды оболочки ФС
+ */
+enum CommandType {
+	TOUCH(0, "touch"), READ(1, "cat"), WRITE(2, "cat >"), APPEND(3, "cat >>"),
+	REMOVE(4, "rm -f"), DIR(5, "dir"), SAVE(6, "save"), LOAD(7, "load"),
+	SHOW_LOG(8, "show log"), UNDO(9, "undo"), EXIT(10, "exit"),
+	BEGIN(11, "begin"), COMMIT(12, "commit"), ROLLBACK(13, "rollback"),
+	SAVE_ASYNC(14, "save &"), STATS(15, "stats"),
+	GREP(16, "grep"), CHECKSUMS(17, "checksums"), SCRUB(18, "scrub");
+
+	byte value;
+	String strValue;
+
+	CommandType(int value, String strValue) {
+		this.value = (byte) value;
+		this.strValue = strValue;
+	}
+
+	public byte byteValue() {
+		return value;
+	}
+
+	/**
+	 * @return тип команды или null, если такого кода нет
+	 */
+	public static CommandType valueOf(byte b) {
+		for (CommandType type : values()) {
+			if (type.value == b) {
+				return type;
+			}
+		}
+		return null;
+	}
+}
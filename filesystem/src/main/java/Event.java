@@ -1,4 +1,5 @@
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 /**
  * Событие в ФС
@@ -16,6 +17,10 @@ class Event implements Comparable<Event>{
 	EventType type;
 	String text;
 	int curIndex;
+	/**
+	 * события транзакции в порядке их совершения (только для {@link EventType#TRANSACTION})
+	 */
+	List<Event> events;
 
 	public Event(EventType type, String file, String text, Date date){
 		this.type = type;
@@ -31,8 +36,9 @@ class Event implements Comparable<Event>{
 		this.text = text;
 		this.date = date;
 		curIndex = index;
-		if(Event.index.get() < index){
-			Event.index.set(index);
+		// журнал может разбираться в другом потоке, пока ФС логирует новые события
+		int current;
+		while((current = Event.index.get()) < index && !Event.index.compareAndSet(current, index)){
 		}
 	}
 
@@ -65,9 +71,9 @@ class Event implements Comparable<Event>{
 	}
 	
 	public String toString(){
-		if(type == EventType.UNDO){
-			return String.format(LOG_UNDO_FORMAT,  FileSystem.dateFormat.format(date), file, String.format(type.strValue, text));
+		if(type == EventType.UNDO || type == EventType.TRANSACTION){
+			return String.format(LOG_UNDO_FORMAT,  FileSystem.formatDate(date), file, String.format(type.strValue, text));
 		}
-		return String.format(LOG_FORMAT, FileSystem.dateFormat.format(date), file, String.format(type.strValue, text)) ;
+		return String.format(LOG_FORMAT, FileSystem.formatDate(date), file, String.format(type.strValue, text)) ;
 	}
 }
\ No newline at end of file
@@ -5,7 +5,7 @@
 enum EventType {
 	CREATE_FILE(0, "Был создан"), APPEND_TO_FILE(1, "Был дописан: %s"),
 	DELETE_FILE(2, "Был удален"), CLEAR_FILE(3, "Содержимое было удалено: %s"),
-	UNDO(4, "Откат последних %s действий");
+	UNDO(4, "Откат последних %s действий"), TRANSACTION(5, "Транзакция из %s действий");
 	
 	byte value;
 	String strValue;
@@ -31,6 +31,8 @@ enum EventType {
 			return CLEAR_FILE;
 		case 4:
 			return UNDO;
+		case 5:
+			return TRANSACTION;
 		default:
 			return null;
 		}
@@ -1,16 +1,37 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.io.RandomAccessFile;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Scanner;
 import java.util.Set;
-
-import org.apache.commons.lang3.ArrayUtils;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -54,6 +75,10 @@ import com.google.common.collect.Sets;
  *  <li>
  * Журнал нефиксированного размера
  * </li>
+ * <li>
+ * Необязательно: {@link #BLOCK_NUM} контрольных сумм CRC32 кластеров (по 4 байта)
+ * и 4 байта {@link #CHECKSUM_MAGIC}
+ * </li>
  *</ol>
  * <h1>
  * Структура кластера:
@@ -73,19 +98,42 @@ public class FileSystem {
 	 * 255 - секция данных кластера,</br>
 	 * 1 - номер следующего кластера файла
 	 */
-	private static final int BLOCK_SIZE = 257;
+	static final int BLOCK_SIZE = 257;
 	/**
 	 * Число кластеров в ФС
 	 */
-	private static final int BLOCK_NUM = 255;
+	static final int BLOCK_NUM = 255;
 
 	private static final int MAX_NAME_LEN = 126;
 	
-	private static final int FS_BLOCKS_STARTS = 256 + 1 + BLOCK_NUM * 128;
+	static final int FS_BLOCKS_STARTS = 256 + 1 + BLOCK_NUM * 128;
+	
+	/**
+	 * Признак контрольных сумм в конце образа.
+	 * Журнал всегда кончается цифрами индекса события, поэтому с ним не спутать.
+	 */
+	static final int CHECKSUM_MAGIC = 0xFEEDC0DE;
+	
+	/**
+	 * Размер контрольных сумм кластеров вместе с признаком
+	 */
+	static final int CHECKSUMS_SIZE = BLOCK_NUM * 4 + 4;
 	
-	private static final String DIR_FORMAT = "%63s | Размер: %4d байт\n";
+	/**
+	 * Число записей журнала, которые при загрузке разбираются одной задачей
+	 */
+	private static final int JOURNAL_CHUNK = 256;
 	
-	static final SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+	static final String DIR_FORMAT = "%63s | Размер: %4d байт\n";
+	
+	private static final String TRANSACTION_EXC = "Операция невозможна внутри транзакции.";
+	private static final String NO_TRANSACTION_EXC = "Транзакция не открыта.";
+	
+	/**
+	 * формат дат журнала, неизменяемый - тома и фоновые загрузки пользуются им одновременно
+	 */
+	static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss")
+			.withZone(ZoneId.systemDefault());
 
 	private int allocatedBlocks = 0;
 
@@ -98,6 +146,27 @@ public class FileSystem {
 	 * операций и все операции проводимые ФС не должны логироваться
 	 */
 	private boolean undoState = false;
+	
+	/**
+	 * события открытой транзакции в порядке их совершения,
+	 * null - если транзакция не открыта
+	 */
+	private List<Event> transaction = null;
+	
+	/**
+	 * сохранять ли в образ контрольные суммы кластеров
+	 */
+	private volatile boolean checksums = false;
+	
+	private final FileSystemMetrics metrics = new FileSystemMetrics(this);
+	
+	private final AtomicLong bytesWritten = new AtomicLong(0);
+	private final AtomicLong bytesRead = new AtomicLong(0);
+	
+	/**
+	 * незавершенные асинхронные сохранения и загрузки
+	 */
+	private final Set<ImageTransfer> transfers = Collections.newSetFromMap(new ConcurrentHashMap<ImageTransfer, Boolean>());
 
 	private static final class Block {
 		Block next;
@@ -122,132 +191,629 @@ public class FileSystem {
 	 * @param fs
 	 * @throws IOException
 	 */
-	public void loadFileSystem(File fs) throws IOException {
-		allocatedBlocks = 0;
-		files.clear();
-		log.clear();
-		
-		RandomAccessFile raf = new RandomAccessFile(fs, "r");
+	public synchronized void loadFileSystem(File fs) throws IOException {
+		long startTime = metrics.start();
+		try {
+			checkNoTransaction();
+			assign(readImage(fs));
+		} finally {
+			metrics.stop(OperationType.LOAD, startTime);
+		}
+	}
+	
+	/**
+	 * Читает и разбирает образ, не меняя содержимого ФС
+	 * @return новую ФС с содержимым образа, подменить ею эту ФС - {@link #assignLoaded(FileSystem)}
+	 * @throws IOException
+	 */
+	FileSystem readImage(File fs) throws IOException {
+		byte[] image = Files.readAllBytes(fs.toPath());
+		bytesRead.addAndGet(image.length);
+		return decodeImage(ByteBuffer.wrap(image));
+	}
+	
+	/**
+	 * Подменяет содержимое ФС содержимым разобранного образа
+	 */
+	synchronized void assignLoaded(FileSystem loaded) {
+		checkNoTransaction();
+		assign(loaded);
+	}
+	
+	/**
+	 * Асинхронно грузит ФС из файла.
+	 * Пока файл читается, ФС продолжает работать со старым содержимым,
+	 * новое содержимое подменяет его целиком после разбора образа.
+	 * @param fs
+	 * @return
+	 * @throws IOException - если файл не удалось открыть
+	 */
+	public ImageTransfer loadAsync(File fs) throws IOException {
+		synchronized (this) {
+			checkNoTransaction();
+		}
+		AsynchronousFileChannel channel = AsynchronousFileChannel.open(fs.toPath(), StandardOpenOption.READ);
+		final ByteBuffer image;
+		try {
+			image = ByteBuffer.allocate((int) channel.size());
+		} catch (IOException | RuntimeException | OutOfMemoryError e) {
+			// до передачи канал больше никто не закроет
+			channel.close();
+			throw e;
+		}
+		final long startTime = System.nanoTime();
+		return track(ImageTransfer.read(channel, image, bytesRead, new Runnable() {
+			public void run() {
+				image.clear();
+				FileSystem loaded = decodeImage(image);
+				synchronized (FileSystem.this) {
+					checkNoTransaction();
+					assign(loaded);
+				}
+				metrics.record(OperationType.LOAD_ASYNC, startTime);
+			}
+		}));
+	}
+	
+	/**
+	 * Сохраняет образ ФС в заданый файл, дефрагментируя его.
+	 * @throws IOException 
+	 */
+	public synchronized void createFileSystemImage(File fs) throws IOException {
+		long startTime = metrics.start();
+		try {
+			checkNoTransaction();
+			ByteBuffer image = encodeImage();
+			RandomAccessFile raf = new RandomAccessFile(fs, "rw");
+			try {
+				raf.setLength(image.remaining());
+				raf.write(image.array(), 0, image.remaining());
+			} finally {
+				raf.close();
+			}
+			bytesWritten.addAndGet(image.remaining());
+		} finally {
+			metrics.stop(OperationType.SAVE, startTime);
+		}
+	}
+	
+	/**
+	 * Асинхронно сохраняет образ ФС в заданый файл, дефрагментируя его.
+	 * Образ собирается в памяти сразу (это снимок ФС на момент вызова),
+	 * запись идет в фоне и не мешает дальнейшей работе с ФС.
+	 * @param fs
+	 * @return
+	 * @throws IOException - если файл не удалось открыть
+	 */
+	public ImageTransfer saveAsync(File fs) throws IOException {
+		final long startTime = System.nanoTime();
+		ByteBuffer image;
+		synchronized (this) {
+			checkNoTransaction();
+			image = encodeImage();
+		}
+		AsynchronousFileChannel channel = AsynchronousFileChannel.open(fs.toPath(),
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		return track(ImageTransfer.write(channel, image, bytesWritten, new Runnable() {
+			public void run() {
+				metrics.record(OperationType.SAVE_ASYNC, startTime);
+			}
+		}));
+	}
+	
+	private ImageTransfer track(final ImageTransfer transfer) {
+		transfers.add(transfer);
+		transfer.whenComplete(new BiConsumer<Void, Throwable>() {
+			public void accept(Void result, Throwable exc) {
+				transfers.remove(transfer);
+			}
+		});
+		return transfer;
+	}
+	
+	/**
+	 * Дожидается окончания всех асинхронных сохранений и загрузок.
+	 * Ошибки передач не пробрасываются - их надо обрабатывать через сами {@link ImageTransfer}
+	 */
+	public void awaitTransfers() {
+		for (ImageTransfer transfer : transfers) {
+			try {
+				transfer.join();
+			} catch (RuntimeException e) {
+				// обрабатывается владельцем передачи
+			}
+		}
+	}
+	
+	/**
+	 * Сколько байт образов записано ФС за все время
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+	
+	/**
+	 * Сколько байт образов прочитано ФС за все время
+	 */
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+	
+	/**
+	 * Включает или выключает запись контрольных сумм кластеров в образ
+	 * (их проверяет {@link ImageScrubber}).
+	 * При загрузке образа включается, если в образе они есть.
+	 */
+	public void setChecksums(boolean checksums) {
+		this.checksums = checksums;
+	}
+	
+	public boolean hasChecksums() {
+		return checksums;
+	}
+	
+	/**
+	 * Метрики операций ФС
+	 */
+	public FileSystemMetrics getMetrics() {
+		return metrics;
+	}
+	
+	synchronized int getAllocatedBlocks() {
+		return allocatedBlocks;
+	}
+	
+	synchronized int getFreeBlocks() {
+		return BLOCK_NUM - allocatedBlocks;
+	}
+	
+	/**
+	 * Доля незанятых байт в выделенных кластерах
+	 */
+	synchronized double getFragmentation() {
+		if (allocatedBlocks == 0) {
+			return 0;
+		}
+		long used = 0;
+		Block fileBlock;
+		for (Block first : files.values()) {
+			for (fileBlock = first; fileBlock != null; fileBlock = fileBlock.next) {
+				used += getUnsignedByteValue(fileBlock.usedBytes);
+			}
+		}
+		return 1 - (double) used / (allocatedBlocks * 255L);
+	}
+	
+	synchronized int getJournalLength() {
+		return log.size();
+	}
+	
+	/**
+	 * Размер журнала в образе ФС
+	 */
+	synchronized long getJournalBytes() {
+		byte[] logSize = String.valueOf(log.size()).getBytes();
+		long result = 1 + logSize.length;
+		for (Event event : log) {
+			result += getEventSize(event);
+		}
+		return result;
+	}
+	
+	/**
+	 * Последнее событие журнала, null - если журнал пуст
+	 */
+	synchronized Event getLastEvent() {
+		return log.isEmpty() ? null : log.iterator().next();
+	}
+	
+	/**
+	 * Копия журнала от старых событий к новым
+	 */
+	synchronized List<Event> getJournal() {
+		List<Event> result = Lists.newArrayList(log);
+		Collections.reverse(result);
+		return result;
+	}
+	
+	/**
+	 * Подменяет содержимое ФС содержимым другой ФС
+	 */
+	private void assign(FileSystem other) {
+		checksums = other.checksums;
+		allocatedBlocks = other.allocatedBlocks;
+		files = other.files;
+		log = other.log;
+	}
+	
+	/**
+	 * Разбирает образ ФС.
+	 * Таблица файлов, кластеры и журнал разбираются параллельно в {@link ForkJoinPool},
+	 * журнал - кусками по {@link #JOURNAL_CHUNK} записей, после чего кластеры
+	 * связываются в файлы одним проходом по массиву.
+	 * @param image - образ, начиная с текущей позиции
+	 * @return новую ФС с содержимым образа
+	 */
+	private static FileSystem decodeImage(ByteBuffer image) {
+		ByteBuffer header = image.slice();
 		byte[] unallocatedBlocks = new byte[256];
-		raf.read(unallocatedBlocks);
-		byte filesNum = raf.readByte();
+		header.get(unallocatedBlocks);
+		int filesNum = getUnsignedByteValue(header.get());
+		boolean[] allocated = getAllocatedClusters(unallocatedBlocks);
+		int cluster;
 		
-		byte nameLen;
-		byte[] name = new byte[MAX_NAME_LEN];
-		String fileName;
-		Map<String, Byte> tmpFiles = Maps.newTreeMap();
-		for (int i = 0; i < getUnsignedByteValue(filesNum); ++i) {
-			nameLen = raf.readByte();
-			raf.read(name);
-			fileName = new String(Arrays.copyOfRange(name, 0, nameLen));
-			tmpFiles.put(fileName, raf.readByte());
+		//границы записей журнала
+		ByteBuffer journal = header.duplicate();
+		journal.position(FS_BLOCKS_STARTS + BLOCK_SIZE * BLOCK_NUM);
+		int logSize = Integer.valueOf(new String(readBytes(journal, getUnsignedByteValue(journal.get()))));
+		int[] offsets = new int[logSize];
+		for (int i = 0; i < logSize; ++i) {
+			offsets[i] = journal.position();
+			skipEvent(journal);
 		}
 		
-		Map<Byte, Block> blocks = Maps.newHashMap();
-		Map<Block, Byte> blocksNext = Maps.newHashMap();
+		FileTableDecoder fileTable = new FileTableDecoder(header, filesNum);
+		ClusterDecoder clusters = new ClusterDecoder(header, allocated, new Block[BLOCK_NUM + 1], new int[BLOCK_NUM + 1], 1, BLOCK_NUM + 1);
+		JournalDecoder events = new JournalDecoder(header, offsets, 0, logSize);
+		ForkJoinPool.commonPool().invoke(new ImageDecoder(fileTable, clusters, events));
 		
-		int unallocatedBlockStarts;
-		byte allocatedBlockStarts = 1;
-
+		// перехреначить в связный список файлы
+		FileSystem result = new FileSystem();
+		result.checksums = hasChecksums(header);
+		Block[] blocks = clusters.blocks;
+		for (cluster = 1; cluster <= BLOCK_NUM; ++cluster) {
+			if (blocks[cluster] != null) {
+				result.allocatedBlocks++;
+				blocks[cluster].next = clusters.next[cluster] != 0 ? blocks[clusters.next[cluster]] : null;
+			}
+		}
+		for (int i = 0; i < filesNum; ++i) {
+			result.files.put(fileTable.names[i], blocks[fileTable.starts[i]]);
+		}
+		result.log.addAll(events.join());
+		return result;
+	}
+	
+	/**
+	 * Занятые кластеры по множеству свободных из заголовка образа:
+	 * занятые - все, что лежат между отрезками свободных,
+	 * 0 вместо начала отрезка - свободных кластеров больше нет
+	 * @param unallocatedBlocks - первые 256 байт образа
+	 * @return allocated[cluster] для кластеров с 1 по {@link #BLOCK_NUM}
+	 */
+	static boolean[] getAllocatedClusters(byte[] unallocatedBlocks) {
+		boolean[] allocated = new boolean[BLOCK_NUM + 1];
+		int cluster = 1;
 		int unallocatedBlocksIndex = 0;
-		Block block;
-		byte next; 
-		do{
+		int unallocatedBlockStarts;
+		int allocatedBlockEnds;
+		while (cluster <= BLOCK_NUM) {
 			unallocatedBlockStarts = getUnsignedByteValue(unallocatedBlocks[unallocatedBlocksIndex++]);
-			raf.seek(FS_BLOCKS_STARTS + (allocatedBlockStarts - 1) * BLOCK_SIZE);
-			while(getUnsignedByteValue(allocatedBlockStarts) < unallocatedBlockStarts){
-				block = getNewBlock();
-				
-				block.usedBytes = raf.readByte();
-				next = raf.readByte();
-				raf.read(block.data);
-				
-				blocks.put(allocatedBlockStarts, block);
-				if(next != 0){
-					blocksNext.put(block, next);
+			allocatedBlockEnds = unallocatedBlockStarts == 0 ? BLOCK_NUM + 1 : unallocatedBlockStarts;
+			for (; cluster < allocatedBlockEnds; ++cluster) {
+				allocated[cluster] = true;
+			}
+			if (unallocatedBlockStarts == 0) {
+				break;
+			}
+			cluster = getUnsignedByteValue(unallocatedBlocks[unallocatedBlocksIndex++]) + 1;
+		}
+		return allocated;
+	}
+	
+	/**
+	 * Есть ли в конце образа контрольные суммы кластеров
+	 * @param image - образ от 0 до limit
+	 */
+	private static boolean hasChecksums(ByteBuffer image) {
+		return image.limit() >= FS_BLOCKS_STARTS + BLOCK_SIZE * BLOCK_NUM + CHECKSUMS_SIZE
+				&& image.getInt(image.limit() - 4) == CHECKSUM_MAGIC;
+	}
+	
+	/**
+	 * Запускает разбор частей образа параллельно
+	 */
+	@SuppressWarnings("serial")
+	private static final class ImageDecoder extends RecursiveAction {
+		private ForkJoinTask<?>[] parts;
+		
+		ImageDecoder(ForkJoinTask<?>... parts) {
+			this.parts = parts;
+		}
+		
+		@Override
+		protected void compute() {
+			invokeAll(parts);
+		}
+	}
+	
+	/**
+	 * Разбирает таблицу файлов: имена и номера первых кластеров (0 - файл пуст)
+	 */
+	@SuppressWarnings("serial")
+	private static final class FileTableDecoder extends RecursiveAction {
+		private ByteBuffer image;
+		String[] names;
+		int[] starts;
+		
+		FileTableDecoder(ByteBuffer image, int filesNum) {
+			this.image = image;
+			names = new String[filesNum];
+			starts = new int[filesNum];
+		}
+		
+		@Override
+		protected void compute() {
+			ByteBuffer table = image.duplicate();
+			table.position(257);
+			int nameLen;
+			byte[] name = new byte[MAX_NAME_LEN];
+			for (int i = 0; i < names.length; ++i) {
+				nameLen = getUnsignedByteValue(table.get());
+				table.get(name);
+				names[i] = new String(Arrays.copyOfRange(name, 0, nameLen));
+				starts[i] = getUnsignedByteValue(table.get());
+			}
+		}
+	}
+	
+	/**
+	 * Разбирает занятые кластеры из [from, to) в массивы, индексируемые номером кластера
+	 */
+	@SuppressWarnings("serial")
+	private static final class ClusterDecoder extends RecursiveAction {
+		private static final int THRESHOLD = 64;
+		
+		private ByteBuffer image;
+		private boolean[] allocated;
+		Block[] blocks;
+		/**
+		 * номер следующего кластера файла, 0 - кластер последний
+		 */
+		int[] next;
+		private int from;
+		private int to;
+		
+		ClusterDecoder(ByteBuffer image, boolean[] allocated, Block[] blocks, int[] next, int from, int to) {
+			this.image = image;
+			this.allocated = allocated;
+			this.blocks = blocks;
+			this.next = next;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from > THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ClusterDecoder(image, allocated, blocks, next, from, middle),
+						new ClusterDecoder(image, allocated, blocks, next, middle, to));
+				return;
+			}
+			ByteBuffer region = image.duplicate();
+			region.position(FS_BLOCKS_STARTS + (from - 1) * BLOCK_SIZE);
+			Block block;
+			for (int cluster = from; cluster < to; ++cluster) {
+				if (!allocated[cluster]) {
+					region.position(region.position() + BLOCK_SIZE);
+					continue;
 				}
-				
-				allocatedBlockStarts++;
-				
-				
+				block = new Block();
+				block.usedBytes = region.get();
+				next[cluster] = getUnsignedByteValue(region.get());
+				region.get(block.data);
+				blocks[cluster] = block;
 			}
-			allocatedBlockStarts = (byte)(unallocatedBlocks[unallocatedBlocksIndex++] + 1);
-			
-		}while(unallocatedBlockStarts != 255 && unallocatedBlockStarts != 0);
+		}
+	}
+	
+	/**
+	 * Кластеры файла и число занятых в них байт на момент снимка.
+	 * Кластеры не переиспользуются, а дописываются только за занятыми байтами,
+	 * поэтому по снимку можно читать без блокировки ФС.
+	 */
+	private static final class FileSnapshot {
+		String name;
+		Block[] blocks;
+		int[] used;
 		
-		//считать журнал
-		raf.seek(FS_BLOCKS_STARTS + BLOCK_SIZE * BLOCK_NUM);
-		byte[] logStr = new byte[getUnsignedByteValue(raf.readByte())];
-		raf.read(logStr);
-		int logSize = Integer.valueOf(new String(logStr));
+		FileSnapshot(String name, Block first) {
+			this.name = name;
+			int clusters = 0;
+			for (Block fileBlock = first; fileBlock != null; fileBlock = fileBlock.next) {
+				clusters++;
+			}
+			blocks = new Block[clusters];
+			used = new int[clusters];
+			int i = 0;
+			for (Block fileBlock = first; fileBlock != null; fileBlock = fileBlock.next) {
+				blocks[i] = fileBlock;
+				used[i++] = getUnsignedByteValue(fileBlock.usedBytes);
+			}
+		}
+	}
+	
+	/**
+	 * Ищет образец в файлах с from по to - 1 алгоритмом Кнута-Морриса-Пратта прямо
+	 * по байтам кластеров, состояние автомата переносится через границы кластеров.
+	 * Файлы делятся между задачами по числу кластеров.
+	 */
+	@SuppressWarnings("serial")
+	private static final class ContentSearch extends RecursiveTask<Integer> {
+		private static final int THRESHOLD = 16;
 		
-		EventType eventType;
-		int fileNameLen;
-		byte[] byteFileName;
-		byte[] byteDataSize;
-		byte[] byteData;
-		byte[] byteDate;
-		byte[] byteCurIndex;
-		try {
-			for (int i = 0; i < logSize; ++i) {
-				eventType = EventType.valueOf(raf.readByte());// тип
-				fileNameLen = getUnsignedByteValue(raf.readByte());
-
-				byteFileName = new byte[fileNameLen];// имя
-				raf.read(byteFileName);
-
-				// длина длины текста
-				byteDataSize = new byte[getUnsignedByteValue(raf.readByte())];
-				// длина текста
-				raf.read(byteDataSize);
-
-				byteData = new byte[Integer.valueOf(new String(byteDataSize))];
-				raf.read(byteData);// текст
-
-				byteDate = new byte[getUnsignedByteValue(raf.readByte())];
-				raf.read(byteDate);// дата
-
-				byteCurIndex = new byte[getUnsignedByteValue(raf.readByte())];
-				raf.read(byteCurIndex);// индекс
-
-				log.add(new Event(eventType, new String(byteFileName), new String(byteData),
-						dateFormat.parse(new String(byteDate)), Integer.valueOf(new String(byteCurIndex))));
+		private FileSnapshot[] files;
+		/**
+		 * clusters[i] - число кластеров в файлах с 0 по i - 1
+		 */
+		private int[] clusters;
+		private byte[] pattern;
+		private int[] prefix;
+		private BiConsumer<String, Integer> listener;
+		private int from;
+		private int to;
+		
+		ContentSearch(FileSnapshot[] files, int[] clusters, byte[] pattern, int[] prefix,
+				BiConsumer<String, Integer> listener, int from, int to) {
+			this.files = files;
+			this.clusters = clusters;
+			this.pattern = pattern;
+			this.prefix = prefix;
+			this.listener = listener;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected Integer compute() {
+			if (to - from > 1 && clusters[to] - clusters[from] > THRESHOLD) {
+				int middle = from + 1;
+				int half = (clusters[from] + clusters[to]) >>> 1;
+				while (middle < to - 1 && clusters[middle + 1] <= half) {
+					middle++;
+				}
+				ContentSearch right = new ContentSearch(files, clusters, pattern, prefix, listener, middle, to);
+				right.fork();
+				int result = new ContentSearch(files, clusters, pattern, prefix, listener, from, middle).compute();
+				return result + right.join();
+			}
+			int result = 0;
+			for (int i = from; i < to; ++i) {
+				result += search(files[i]);
 			}
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+			return result;
 		}
 		
+		private int search(FileSnapshot file) {
+			int result = 0;
+			int state = 0;
+			int offset = 0;
+			byte[] data;
+			for (int b = 0; b < file.blocks.length; ++b) {
+				data = file.blocks[b].data;
+				for (int i = 0; i < file.used[b]; ++i, ++offset) {
+					while (state > 0 && data[i] != pattern[state]) {
+						state = prefix[state - 1];
+					}
+					if (data[i] == pattern[state]) {
+						state++;
+					}
+					if (state == pattern.length) {
+						listener.accept(file.name, offset - pattern.length + 1);
+						result++;
+						state = prefix[state - 1];
+					}
+				}
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * Префикс-функция образца: prefix[i] - длина наибольшего собственного префикса
+	 * pattern[0..i], который является и его суффиксом
+	 */
+	private static int[] getPrefixFunction(byte[] pattern) {
+		int[] prefix = new int[pattern.length];
+		int k = 0;
+		for (int i = 1; i < pattern.length; ++i) {
+			while (k > 0 && pattern[i] != pattern[k]) {
+				k = prefix[k - 1];
+			}
+			if (pattern[i] == pattern[k]) {
+				k++;
+			}
+			prefix[i] = k;
+		}
+		return prefix;
+	}
+	
+	/**
+	 * Разбирает записи журнала с offsets[from] по offsets[to - 1]
+	 */
+	@SuppressWarnings("serial")
+	private static final class JournalDecoder extends RecursiveTask<List<Event>> {
+		private ByteBuffer image;
+		private int[] offsets;
+		private int from;
+		private int to;
 		
-		// перехреначить в связный список файлы
-		for(Entry<Block, Byte> entry : blocksNext.entrySet()){
-			entry.getKey().next = blocks.get(entry.getValue());
+		JournalDecoder(ByteBuffer image, int[] offsets, int from, int to) {
+			this.image = image;
+			this.offsets = offsets;
+			this.from = from;
+			this.to = to;
 		}
 		
-		for(Entry<String, Byte> entry : tmpFiles.entrySet()){
-			if(entry.getValue() != 0){
-				files.put(entry.getKey(), blocks.get(entry.getValue()));
-			}else{
-				files.put(entry.getKey(), null);
+		@Override
+		protected List<Event> compute() {
+			if (to - from > JOURNAL_CHUNK) {
+				int middle = (from + to) >>> 1;
+				JournalDecoder right = new JournalDecoder(image, offsets, middle, to);
+				right.fork();
+				List<Event> result = new JournalDecoder(image, offsets, from, middle).compute();
+				result.addAll(right.join());
+				return result;
 			}
+			ByteBuffer journal = image.duplicate();
+			List<Event> result = Lists.newArrayListWithCapacity(to - from);
+			try {
+				for (int i = from; i < to; ++i) {
+					journal.position(offsets[i]);
+					result.add(readEvent(journal));
+				}
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			return result;
 		}
 	}
 	
 	/**
-	 * Сохраняет образ ФС в заданый файл, дефрагментируя его.
-	 * @throws IOException 
+	 * Пропускает очередное событие журнала вместе с событиями транзакции
 	 */
-	public void createFileSystemImage(File fs) throws IOException {
-		RandomAccessFile raf = new RandomAccessFile(fs, "rw");
-		if (allocatedBlocks == BLOCK_NUM) {
-			raf.writeByte(0);
-			// raf.writeByte(0);
+	private static void skipEvent(ByteBuffer image) {
+		EventType eventType = EventType.valueOf(image.get());// тип
+		skip(image, getUnsignedByteValue(image.get()));// имя
+		int textSize = Integer.valueOf(new String(readBytes(image, getUnsignedByteValue(image.get()))));
+		int eventsNum = 0;
+		if (eventType == EventType.TRANSACTION) {
+			eventsNum = Integer.valueOf(new String(readBytes(image, textSize)));
 		} else {
-			raf.writeByte(allocatedBlocks + 1);
-			raf.writeByte(BLOCK_NUM);
+			skip(image, textSize);// текст
+		}
+		skip(image, getUnsignedByteValue(image.get()));// дата
+		skip(image, getUnsignedByteValue(image.get()));// индекс
+		for (int i = 0; i < eventsNum; ++i) {
+			skipEvent(image);
+		}
+	}
+	
+	private static void skip(ByteBuffer image, int length) {
+		image.position(image.position() + length);
+	}
+	
+	/**
+	 * Собирает образ ФС в памяти, дефрагментируя его
+	 * @return буфер с образом от 0 до limit
+	 */
+	private ByteBuffer encodeImage() {
+		// журнал
+		ByteArrayOutputStream magazine = new ByteArrayOutputStream();
+		//длина лога сохраняется как строчка - число символов в строке (byte), сама строка
+		byte[] logSize = String.valueOf(log.size()).getBytes();
+		magazine.write(logSize.length);// число символов
+		magazine.write(logSize, 0, logSize.length);// размер лога
+		for (Event event : log) {
+			writeEvent(magazine, event);
 		}
-		raf.seek(256);
+		
+		ByteBuffer image = ByteBuffer.allocate(FS_BLOCKS_STARTS + BLOCK_SIZE * BLOCK_NUM + magazine.size()
+				+ (checksums ? CHECKSUMS_SIZE : 0));
+		image.position(256);
 		// число файлов
-		raf.writeByte(files.size());
+		image.put((byte) files.size());
 
 		// файлы
 		int i = 0;
@@ -257,133 +823,247 @@ public class FileSystem {
 			fileBlock = entry.getValue();
 
 			// запись имяни файла
-			raf.seek(257 + i * 128);
+			image.position(257 + i * 128);
 			byte[] name = entry.getKey().getBytes();
-			raf.writeByte(name.length);
-			raf.write(name);
+			image.put((byte) name.length);
+			image.put(name);
 
 			i++;
 			// запись номера первого кластера файла
-			raf.seek(257 + i * 128 - 1);
-			raf.writeByte(fileBlock == null ? 0 : lastFileEndBlock);
+			image.position(257 + i * 128 - 1);
+			image.put((byte) (fileBlock == null ? 0 : lastFileEndBlock));
 
 			while (fileBlock != null) {
 				// записать очередной кластер файла
-				raf.seek(FS_BLOCKS_STARTS + BLOCK_SIZE * (lastFileEndBlock - 1));
-				raf.writeByte(fileBlock.usedBytes);
-				raf.writeByte(fileBlock.next == null ? 0 : lastFileEndBlock + 1);
-				raf.write(Arrays.copyOfRange(fileBlock.data, 0, getUnsignedByteValue(fileBlock.usedBytes)));
+				image.position(FS_BLOCKS_STARTS + BLOCK_SIZE * (lastFileEndBlock - 1));
+				image.put(fileBlock.usedBytes);
+				image.put((byte) (fileBlock.next == null ? 0 : lastFileEndBlock + 1));
+				image.put(fileBlock.data, 0, getUnsignedByteValue(fileBlock.usedBytes));
 
 				lastFileEndBlock++;
 				fileBlock = fileBlock.next;
 			}
 		}
-		// записать журнал
-		List<Byte> magazine = Lists.newArrayList();
-		//длина лога сохраняется как строчка - число символов в строке (byte), сама строка
-		String logSize = String.valueOf(log.size());
-		magazine.add((byte)logSize.length());// число символов
-		magazine.addAll(Arrays.asList(ArrayUtils.toObject(logSize.getBytes())));// размер лога
-		String textSize;
-		String date;
-		String curIndex;
-		for (Event event : log) {
-			magazine.add(event.type.byteValue());// тип события
-			
-			magazine.add((byte)event.file.length());// длина имени
-			magazine.addAll(Arrays.asList(ArrayUtils.toObject(event.file.getBytes())));// имя
-			
-			//число символов в строке сохраняется как строчка - число символов в строке (byte), сама строка
-			textSize = String.valueOf(event.text.length());
+		
+		// свободные кластеры
+		image.position(0);
+		if (lastFileEndBlock > BLOCK_NUM) {
+			image.put((byte) 0);
+			image.put((byte) 0);
+		} else {
+			image.put((byte) lastFileEndBlock);
+			image.put((byte) BLOCK_NUM);
+		}
+		
+		image.position(FS_BLOCKS_STARTS + BLOCK_SIZE * BLOCK_NUM);
+		image.put(magazine.toByteArray());
+		
+		if (checksums) {
+			CRC32 crc = new CRC32();
+			for (int cluster = 0; cluster < BLOCK_NUM; ++cluster) {
+				crc.reset();
+				crc.update(image.array(), FS_BLOCKS_STARTS + BLOCK_SIZE * cluster, BLOCK_SIZE);
+				image.putInt((int) crc.getValue());
+			}
+			image.putInt(CHECKSUM_MAGIC);
+		}
+		image.flip();
+		return image;
+	}
+	
+	/**
+	 * Читает очередное событие журнала,
+	 * за транзакцией сразу следуют ее события
+	 */
+	private static Event readEvent(ByteBuffer image) throws Exception {
+		EventType eventType = EventType.valueOf(image.get());// тип
+		byte[] byteFileName = readBytes(image, getUnsignedByteValue(image.get()));// имя
 
-			magazine.add((byte)textSize.length());// число символов
-			magazine.addAll(Arrays.asList(ArrayUtils.toObject(textSize.getBytes())));// длина текста
+		// длина длины текста, длина текста
+		byte[] byteDataSize = readBytes(image, getUnsignedByteValue(image.get()));
+		byte[] byteData = readBytes(image, Integer.valueOf(new String(byteDataSize)));// текст
 
-			magazine.addAll(Arrays.asList(ArrayUtils.toObject(event.text.getBytes())));// текст
-			
-			date = dateFormat.format(event.date);
-			magazine.add((byte)date.length());
-			magazine.addAll(Arrays.asList(ArrayUtils.toObject(date.getBytes())));// дата
-			
-			
-			curIndex = String.valueOf(event.curIndex);
-			magazine.add((byte)curIndex.length());
-			magazine.addAll(Arrays.asList(ArrayUtils.toObject(curIndex.getBytes())));// индекс
-		}
+		byte[] byteDate = readBytes(image, getUnsignedByteValue(image.get()));// дата
 
-		raf.seek(FS_BLOCKS_STARTS + BLOCK_SIZE * BLOCK_NUM);
-		Byte[] byteLog = new Byte[magazine.size()];
-		magazine.toArray(byteLog);
-		raf.write(ArrayUtils.toPrimitive(byteLog));
-		raf.close();
+		byte[] byteCurIndex = readBytes(image, getUnsignedByteValue(image.get()));// индекс
+
+		Event event = new Event(eventType, new String(byteFileName), new String(byteData),
+				parseDate(new String(byteDate)), Integer.valueOf(new String(byteCurIndex)));
+		if (eventType == EventType.TRANSACTION) {
+			int eventsNum = Integer.valueOf(event.text);
+			event.events = Lists.newArrayListWithCapacity(eventsNum);
+			for (int i = 0; i < eventsNum; ++i) {
+				event.events.add(readEvent(image));
+			}
+		}
+		return event;
+	}
+	
+	static String formatDate(Date date) {
+		return DATE_FORMAT.format(date.toInstant());
+	}
+	
+	static Date parseDate(String date) {
+		return Date.from(ZonedDateTime.parse(date, DATE_FORMAT).toInstant());
+	}
+	
+	private static byte[] readBytes(ByteBuffer image, int length) {
+		byte[] result = new byte[length];
+		image.get(result);
+		return result;
 	}
 	
 	/**
-	 * Создает новый пустой файл в ФС.
+	 * Дописывает событие в журнал,
+	 * за транзакцией сразу пишутся ее события.
+	 * Длины имени и текста пишутся в байтах.
 	 */
-	public void createNewFile(String fileName){
-		byte[] name = fileName.getBytes();
-		String realName = new String(Arrays.copyOfRange(name, 0, Math.min(MAX_NAME_LEN, name.length)));
-		if (files.containsKey(realName)) {
-			clearFileData(realName);
-		} else {
-			files.put(realName, null);
-			logEvent(EventType.CREATE_FILE, realName);
+	private static void writeEvent(ByteArrayOutputStream magazine, Event event) {
+		magazine.write(event.type.byteValue());// тип события
+		
+		byte[] file = event.file.getBytes();
+		magazine.write(file.length);// длина имени
+		magazine.write(file, 0, file.length);// имя
+		
+		//число байт текста сохраняется как строчка - число символов в строке (byte), сама строка
+		byte[] text = event.text.getBytes();
+		byte[] textSize = String.valueOf(text.length).getBytes();
+
+		magazine.write(textSize.length);// число символов
+		magazine.write(textSize, 0, textSize.length);// длина текста
+
+		magazine.write(text, 0, text.length);// текст
+		
+		byte[] date = formatDate(event.date).getBytes();
+		magazine.write(date.length);
+		magazine.write(date, 0, date.length);// дата
+		
+		byte[] curIndex = String.valueOf(event.curIndex).getBytes();
+		magazine.write(curIndex.length);
+		magazine.write(curIndex, 0, curIndex.length);// индекс
+		
+		if (event.type == EventType.TRANSACTION) {
+			for (Event child : event.events) {
+				writeEvent(magazine, child);
+			}
 		}
 	}
 	
-	public String readFile(String fileName){
-		StringBuffer file = new StringBuffer();
-		Block fileBlock = files.get(fileName);
-		if(fileBlock == null){
-			return file.toString();
+	/**
+	 * Число байт, которые {@link #writeEvent(ByteArrayOutputStream, Event)} запишет для события
+	 */
+	private static int getEventSize(Event event) {
+		int text = event.text.getBytes().length;
+		int result = 1 + 1 + event.file.getBytes().length
+				+ 1 + String.valueOf(text).length() + text
+				+ 1 + formatDate(event.date).getBytes().length
+				+ 1 + String.valueOf(event.curIndex).length();
+		if (event.type == EventType.TRANSACTION) {
+			for (Event child : event.events) {
+				result += getEventSize(child);
+			}
 		}
-		while(fileBlock.next != null){
-			file.append(new String(fileBlock.data));
-			fileBlock = fileBlock.next;
+		return result;
+	}
+	
+	/**
+	 * Создает новый пустой файл в ФС.
+	 */
+	public synchronized void createNewFile(String fileName){
+		long startTime = metrics.start();
+		try {
+			byte[] name = fileName.getBytes();
+			String realName = new String(Arrays.copyOfRange(name, 0, Math.min(MAX_NAME_LEN, name.length)));
+			if (files.containsKey(realName)) {
+				clearFileData(realName);
+			} else {
+				files.put(realName, null);
+				logEvent(EventType.CREATE_FILE, realName);
+			}
+		} finally {
+			metrics.stop(OperationType.CREATE, startTime);
 		}
-		file.append(new String(Arrays.copyOfRange(fileBlock.data, 0, getUnsignedByteValue(fileBlock.usedBytes))));
-		return file.toString();
 	}
 	
-	public void writeToFile(String fileName, String t){
-		createNewFile(fileName);
-		appendToFile(fileName, t);
+	public synchronized String readFile(String fileName){
+		long startTime = metrics.start();
+		try {
+			StringBuffer file = new StringBuffer();
+			Block fileBlock = files.get(fileName);
+			if(fileBlock == null){
+				return file.toString();
+			}
+			while(fileBlock.next != null){
+				file.append(new String(fileBlock.data));
+				fileBlock = fileBlock.next;
+			}
+			file.append(new String(Arrays.copyOfRange(fileBlock.data, 0, getUnsignedByteValue(fileBlock.usedBytes))));
+			return file.toString();
+		} finally {
+			metrics.stop(OperationType.READ, startTime);
+		}
 	}
 	
-	public void appendToFile(String fileName, String t){
-		if(t.length() == 0)
-			return;
-		if(!files.containsKey(fileName)){
+	public synchronized void writeToFile(String fileName, String t){
+		long startTime = metrics.start();
+		try {
 			createNewFile(fileName);
+			appendToFile(fileName, t);
+		} finally {
+			metrics.stop(OperationType.WRITE, startTime);
 		}
-		Block fileBlock = files.get(fileName);
-		if(fileBlock == null){
-			fileBlock = getNewBlock();
-			files.put(fileName, fileBlock);
-		}
-		while(fileBlock.next != null){
-			fileBlock = fileBlock.next;
-		}
-		int start = getUnsignedByteValue(fileBlock.usedBytes);
-		int end = 255;
-		byte[] text = t.getBytes();
-		int textLength = text.length;
-		int textBegin = 0;
-		int write;
-		while(textLength > end - start){
-			write = end - start;
-			System.arraycopy(text, textBegin, fileBlock.data, start, write);
-			textLength -= write;
-			textBegin += write;
-			start = 0;
-			fileBlock.usedBytes = (byte) 255;
-			fileBlock.next = getNewBlock();
-			fileBlock = fileBlock.next;
+	}
+	
+	public synchronized void appendToFile(String fileName, String t){
+		long startTime = metrics.start();
+		try {
+			if(t.length() == 0)
+				return;
+			byte[] text = t.getBytes();
+			// место проверяется заранее, чтобы не оставить файл дописанным наполовину
+			Block fileBlock = files.get(fileName);
+			int free = 0;
+			if(fileBlock != null){
+				while(fileBlock.next != null){
+					fileBlock = fileBlock.next;
+				}
+				free = 255 - getUnsignedByteValue(fileBlock.usedBytes);
+			}
+			if(text.length > free && allocatedBlocks + (text.length - free + 254) / 255 > BLOCK_NUM){
+				throw new OutOfMemoryException();
+			}
+			if(!files.containsKey(fileName)){
+				createNewFile(fileName);
+			}
+			fileBlock = files.get(fileName);
+			if(fileBlock == null){
+				fileBlock = getNewBlock();
+				files.put(fileName, fileBlock);
+			}
+			while(fileBlock.next != null){
+				fileBlock = fileBlock.next;
+			}
+			int start = getUnsignedByteValue(fileBlock.usedBytes);
+			int end = 255;
+			int textLength = text.length;
+			int textBegin = 0;
+			int write;
+			while(textLength > end - start){
+				write = end - start;
+				System.arraycopy(text, textBegin, fileBlock.data, start, write);
+				textLength -= write;
+				textBegin += write;
+				start = 0;
+				fileBlock.usedBytes = (byte) 255;
+				fileBlock.next = getNewBlock();
+				fileBlock = fileBlock.next;
+			}
+			System.arraycopy(text, textBegin, fileBlock.data, start, textLength);
+			fileBlock.usedBytes += (byte) textLength;
+			logEvent(EventType.APPEND_TO_FILE, fileName, t);
+		} finally {
+			metrics.stop(OperationType.APPEND, startTime);
 		}
-		System.arraycopy(text, textBegin, fileBlock.data, start, textLength);
-		fileBlock.usedBytes += (byte) textLength;
-		logEvent(EventType.APPEND_TO_FILE, fileName, t);
 	}
 	
 	private void clearFileData(String fileName){
@@ -403,11 +1083,16 @@ public class FileSystem {
 	 * Удаляет файл и освобождает выделенные под него кластеры
 	 * @param fileName
 	 */
-	public void deleteFile(String fileName) {
-		if (files.containsKey(fileName)) {
-			clearFileData(fileName);
-			files.remove(fileName);
-			logEvent(EventType.DELETE_FILE, fileName);
+	public synchronized void deleteFile(String fileName) {
+		long startTime = metrics.start();
+		try {
+			if (files.containsKey(fileName)) {
+				clearFileData(fileName);
+				files.remove(fileName);
+				logEvent(EventType.DELETE_FILE, fileName);
+			}
+		} finally {
+			metrics.stop(OperationType.DELETE, startTime);
 		}
 	}
 	
@@ -416,22 +1101,89 @@ public class FileSystem {
 	 * @param fileName
 	 * @return
 	 */
-	public int getFileSize(String fileName){
-		int size = 0;
-		Block fileBlock = files.get(fileName);
-		while(fileBlock != null){
-			size += getUnsignedByteValue(fileBlock.usedBytes);
-			fileBlock = fileBlock.next;
+	public synchronized int getFileSize(String fileName){
+		long startTime = metrics.start();
+		try {
+			int size = 0;
+			Block fileBlock = files.get(fileName);
+			while(fileBlock != null){
+				size += getUnsignedByteValue(fileBlock.usedBytes);
+				fileBlock = fileBlock.next;
+			}
+			return size;
+		} finally {
+			metrics.stop(OperationType.SIZE, startTime);
+		}
+	}
+	
+	/**
+	 * Ищет pattern в содержимом всех файлов.
+	 * Под блокировкой снимается только список кластеров файлов, сам поиск идет без
+	 * блокировки параллельно в {@link ForkJoinPool} прямо по байтам кластеров,
+	 * т.е. находит вхождения на момент вызова и не мешает менять ФС.
+	 * @param pattern - непустой образец
+	 * @param listener - получает имя файла и смещение вхождения в байтах сразу,
+	 * как только оно найдено; вызывается из разных потоков
+	 * @return число вхождений
+	 */
+	public int grep(String pattern, BiConsumer<String, Integer> listener) {
+		long startTime = System.nanoTime();
+		byte[] bytes = pattern.getBytes();
+		if (bytes.length == 0) {
+			throw new IllegalArgumentException();
+		}
+		FileSnapshot[] snapshot;
+		synchronized (this) {
+			snapshot = new FileSnapshot[files.size()];
+			int i = 0;
+			for (Entry<String, Block> entry : files.entrySet()) {
+				snapshot[i++] = new FileSnapshot(entry.getKey(), entry.getValue());
+			}
+		}
+		int[] clusters = new int[snapshot.length + 1];
+		for (int i = 0; i < snapshot.length; ++i) {
+			clusters[i + 1] = clusters[i] + snapshot[i].blocks.length;
+		}
+		int result = ForkJoinPool.commonPool().invoke(new ContentSearch(snapshot, clusters, bytes,
+				getPrefixFunction(bytes), listener, 0, snapshot.length));
+		metrics.record(OperationType.GREP, startTime);
+		return result;
+	}
+	
+	/**
+	 * Имена всех файлов в ФС с их размерами в байтах
+	 */
+	synchronized Map<String, Integer> getFileSizes() {
+		Map<String, Integer> result = Maps.newTreeMap();
+		int size;
+		for (Entry<String, Block> entry : files.entrySet()) {
+			size = 0;
+			for (Block fileBlock = entry.getValue(); fileBlock != null; fileBlock = fileBlock.next) {
+				size += getUnsignedByteValue(fileBlock.usedBytes);
+			}
+			result.put(entry.getKey(), size);
 		}
-		return size;
+		return result;
 	}
 	
 	/**
 	 * Выводит на stdout имена всех файлов в ФС с их размерами 
 	 */
 	public void dir() {
-		for(String fileName : files.keySet()){
-			System.out.format(DIR_FORMAT, fileName, getFileSize(fileName));
+		dir(System.out);
+	}
+	
+	/**
+	 * Выводит в out имена всех файлов в ФС с их размерами 
+	 */
+	public synchronized void dir(PrintStream out) {
+		long startTime = metrics.start();
+		try {
+			for(String fileName : files.keySet()){
+				out.format(DIR_FORMAT, fileName, getFileSize(fileName));
+			}
+		} finally {
+			metrics.stop(OperationType.DIR, startTime);
 		}
 	}
 	
@@ -439,10 +1191,34 @@ public class FileSystem {
 	 * Выводит на stdout журнал ФС
 	 */
 	public void showLog(){
+		showLog(System.out);
+	}
+	
+	/**
+	 * Выводит в out журнал ФС
+	 */
+	public synchronized void showLog(PrintStream out){
+		long startTime = metrics.start();
+		try {
+			printLog(log, out);
+		} finally {
+			metrics.stop(OperationType.LOG, startTime);
+		}
+	}
+	
+	/**
+	 * Выводит события журнала в out, события транзакций - под транзакцией
+	 * @param events - от новых к старым
+	 */
+	static void printLog(Iterable<Event> events, PrintStream out) {
 		int i = 0;
-		for(Event event : log){
-			System.out.println(String.format("%3d. %s", ++i,  event));
-			
+		for(Event event : events){
+			out.println(String.format("%3d. %s", ++i,  event));
+			if (event.type == EventType.TRANSACTION) {
+				for (Event child : event.events) {
+					out.println(String.format("     - %s", child));
+				}
+			}
 		}
 	}
 	
@@ -450,8 +1226,14 @@ public class FileSystem {
 	 * Откатывает count последних событий из журнала
 	 * @param count
 	 */
-	public void undo(int count){
-		 undoEvent(0, count);
+	public synchronized void undo(int count){
+		long startTime = metrics.start();
+		try {
+			checkNoTransaction();
+			undoEvent(0, count);
+		} finally {
+			metrics.stop(OperationType.UNDO, startTime);
+		}
 	 }
 	 
 	
@@ -477,25 +1259,13 @@ public class FileSystem {
 			event = events[i + from];
 			
 			//undo event
-			switch (event.type) {
-			case CREATE_FILE:
-				deleteFile(event.file);
-				break;
-			case APPEND_TO_FILE:
-				String fileData = readFile(event.file);
-				writeToFile(event.file, fileData.substring(0, fileData.length() - event.text.length()));
-				break;
-			case DELETE_FILE:
-				createNewFile(event.file);
-				break;
-			case CLEAR_FILE:
-				appendToFile(event.file, event.text);
-				break;
-			case UNDO:
+			if (event.type == EventType.UNDO) {
 				int undoCount = Integer.valueOf(event.text);
 				for (int j = undoCount; j > 0; --j) {
 					doEvent(i + from + j);
 				}
+			} else {
+				revertEvent(event);
 			}
 
 			++i;
@@ -515,6 +1285,48 @@ public class FileSystem {
 		Event event = events[i];
 		
 		//do event
+		if (event.type == EventType.UNDO) {
+			undoEvent(i + 1, Integer.valueOf(event.text));
+		} else {
+			redoEvent(event);
+		}
+	}
+	
+	/**
+	 * Отменяет действие события (кроме события отмены),
+	 * события транзакции отменяются в обратном порядке.
+	 * undoState - при вызове всегда установлен
+	 */
+	private void revertEvent(Event event){
+		switch (event.type) {
+		case CREATE_FILE:
+			deleteFile(event.file);
+			break;
+		case APPEND_TO_FILE:
+			String fileData = readFile(event.file);
+			writeToFile(event.file, fileData.substring(0, fileData.length() - event.text.length()));
+			break;
+		case DELETE_FILE:
+			createNewFile(event.file);
+			break;
+		case CLEAR_FILE:
+			appendToFile(event.file, event.text);
+			break;
+		case TRANSACTION:
+			for (int j = event.events.size() - 1; j >= 0; --j) {
+				revertEvent(event.events.get(j));
+			}
+			break;
+		default:
+			throw new IllegalArgumentException();
+		}
+	}
+	
+	/**
+	 * Повторяет действие события (кроме события отмены).
+	 * undoState - при вызове всегда установлен
+	 */
+	private void redoEvent(Event event){
 		switch (event.type) {
 		case CREATE_FILE:
 			createNewFile(event.file);
@@ -528,40 +1340,117 @@ public class FileSystem {
 		case CLEAR_FILE:
 			clearFileData(event.file);
 			break;
-		case UNDO:
-			undoEvent(i + 1, Integer.valueOf(event.text));
+		case TRANSACTION:
+			for (Event child : event.events) {
+				redoEvent(child);
+			}
+			break;
+		default:
+			throw new IllegalArgumentException();
 		}
-		
-		
 	}
 	
+	/**
+	 * Открывает транзакцию: все последующие изменения ФС до {@link #commit()}
+	 * попадут в журнал одной записью и будут отменяться как одно действие.
+	 * @throws IllegalStateException - если транзакция уже открыта
+	 */
+	public synchronized void beginTransaction(){
+		checkNoTransaction();
+		transaction = Lists.newArrayList();
+	}
 	
-	private static final String TOUCH = "touch";
-	private static final String SAVE = "save";
-	private static final String LOAD = "load";
-	private static final String SHOW = "show";
-	private static final String LOG = "log";
-	private static final String UNDO = "undo";
-	private static final String CAT = "cat";
-	private static final String EXIT = "exit";
-	private static final String DIR = "dir";
-	private static final String INVITATION = "$ ";
-	private static final String ARG_SEPARATOR = " ";
-	private static final String REMOVE = "rm";
-	private static final String REMOVE_FLAG = "-f";
+	/**
+	 * Закрывает транзакцию и записывает ее события в журнал одной записью.
+	 * Пустая транзакция в журнал не попадает.
+	 * @throws IllegalStateException - если транзакция не открыта
+	 */
+	public synchronized void commit(){
+		long startTime = metrics.start();
+		try {
+			checkTransaction();
+			List<Event> events = transaction;
+			transaction = null;
+			if (!events.isEmpty()) {
+				Event event = new Event(EventType.TRANSACTION, "", String.valueOf(events.size()),
+						Calendar.getInstance().getTime());
+				event.events = events;
+				log.add(event);
+			}
+		} finally {
+			metrics.stop(OperationType.COMMIT, startTime);
+		}
+	}
+	
+	/**
+	 * Отменяет все изменения открытой транзакции, журнал не меняется.
+	 * @throws IllegalStateException - если транзакция не открыта
+	 */
+	public synchronized void rollback(){
+		long startTime = metrics.start();
+		try {
+			checkTransaction();
+			List<Event> events = transaction;
+			transaction = null;
+			boolean tempUndoState = undoState;
+			undoState = true;
+			for (int i = events.size() - 1; i >= 0; --i) {
+				revertEvent(events.get(i));
+			}
+			undoState = tempUndoState;
+		} finally {
+			metrics.stop(OperationType.ROLLBACK, startTime);
+		}
+	}
+	
+	public synchronized boolean inTransaction(){
+		return transaction != null;
+	}
+	
+	private void checkTransaction(){
+		if (transaction == null) {
+			throw new IllegalStateException(NO_TRANSACTION_EXC);
+		}
+	}
 	
-	private static final char REROUTING = '>';
+	private void checkNoTransaction(){
+		if (transaction != null) {
+			throw new IllegalStateException(TRANSACTION_EXC);
+		}
+	}
 	
-	private static final String UNDO_EXC = "Откат невозможен.\n Число отменяемых действий либо больше общего числа действий в журнале либо меньше нуля.";	
+	
+	private static final String INVITATION = "$ ";
+	private static final String SHELL_NAME = "shell";
+	private static final String BATCH_FLAG = "-f";
+	private static final String TRANSACTION_FLAG = "-t";
+	private static final String STDIN = "-";
 	
 	/**
+	 * Параметры запуска: [-f script [-t]] [file]</br>
+	 * -f script - выполнить команды из файла script (или из stdin, если script = -)
+	 * без приглашения и выйти</br>
+	 * -t - выполнить скрипт одной транзакцией</br>
+	 * file - файл из которого грузить ФС
 	 * @param args
 	 * @throws IOException 
 	 */
 	public static void main(String[] args) throws IOException {
 		FileSystem fs = new FileSystem();
-		if(args.length > 0){
-			File file = new File(args[0]);
+		fs.getMetrics().register(SHELL_NAME);
+		String script = null;
+		boolean transactional = false;
+		int argIndex = 0;
+		if (args.length > 1 && args[0].equals(BATCH_FLAG)) {
+			script = args[1];
+			argIndex = 2;
+			if (args.length > argIndex && args[argIndex].equals(TRANSACTION_FLAG)) {
+				transactional = true;
+				argIndex++;
+			}
+		}
+		if(args.length > argIndex){
+			File file = new File(args[argIndex]);
 			if(file.exists() && file.isFile()){
 				try {
 					fs.loadFileSystem(file);
@@ -571,54 +1460,37 @@ public class FileSystem {
 				}
 			}
 		}
+		if (script != null) {
+			runBatch(fs, script, transactional);
+			System.exit(0);
+		}
 		Scanner reader = new Scanner(System.in);
-		String line;
-		String[] parts;
+		Command command;
 		while (true) {
 			System.out.print(INVITATION);
-			line = reader.nextLine();
-			if (line.equals(EXIT)) {
+			command = Command.parse(reader.nextLine(), reader);
+			if (command != null && !command.execute(fs, System.out)) {
+				fs.awaitTransfers();
 				System.exit(0);
-			} else if (line.equals(DIR)) {
-				fs.dir();
-				continue;
-			}
-			parts = line.split(ARG_SEPARATOR);
-			if (parts[0].equals(CAT)) {
-				if (parts[1].charAt(0) == REROUTING) {
-					if (parts[1].charAt(1) == REROUTING) {
-						fs.appendToFile(parts[1].substring(2), reader.nextLine());
-					} else {
-						fs.writeToFile(parts[1].substring(1), reader.nextLine());
-					}
-				} else {
-					System.out.println(fs.readFile(parts[1]));
-				}
-			} else if (parts[0].equals(REMOVE)) {
-				if (parts[1].equals(REMOVE_FLAG)) {
-					fs.deleteFile(parts[2]);
-				}
-			} else if (parts[0].equals(TOUCH)) {
-				fs.createNewFile(parts[1]);
-			} else if (parts[0].equals(SAVE)) {
-				fs.createFileSystemImage(new File(parts[1]));
-			} else if (parts[0].equals(LOAD)) {
-				fs.loadFileSystem(new File(parts[1]));
-			} else if(parts[0].equals(SHOW)){
-				if (parts[1].equals(LOG)) {
-					fs.showLog();
-				}
-			}else if(parts[0].equals(UNDO)){
-				try{
-					fs.undo(Integer.valueOf(parts[1]));
-				}catch(Exception e){
-					System.out.println(UNDO_EXC);
-				}
-				
 			}
 		}
 	}
 	
+	private static void runBatch(FileSystem fs, String script, boolean transactional) throws IOException {
+		InputStream in = script.equals(STDIN) ? System.in : new FileInputStream(script);
+		BatchRunner batch;
+		try {
+			batch = BatchRunner.parse(in);
+		} finally {
+			in.close();
+		}
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+		batch.run(fs, out, transactional);
+		fs.awaitTransfers();
+		out.flush();
+		System.err.println(batch.getSummary());
+	}
+	
 
 	private void logEvent(EventType type, String file){
 		logEvent(type, file, "");
@@ -629,10 +1501,14 @@ public class FileSystem {
 			return;
 		}
 		Event event = new Event(type, file, text, Calendar.getInstance().getTime());
-		log.add(event);
+		if (transaction != null) {
+			transaction.add(event);
+		} else {
+			log.add(event);
+		}
 	}
 	
-	private static int getUnsignedByteValue(byte b) {
+	static int getUnsignedByteValue(byte b) {
 		return b & 0xFF;
 	}
 	
@@ -0,0 +1,208 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Клиент {@link FileSystemServer}.
+ * Поддерживает конвейерную отправку запросов: {@link #send(Command)} только
+ * буферизует запрос, {@link #receive()} читает ответы в порядке отправки.
+ */
+public class FileSystemClient implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int PIPELINE_WINDOW = 1024;
+
+	private Socket socket;
+	private DataOutputStream out;
+	private DataInputStream in;
+	/**
+	 * число отправленных запросов, на которые еще не получен ответ
+	 */
+	private int pending = 0;
+
+	/**
+	 * Ответ сервера
+	 */
+	public static final class Response {
+		byte status;
+		String text;
+
+		Response(byte status, String text) {
+			this.status = status;
+			this.text = text;
+		}
+
+		public boolean isOk() {
+			return status != Protocol.ERROR;
+		}
+
+		public String getText() {
+			return text;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	public static class RemoteException extends IOException {
+		public RemoteException(String message) {
+			super(message);
+		}
+	}
+
+	public FileSystemClient(String host, int port) throws IOException {
+		socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+	}
+
+	/**
+	 * Буферизует запрос, не дожидаясь ответа на предыдущие
+	 */
+	public void send(Command command) throws IOException {
+		ByteBuffer frame = Protocol.encodeRequest(command);
+		out.write(frame.array(), frame.arrayOffset(), frame.limit());
+		pending++;
+	}
+
+	/**
+	 * Отправляет все буферизованные запросы
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Читает ответ на самый ранний из отправленных запросов
+	 */
+	public Response receive() throws IOException {
+		if (pending == 0) {
+			throw new IllegalStateException("Нет запросов без ответа");
+		}
+		flush();
+		int length = in.readInt();
+		byte status = in.readByte();
+		byte[] body = new byte[length - 1];
+		in.readFully(body);
+		pending--;
+		return new Response(status, new String(body, Protocol.CHARSET));
+	}
+
+	/**
+	 * Выполняет команды конвейером: запросы отправляются, не дожидаясь ответов,
+	 * но без ответа остается не больше {@link #PIPELINE_WINDOW} запросов,
+	 * иначе клиент и сервер, перестающий читать при неотправленных ответах, ждали бы друг друга
+	 */
+	public List<Response> pipeline(List<Command> commands) throws IOException {
+		List<Response> responses = Lists.newArrayListWithCapacity(commands.size());
+		for (Command command : commands) {
+			send(command);
+			if (pending > PIPELINE_WINDOW) {
+				responses.add(receive());
+			}
+		}
+		flush();
+		while (responses.size() < commands.size()) {
+			responses.add(receive());
+		}
+		return responses;
+	}
+
+	/**
+	 * Выполняет одну команду и дожидается ответа
+	 * @return вывод команды
+	 * @throws RemoteException - если сервер не смог выполнить команду
+	 */
+	public String execute(Command command) throws IOException {
+		send(command);
+		while (pending > 1) {
+			receive();
+		}
+		Response response = receive();
+		if (!response.isOk()) {
+			throw new RemoteException(response.text);
+		}
+		return response.text;
+	}
+
+	public void touch(String fileName) throws IOException {
+		execute(new Command(CommandType.TOUCH, fileName));
+	}
+
+	public String read(String fileName) throws IOException {
+		String text = execute(new Command(CommandType.READ, fileName));
+		// убираем перевод строки, который добавляет cat; он с разделителем строк сервера, а не клиента
+		if (text.endsWith("\r\n")) {
+			return text.substring(0, text.length() - 2);
+		}
+		if (text.endsWith("\n")) {
+			return text.substring(0, text.length() - 1);
+		}
+		return text;
+	}
+
+	public void write(String fileName, String text) throws IOException {
+		execute(new Command(CommandType.WRITE, fileName, text));
+	}
+
+	public void append(String fileName, String text) throws IOException {
+		execute(new Command(CommandType.APPEND, fileName, text));
+	}
+
+	public void remove(String fileName) throws IOException {
+		execute(new Command(CommandType.REMOVE, fileName));
+	}
+
+	public String dir() throws IOException {
+		return execute(new Command(CommandType.DIR, null));
+	}
+
+	public String showLog() throws IOException {
+		return execute(new Command(CommandType.SHOW_LOG, null));
+	}
+
+	public void undo(int count) throws IOException {
+		execute(new Command(CommandType.UNDO, String.valueOf(count)));
+	}
+
+	/**
+	 * Вхождения образца в файлы ФС сервера, по строке файл:смещение на вхождение
+	 */
+	public String grep(String pattern) throws IOException {
+		return execute(new Command(CommandType.GREP, pattern));
+	}
+
+	/**
+	 * Метрики ФС сервера в текстовом виде
+	 */
+	public String stats() throws IOException {
+		return execute(new Command(CommandType.STATS, null));
+	}
+
+	/**
+	 * Сохраняет образ ФС в файл на стороне сервера
+	 */
+	public void save(String file) throws IOException {
+		execute(new Command(CommandType.SAVE, file));
+	}
+
+	/**
+	 * Сообщает серверу о завершении работы и закрывает соединение
+	 */
+	public void close() throws IOException {
+		try {
+			send(new Command(CommandType.EXIT, null));
+			while (pending > 0) {
+				receive();
+			}
+		} finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,195 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Метрики ФС: число и задержки операций, заполненность кластеров, размер журнала,
+ * длительность сохранения и загрузки.
+ * Операции записываются только на верхнем уровне: операции, которые ФС вызывает
+ * сама у себя (например при откате), в счетчики не попадают.
+ */
+public class FileSystemMetrics implements FileSystemMetricsMXBean {
+	private static final String OBJECT_NAME = "filesystem:type=FileSystem,name=%s";
+
+	private static final String HEADER_FORMAT = "%-14s | %10s | %10s | %10s | %10s | %10s\n";
+	private static final String ROW_FORMAT = "%-14s | %10d | %10.1f | %10.1f | %10.1f | %10.1f\n";
+	private static final String GAUGES_FORMAT =
+			"Кластеры: занято %d, свободно %d, фрагментация %.1f%%\n" +
+			"Журнал: %d записей, %d байт\n" +
+			"Образы: записано %d байт, прочитано %d байт\n" +
+			"Последнее сохранение %.1f мс, последняя загрузка %.1f мс\n";
+
+	private FileSystem fs;
+
+	private final LatencyHistogram[] latencies = new LatencyHistogram[OperationType.values().length];
+
+	/**
+	 * глубина вложенности операций, меняется только под блокировкой ФС
+	 */
+	private int depth = 0;
+
+	private volatile long lastSave = 0;
+	private volatile long lastLoad = 0;
+
+	FileSystemMetrics(FileSystem fs) {
+		this.fs = fs;
+		for (int i = 0; i < latencies.length; ++i) {
+			latencies[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Начало операции, вызывается под блокировкой ФС
+	 * @return время начала
+	 */
+	long start() {
+		depth++;
+		return System.nanoTime();
+	}
+
+	/**
+	 * Конец операции, вызывается под блокировкой ФС
+	 * @param startTime - результат {@link #start()}
+	 */
+	void stop(OperationType operation, long startTime) {
+		if (--depth == 0) {
+			record(operation, startTime);
+		}
+	}
+
+	/**
+	 * Записывает операцию независимо от вложенности (для асинхронных операций)
+	 */
+	void record(OperationType operation, long startTime) {
+		long time = System.nanoTime() - startTime;
+		latencies[operation.ordinal()].record(time);
+		switch (operation) {
+		case SAVE:
+		case SAVE_ASYNC:
+			lastSave = time;
+			break;
+		case LOAD:
+		case LOAD_ASYNC:
+			lastLoad = time;
+			break;
+		default:
+		}
+	}
+
+	LatencyHistogram getLatency(OperationType operation) {
+		return latencies[operation.ordinal()];
+	}
+
+	/**
+	 * Публикует метрики в platform MBean server
+	 * @param name - имя ФС в JMX
+	 */
+	public void register(String name) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(String.format(OBJECT_NAME, name)));
+		} catch (JMException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public Map<String, Long> getOperationCounts() {
+		Map<String, Long> result = Maps.newLinkedHashMap();
+		for (OperationType operation : OperationType.values()) {
+			result.put(operation.name(), getLatency(operation).getCount());
+		}
+		return result;
+	}
+
+	public Map<String, Double> getLatencyP50() {
+		return percentiles(50);
+	}
+
+	public Map<String, Double> getLatencyP99() {
+		return percentiles(99);
+	}
+
+	public Map<String, Double> getLatencyMax() {
+		return percentiles(100);
+	}
+
+	private Map<String, Double> percentiles(double percentile) {
+		Map<String, Double> result = Maps.newLinkedHashMap();
+		for (OperationType operation : OperationType.values()) {
+			result.put(operation.name(), getLatency(operation).getPercentile(percentile) / 1000.0);
+		}
+		return result;
+	}
+
+	public int getAllocatedClusters() {
+		return fs.getAllocatedBlocks();
+	}
+
+	public int getFreeClusters() {
+		return fs.getFreeBlocks();
+	}
+
+	public double getFragmentation() {
+		return fs.getFragmentation();
+	}
+
+	public int getJournalLength() {
+		return fs.getJournalLength();
+	}
+
+	public long getJournalBytes() {
+		return fs.getJournalBytes();
+	}
+
+	public long getBytesWritten() {
+		return fs.getBytesWritten();
+	}
+
+	public long getBytesRead() {
+		return fs.getBytesRead();
+	}
+
+	public double getLastSaveMillis() {
+		return lastSave / 1e6;
+	}
+
+	public double getLastLoadMillis() {
+		return lastLoad / 1e6;
+	}
+
+	public String dump() {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		dump(new PrintStream(output));
+		return output.toString();
+	}
+
+	/**
+	 * Выводит таблицу операций (задержки в мкс) и остальные метрики
+	 */
+	public void dump(PrintStream out) {
+		out.format(HEADER_FORMAT, "Операция", "Число", "Среднее", "p50", "p99", "max");
+		LatencyHistogram latency;
+		for (OperationType operation : OperationType.values()) {
+			latency = getLatency(operation);
+			if (latency.getCount() == 0) {
+				continue;
+			}
+			out.format(ROW_FORMAT, operation.name(), latency.getCount(), latency.getMean() / 1000,
+					latency.getPercentile(50) / 1000.0, latency.getPercentile(99) / 1000.0, latency.getMax() / 1000.0);
+		}
+		out.format(GAUGES_FORMAT, getAllocatedClusters(), getFreeClusters(), getFragmentation() * 100,
+				getJournalLength(), getJournalBytes(), getBytesWritten(), getBytesRead(),
+				getLastSaveMillis(), getLastLoadMillis());
+	}
+
+	public void reset() {
+		for (LatencyHistogram latency : latencies) {
+			latency.reset();
+		}
+	}
+}
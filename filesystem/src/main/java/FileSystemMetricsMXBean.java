@@ -0,0 +1,66 @@
+import java.util.Map;
+
+/**
+ * Метрики ФС, публикуемые через JMX
+ */
+public interface FileSystemMetricsMXBean {
+	/**
+	 * число выполненных операций по типам
+	 */
+	Map<String, Long> getOperationCounts();
+
+	/**
+	 * медиана задержки операций по типам, мкс
+	 */
+	Map<String, Double> getLatencyP50();
+
+	/**
+	 * 99-й процентиль задержки операций по типам, мкс
+	 */
+	Map<String, Double> getLatencyP99();
+
+	/**
+	 * максимальная задержка операций по типам, мкс
+	 */
+	Map<String, Double> getLatencyMax();
+
+	int getAllocatedClusters();
+
+	int getFreeClusters();
+
+	/**
+	 * доля неиспользуемых байт в занятых кластерах
+	 */
+	double getFragmentation();
+
+	int getJournalLength();
+
+	/**
+	 * размер журнала в образе ФС, байт
+	 */
+	long getJournalBytes();
+
+	long getBytesWritten();
+
+	long getBytesRead();
+
+	/**
+	 * длительность последнего сохранения образа, мс
+	 */
+	double getLastSaveMillis();
+
+	/**
+	 * длительность последней загрузки образа, мс
+	 */
+	double getLastLoadMillis();
+
+	/**
+	 * все метрики в виде таблицы (то же, что выводит команда stats)
+	 */
+	String dump();
+
+	/**
+	 * обнуляет счетчики и гистограммы операций
+	 */
+	void reset();
+}
@@ -0,0 +1,373 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * TCP сервер ФС на основе {@link Selector} (аналог echo/select_server.c).
+ * Все клиенты работают с одним экземпляром ФС, команды выполняются в потоке
+ * селектора по одной, поэтому ФС не требует дополнительной синхронизации.
+ * Протокол описан в {@link Protocol}.
+ * <p>
+ * По умолчанию сервер слушает только loopback: команды save/load/scrub работают с файлами
+ * машины сервера. Слушать другой адрес можно только вместе с директорией образов,
+ * за пределы которой пути этих команд не выходят.
+ * </p>
+ */
+public class FileSystemServer implements Runnable, Closeable {
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+	/**
+	 * сколько байт ответов может ждать отправки, дальше запросы соединения не выполняются,
+	 * пока клиент не прочтет ответы
+	 */
+	private static final int MAX_PENDING = 1 << 16;
+
+	private static final String USAGE = "Параметры запуска: port [file] [-host адрес -images директория]";
+	private static final String HOST_OPTION = "-host";
+	private static final String IMAGES_OPTION = "-images";
+	private static final String STARTED = "Сервер ФС слушает %s:%d";
+	private static final String TRANSACTION_EXC = "Транзакции по сети не поддерживаются.";
+	private static final String SCRUB_EXC = "Проверка образа по сети не поддерживается.";
+	private static final String SAVE_ASYNC_EXC = "Фоновое сохранение по сети не поддерживается, используйте save без &.";
+	private static final String NO_IMAGES_EXC = "Для адреса %s нужна директория образов.";
+	private static final String IMAGE_PATH_EXC = "Путь %s вне директории образов.";
+
+	private FileSystem fs;
+	private Selector selector;
+	private ServerSocketChannel server;
+	/**
+	 * директория, в которой лежат образы команд save/load/scrub, null - любые пути
+	 */
+	private File images;
+	private volatile boolean stopped = false;
+
+	/**
+	 * Состояние соединения: недочитанный запрос и неотправленные ответы
+	 */
+	private static final class Connection {
+		ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		Queue<ByteBuffer> out = new LinkedList<ByteBuffer>();
+		/**
+		 * байт ответов в out
+		 */
+		int pending = 0;
+		/**
+		 * в in остались запросы, не выполненные из-за {@link #MAX_PENDING}
+		 */
+		boolean blocked = false;
+		boolean closing = false;
+	}
+
+	/**
+	 * Сервер на loopback, пути образов не ограничены
+	 * @param fs
+	 * @param port - порт, 0 - любой свободный
+	 * @throws IOException
+	 */
+	public FileSystemServer(FileSystem fs, int port) throws IOException {
+		this(fs, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), null);
+	}
+
+	/**
+	 * @param fs
+	 * @param address - адрес и порт (0 - любой свободный)
+	 * @param images - директория образов, обязательна, если адрес не loopback
+	 * @throws IOException
+	 */
+	public FileSystemServer(FileSystem fs, InetSocketAddress address, File images) throws IOException {
+		if (images == null && !address.getAddress().isLoopbackAddress()) {
+			throw new IllegalArgumentException(String.format(NO_IMAGES_EXC, address.getAddress().getHostAddress()));
+		}
+		this.fs = fs;
+		this.images = images == null ? null : images.getCanonicalFile();
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.socket().setReuseAddress(true);
+		server.socket().bind(address);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	public InetAddress getAddress() {
+		return server.socket().getInetAddress();
+	}
+
+	/**
+	 * Цикл обработки соединений, работает до {@link #close()}.
+	 * По выходу из цикла закрываются все соединения и сам сервер.
+	 */
+	public void run() {
+		try {
+			while (!stopped) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+						}
+						if (key.isValid() && key.isReadable()) {
+							read(key);
+						}
+						if (key.isValid() && key.isWritable()) {
+							write(key);
+						}
+					} catch (IOException e) {
+						disconnect(key);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			release();
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel client = server.accept();
+		if (client == null) {
+			return;
+		}
+		client.configureBlocking(false);
+		client.socket().setTcpNoDelay(true);
+		client.register(selector, SelectionKey.OP_READ, new Connection());
+	}
+
+	private void read(SelectionKey key) throws IOException {
+		Connection connection = (Connection) key.attachment();
+		SocketChannel client = (SocketChannel) key.channel();
+		if (!connection.in.hasRemaining()) {
+			connection.in = grow(connection.in);
+		}
+		if (client.read(connection.in) < 0) {
+			disconnect(key);
+			return;
+		}
+		process(key);
+	}
+
+	/**
+	 * Выполняет прочитанные запросы и отправляет ответы.
+	 * Пока ответы не уходят клиенту, соединение не читается (только ждет записи),
+	 * так что не читающий ответы клиент не может занять память сервера.
+	 */
+	private void process(SelectionKey key) throws IOException {
+		Connection connection = (Connection) key.attachment();
+		boolean sent;
+		do {
+			connection.blocked = false;
+			connection.in.flip();
+			int length;
+			int needed = 0;
+			while (!connection.closing && connection.in.remaining() >= 4) {
+				if (connection.pending >= MAX_PENDING) {
+					connection.blocked = true;
+					break;
+				}
+				length = connection.in.getInt(connection.in.position());
+				if (length <= 0 || length > Protocol.MAX_FRAME) {
+					disconnect(key);
+					return;
+				}
+				if (connection.in.remaining() < 4 + length) {
+					needed = 4 + length;
+					break;
+				}
+				connection.in.getInt();
+				ByteBuffer frame = connection.in.slice();
+				frame.limit(length);
+				connection.in.position(connection.in.position() + length);
+				ByteBuffer response = execute(frame, connection);
+				connection.pending += response.remaining();
+				connection.out.add(response);
+			}
+			connection.in.compact();
+			if (needed > connection.in.capacity()) {
+				// запрос не влезает в буфер
+				connection.in = grow(connection.in, needed);
+			}
+			sent = flush(key);
+		} while (sent && connection.blocked);
+		if (!sent) {
+			key.interestOps(SelectionKey.OP_WRITE);
+		} else if (connection.closing) {
+			disconnect(key);
+		} else {
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	private void write(SelectionKey key) throws IOException {
+		if (flush(key)) {
+			// ответы ушли: выполняем отложенные запросы и снова читаем
+			process(key);
+		}
+	}
+
+	/**
+	 * Отправляет ответы, пока сокет их принимает
+	 * @return true, если отправлены все
+	 */
+	private boolean flush(SelectionKey key) throws IOException {
+		Connection connection = (Connection) key.attachment();
+		SocketChannel client = (SocketChannel) key.channel();
+		ByteBuffer response;
+		while ((response = connection.out.peek()) != null) {
+			client.write(response);
+			if (response.hasRemaining()) {
+				return false;
+			}
+			connection.out.poll();
+			connection.pending -= response.limit();
+		}
+		return true;
+	}
+
+	/**
+	 * Выполняет очередной запрос над ФС
+	 * @return ответ клиенту
+	 */
+	private ByteBuffer execute(ByteBuffer frame, Connection connection) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			Command command = Protocol.decodeRequest(frame);
+			if (command.isTransactional()) {
+				// ФС общая для всех клиентов, транзакция одного захватила бы изменения других
+				return Protocol.encodeResponse(Protocol.ERROR, TRANSACTION_EXC);
+			}
+			if (command.type == CommandType.SAVE_ASYNC) {
+				// о завершении команда сообщает позже, а ответ уходит сразу - сообщение никто не прочтет
+				return Protocol.encodeResponse(Protocol.ERROR, SAVE_ASYNC_EXC);
+			}
+			if (command.type == CommandType.SCRUB) {
+				// отчет тоже приходит позже ответа, а ждать его в потоке селектора - держать всех клиентов
+				return Protocol.encodeResponse(Protocol.ERROR, SCRUB_EXC);
+			}
+			if (images != null && command.isImageCommand()) {
+				command.argument = resolveImage(command.argument).getPath();
+			}
+			PrintStream out = new PrintStream(output, false, Protocol.CHARSET.name());
+			if (!command.execute(fs, out)) {
+				connection.closing = true;
+				return Protocol.encodeResponse(Protocol.BYE, "");
+			}
+			out.flush();
+			return Protocol.encodeResponse(Protocol.OK, new String(output.toByteArray(), Protocol.CHARSET));
+		} catch (Exception e) {
+			return Protocol.encodeResponse(Protocol.ERROR, String.valueOf(e.getMessage()));
+		}
+	}
+
+	/**
+	 * Путь образа внутри директории образов
+	 * @throws IOException - если путь выходит за ее пределы
+	 */
+	File resolveImage(String path) throws IOException {
+		File image = new File(images, path).getCanonicalFile();
+		if (!image.toPath().startsWith(images.toPath()) || image.equals(images)) {
+			throw new IOException(String.format(IMAGE_PATH_EXC, path));
+		}
+		return image;
+	}
+
+	private void disconnect(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			// соединение уже закрыто
+		}
+	}
+
+	private static ByteBuffer grow(ByteBuffer buffer) {
+		return grow(buffer, buffer.capacity() * 2);
+	}
+
+	/**
+	 * Переносит содержимое заполняемого буфера в буфер большего размера
+	 */
+	private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+		ByteBuffer result = ByteBuffer.allocate(capacity);
+		buffer.flip();
+		result.put(buffer);
+		return result;
+	}
+
+	/**
+	 * Останавливает цикл обработки соединений
+	 */
+	public void close() {
+		stopped = true;
+		selector.wakeup();
+	}
+
+	private void release() {
+		for (SelectionKey key : selector.keys()) {
+			try {
+				key.channel().close();
+			} catch (IOException e) {
+				// закрываем остальные
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param args - порт, опционально файл из которого грузить ФС,
+	 * адрес (-host, по умолчанию loopback) и директория образов (-images)
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println(USAGE);
+			return;
+		}
+		FileSystem fs = new FileSystem();
+		InetAddress host = InetAddress.getLoopbackAddress();
+		File images = null;
+		for (int i = 1; i < args.length; ++i) {
+			if (args[i].equals(HOST_OPTION) && i + 1 < args.length) {
+				host = InetAddress.getByName(args[++i]);
+			} else if (args[i].equals(IMAGES_OPTION) && i + 1 < args.length) {
+				images = new File(args[++i]);
+			} else if (i == 1) {
+				File file = new File(args[1]);
+				if (file.exists() && file.isFile()) {
+					fs.loadFileSystem(file);
+				}
+			} else {
+				System.out.println(USAGE);
+				return;
+			}
+		}
+		FileSystemServer server = new FileSystemServer(fs, new InetSocketAddress(host, Integer.valueOf(args[0])), images);
+		fs.getMetrics().register("server-" + server.getPort());
+		System.out.println(String.format(STARTED, server.getAddress().getHostAddress(), server.getPort()));
+		server.run();
+	}
+}
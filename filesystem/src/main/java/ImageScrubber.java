@@ -0,0 +1,259 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Фоновая проверка образа ФС на диске.
+ * Область кластеров читается последовательно большими кусками по {@link #CHUNK_CLUSTERS}
+ * кластеров не быстрее заданной скорости. Проверяются контрольные суммы кластеров
+ * (если они есть в образе), ссылки на следующий кластер, циклы в цепочках файлов,
+ * кластеры, попавшие в несколько файлов, и занятые кластеры, не попавшие ни в один.
+ * Блокировку ФС проверка не берет, т.к. работает только с файлом образа.
+ */
+public class ImageScrubber extends CompletableFuture<ImageScrubber.Report> implements Runnable {
+	static final int CHUNK_CLUSTERS = 64;
+
+	private File image;
+	/**
+	 * байт в секунду, 0 - без ограничения
+	 */
+	private long rate;
+
+	/**
+	 * Результат проверки
+	 */
+	public static class Report {
+		private static final String FORMAT = "Проверка образа %s: %d кластеров, %d байт за %d мс\n" +
+				"Контрольные суммы: %s\n" +
+				"Ошибки контрольных сумм в кластерах: %s\n" +
+				"Висячие ссылки из кластеров: %s\n" +
+				"Циклы в файлах: %s\n" +
+				"Кластеры в нескольких файлах: %s\n" +
+				"Потерянные кластеры: %s\n" +
+				"%s";
+
+		String image;
+		int clusters = 0;
+		long bytesRead = 0;
+		long time = 0;
+		boolean checksums = false;
+		/**
+		 * кластеры, контрольная сумма которых не совпала
+		 */
+		List<Integer> checksumErrors = Lists.newArrayList();
+		/**
+		 * кластеры (0 - таблица файлов), ссылающиеся на свободный кластер
+		 */
+		List<Integer> danglingPointers = Lists.newArrayList();
+		/**
+		 * файлы, цепочка кластеров которых замкнута
+		 */
+		List<String> cycles = Lists.newArrayList();
+		List<Integer> crossLinked = Lists.newArrayList();
+		/**
+		 * занятые кластеры, которые не принадлежат ни одному файлу
+		 */
+		List<Integer> orphans = Lists.newArrayList();
+
+		public boolean isClean() {
+			return checksumErrors.isEmpty() && danglingPointers.isEmpty() && cycles.isEmpty()
+					&& crossLinked.isEmpty() && orphans.isEmpty();
+		}
+
+		public List<Integer> getChecksumErrors() {
+			return checksumErrors;
+		}
+
+		public List<Integer> getDanglingPointers() {
+			return danglingPointers;
+		}
+
+		public List<String> getCycles() {
+			return cycles;
+		}
+
+		public List<Integer> getCrossLinked() {
+			return crossLinked;
+		}
+
+		public List<Integer> getOrphans() {
+			return orphans;
+		}
+
+		public String toString() {
+			return String.format(FORMAT, image, clusters, bytesRead, time / 1000000,
+					checksums ? "есть" : "нет", checksumErrors, danglingPointers, cycles, crossLinked, orphans,
+					isClean() ? "Ошибок нет" : "Образ поврежден");
+		}
+	}
+
+	/**
+	 * @param image - файл образа
+	 * @param rate - не больше скольких байт в секунду читать, 0 - без ограничения
+	 */
+	public ImageScrubber(File image, long rate) {
+		if (rate < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.image = image;
+		this.rate = rate;
+	}
+
+	/**
+	 * Запускает проверку в отдельном фоновом потоке с низким приоритетом
+	 */
+	public ImageScrubber start() {
+		Thread thread = new Thread(this, "scrubber " + image.getName());
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+		return this;
+	}
+
+	public void run() {
+		try {
+			complete(scrub());
+		} catch (Throwable e) {
+			completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Проверяет образ в текущем потоке
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public Report scrub() throws IOException, InterruptedException {
+		long startTime = System.nanoTime();
+		Report report = new Report();
+		report.image = image.getPath();
+		FileChannel channel = FileChannel.open(image.toPath(), StandardOpenOption.READ);
+		try {
+			long clustersEnd = FileSystem.FS_BLOCKS_STARTS + (long) FileSystem.BLOCK_SIZE * FileSystem.BLOCK_NUM;
+			if (channel.size() < clustersEnd) {
+				throw new IOException("Файл короче образа");
+			}
+			ByteBuffer header = ByteBuffer.allocate(FileSystem.FS_BLOCKS_STARTS);
+			read(channel, header, 0, report, startTime);
+			header.flip();
+
+			int[] checksums = null;
+			ByteBuffer trailer = ByteBuffer.allocate(FileSystem.CHECKSUMS_SIZE);
+			if (channel.size() >= clustersEnd + FileSystem.CHECKSUMS_SIZE) {
+				read(channel, trailer, channel.size() - FileSystem.CHECKSUMS_SIZE, report, startTime);
+				trailer.flip();
+				if (trailer.getInt(FileSystem.CHECKSUMS_SIZE - 4) == FileSystem.CHECKSUM_MAGIC) {
+					checksums = new int[FileSystem.BLOCK_NUM + 1];
+					for (int cluster = 1; cluster <= FileSystem.BLOCK_NUM; ++cluster) {
+						checksums[cluster] = trailer.getInt();
+					}
+				}
+			}
+			report.checksums = checksums != null;
+
+			// номера следующих кластеров, кластеры читаются подряд кусками
+			int[] next = new int[FileSystem.BLOCK_NUM + 1];
+			ByteBuffer chunk = ByteBuffer.allocate(CHUNK_CLUSTERS * FileSystem.BLOCK_SIZE);
+			CRC32 crc = new CRC32();
+			int count;
+			for (int first = 1; first <= FileSystem.BLOCK_NUM; first += CHUNK_CLUSTERS) {
+				count = Math.min(CHUNK_CLUSTERS, FileSystem.BLOCK_NUM - first + 1);
+				chunk.clear();
+				chunk.limit(count * FileSystem.BLOCK_SIZE);
+				read(channel, chunk, FileSystem.FS_BLOCKS_STARTS + (long) (first - 1) * FileSystem.BLOCK_SIZE, report, startTime);
+				for (int i = 0; i < count; ++i) {
+					next[first + i] = FileSystem.getUnsignedByteValue(chunk.get(i * FileSystem.BLOCK_SIZE + 1));
+					if (checksums != null) {
+						crc.reset();
+						crc.update(chunk.array(), i * FileSystem.BLOCK_SIZE, FileSystem.BLOCK_SIZE);
+						if ((int) crc.getValue() != checksums[first + i]) {
+							report.checksumErrors.add(first + i);
+						}
+					}
+				}
+				report.clusters += count;
+			}
+			checkChains(header, next, report);
+		} finally {
+			channel.close();
+		}
+		report.time = System.nanoTime() - startTime;
+		return report;
+	}
+
+	/**
+	 * Проходит цепочки кластеров всех файлов
+	 */
+	private static void checkChains(ByteBuffer header, int[] next, Report report) {
+		byte[] unallocatedBlocks = new byte[256];
+		header.get(unallocatedBlocks);
+		boolean[] allocated = FileSystem.getAllocatedClusters(unallocatedBlocks);
+		int filesNum = FileSystem.getUnsignedByteValue(header.get());
+		// номер файла, которому принадлежит кластер, + 1
+		int[] owner = new int[FileSystem.BLOCK_NUM + 1];
+		int cluster;
+		int previous;
+		String name;
+		for (int i = 0; i < filesNum; ++i) {
+			int nameLen = FileSystem.getUnsignedByteValue(header.get(257 + i * 128));
+			byte[] byteName = new byte[nameLen];
+			header.position(257 + i * 128 + 1);
+			header.get(byteName);
+			name = new String(byteName);
+			previous = 0;
+			cluster = FileSystem.getUnsignedByteValue(header.get(257 + (i + 1) * 128 - 1));
+			while (cluster != 0) {
+				if (!allocated[cluster]) {
+					report.danglingPointers.add(previous);
+					break;
+				}
+				if (owner[cluster] == i + 1) {
+					report.cycles.add(name);
+					break;
+				}
+				if (owner[cluster] != 0) {
+					report.crossLinked.add(cluster);
+					break;
+				}
+				owner[cluster] = i + 1;
+				previous = cluster;
+				cluster = next[cluster];
+			}
+		}
+		for (cluster = 1; cluster <= FileSystem.BLOCK_NUM; ++cluster) {
+			if (allocated[cluster] && owner[cluster] == 0) {
+				report.orphans.add(cluster);
+			}
+		}
+	}
+
+	/**
+	 * Читает buffer целиком с позиции position, выдерживая скорость
+	 */
+	private void read(FileChannel channel, ByteBuffer buffer, long position, Report report, long startTime)
+			throws IOException, InterruptedException {
+		int read;
+		while (buffer.hasRemaining()) {
+			read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Файл короче образа");
+			}
+			position += read;
+			report.bytesRead += read;
+		}
+		if (rate > 0) {
+			long delay = report.bytesRead * 1000000000L / rate - (System.nanoTime() - startTime);
+			if (delay > 0) {
+				TimeUnit.NANOSECONDS.sleep(delay);
+			}
+		}
+	}
+}
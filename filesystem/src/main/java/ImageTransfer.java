@@ -0,0 +1,152 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Асинхронная запись или чтение образа ФС.
+ * Образ разбивается на куски по {@link #CHUNK_SIZE} байт, все куски
+ * отправляются в {@link AsynchronousFileChannel} сразу и обрабатываются
+ * параллельно. Завершается, когда обработаны все куски и выполнено
+ * завершающее действие (например разбор загруженного образа).
+ */
+public class ImageTransfer extends CompletableFuture<Void> {
+	static final int CHUNK_SIZE = 1 << 16;
+
+	private AsynchronousFileChannel channel;
+	private boolean write;
+	private long total;
+	private AtomicLong transferred = new AtomicLong(0);
+	/**
+	 * общий счетчик байт ФС
+	 */
+	private AtomicLong counter;
+	/**
+	 * число кусков, которые еще не записаны/прочитаны
+	 */
+	private AtomicInteger pending = new AtomicInteger(0);
+	private Runnable onDone;
+
+	private ImageTransfer(AsynchronousFileChannel channel, boolean write, long total, AtomicLong counter, Runnable onDone) {
+		this.channel = channel;
+		this.write = write;
+		this.total = total;
+		this.counter = counter;
+		this.onDone = onDone;
+	}
+
+	/**
+	 * Записывает image целиком в channel с нулевого смещения
+	 * @param counter - увеличивается на число записанных байт
+	 * @param onDone - выполняется после записи, может быть null
+	 */
+	static ImageTransfer write(AsynchronousFileChannel channel, ByteBuffer image, AtomicLong counter, Runnable onDone) {
+		ImageTransfer transfer = new ImageTransfer(channel, true, image.remaining(), counter, onDone);
+		transfer.start(image);
+		return transfer;
+	}
+
+	/**
+	 * Читает channel с нулевого смещения, пока не заполнится image
+	 * @param counter - увеличивается на число прочитанных байт
+	 * @param onDone - выполняется после чтения, может быть null
+	 */
+	static ImageTransfer read(AsynchronousFileChannel channel, ByteBuffer image, AtomicLong counter, Runnable onDone) {
+		ImageTransfer transfer = new ImageTransfer(channel, false, image.remaining(), counter, onDone);
+		transfer.start(image);
+		return transfer;
+	}
+
+	/**
+	 * Размер образа в байтах
+	 */
+	public long getBytesTotal() {
+		return total;
+	}
+
+	/**
+	 * Сколько байт уже записано/прочитано
+	 */
+	public long getBytesTransferred() {
+		return transferred.get();
+	}
+
+	/**
+	 * Доля выполненной работы от 0 до 1
+	 */
+	public double getProgress() {
+		return total == 0 ? 1 : (double) transferred.get() / total;
+	}
+
+	private void start(ByteBuffer image) {
+		int chunks = (int) ((total + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		if (chunks == 0) {
+			finish();
+			return;
+		}
+		pending.set(chunks);
+		// позиция в буфере совпадает со смещением в файле
+		for (int i = 0; i < chunks; ++i) {
+			ByteBuffer chunk = image.duplicate();
+			chunk.position(i * CHUNK_SIZE);
+			chunk.limit((int) Math.min((long) (i + 1) * CHUNK_SIZE, total));
+			transfer(chunk);
+		}
+	}
+
+	private void transfer(ByteBuffer chunk) {
+		try {
+			if (write) {
+				channel.write(chunk, chunk.position(), chunk, handler);
+			} else {
+				channel.read(chunk, chunk.position(), chunk, handler);
+			}
+		} catch (RuntimeException e) {
+			fail(e);
+		}
+	}
+
+	private CompletionHandler<Integer, ByteBuffer> handler = new CompletionHandler<Integer, ByteBuffer>() {
+		public void completed(Integer result, ByteBuffer chunk) {
+			if (result < 0) {
+				fail(new IOException("Файл короче образа"));
+				return;
+			}
+			transferred.addAndGet(result);
+			counter.addAndGet(result);
+			if (chunk.hasRemaining()) {
+				transfer(chunk);
+			} else if (pending.decrementAndGet() == 0) {
+				finish();
+			}
+		}
+
+		public void failed(Throwable exc, ByteBuffer chunk) {
+			fail(exc);
+		}
+	};
+
+	private void finish() {
+		try {
+			channel.close();
+			if (onDone != null) {
+				onDone.run();
+			}
+			complete(null);
+		} catch (Throwable e) {
+			completeExceptionally(e);
+		}
+	}
+
+	private void fail(Throwable exc) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// важнее исходная ошибка
+		}
+		completeExceptionally(exc);
+	}
+}
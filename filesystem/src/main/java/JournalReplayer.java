@@ -0,0 +1,332 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Воспроизведение нагрузки по журналу ФС.
+ * Журнал сохраненного образа (снятый с рабочей ФС командой save) повторяется
+ * на другой ФС: с исходными интервалами между событиями (можно ускорить в speed раз)
+ * или с максимальной скоростью, в одном или нескольких потоках.
+ * <p>
+ * При нескольких потоках события делятся между потоками по имени файла, так что
+ * события одного файла выполняются по порядку одним потоком. Откаты и транзакции
+ * зависят от всей ФС, поэтому они выполняются, только когда все предыдущие события
+ * выполнены, и следующие события ждут их окончания. События, которые откатываются
+ * откатом, тоже выполняются строго по порядку: откат отменяет последние записи журнала,
+ * и журнал копии должен совпадать с исходным.
+ * </p>
+ */
+class JournalReplayer {
+	private static final String USAGE = "Параметры запуска: [-s speed] [-t threads] image\n" +
+			"speed - во сколько раз ускорить исходные интервалы (0 - без пауз, по умолчанию), " +
+			"threads - число потоков (по умолчанию 1)";
+	private static final String SPEED_FLAG = "-s";
+	private static final String THREADS_FLAG = "-t";
+
+	private static final String SUMMARY_FORMAT = "Воспроизведено событий: %d за %d мс (%.0f оп/с), потоков: %d\n";
+	private static final String HEADER_FORMAT = "%-14s | %10s | %10s | %10s | %10s | %10s\n";
+	private static final String ROW_FORMAT = "%-14s | %10d | %10.1f | %10.1f | %10.1f | %10.1f\n";
+
+	private List<Event> events;
+
+	/**
+	 * события, которые нельзя выполнять параллельно с соседними
+	 */
+	private boolean[] barriers;
+
+	private int threads = 1;
+
+	/**
+	 * 0 - без пауз, иначе во сколько раз ускорить исходные интервалы
+	 */
+	private double speed = 0;
+
+	private final LatencyHistogram[] latencies = new LatencyHistogram[EventType.values().length];
+
+	private long time = 0;
+
+	/**
+	 * время, с которого отсчитываются интервалы при воспроизведении с паузами
+	 */
+	private long startTime;
+
+	/**
+	 * @param events - события от старых к новым
+	 */
+	public JournalReplayer(List<Event> events) {
+		this.events = events;
+		barriers = new boolean[events.size()];
+		Event event;
+		for (int i = 0; i < barriers.length; ++i) {
+			event = events.get(i);
+			if (event.type == EventType.UNDO) {
+				Arrays.fill(barriers, getUndoReach(i, Integer.valueOf(event.text)), i + 1, true);
+			} else if (event.type == EventType.TRANSACTION) {
+				barriers[i] = true;
+			}
+		}
+		for (int i = 0; i < latencies.length; ++i) {
+			latencies[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Берет журнал из образа ФС
+	 * @param image
+	 * @throws IOException
+	 */
+	static JournalReplayer load(File image) throws IOException {
+		FileSystem fs = new FileSystem();
+		fs.loadFileSystem(image);
+		return new JournalReplayer(fs.getJournal());
+	}
+
+	/**
+	 * Самое старое событие, которое затрагивает откат count событий перед событием с номером index
+	 * (откат отката повторяет события перед ним)
+	 */
+	private int getUndoReach(int index, int count) {
+		int result = Math.max(0, index - count);
+		Event event;
+		for (int i = index - 1; i >= index - count && i >= 0; --i) {
+			event = events.get(i);
+			if (event.type == EventType.UNDO) {
+				result = Math.min(result, getUndoReach(i, Integer.valueOf(event.text)));
+			}
+		}
+		return result;
+	}
+
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * @param speed - 0 - без пауз, 1 - с исходными интервалами, k - в k раз быстрее
+	 */
+	public void setSpeed(double speed) {
+		if (speed < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.speed = speed;
+	}
+
+	/**
+	 * Воспроизводит журнал на fs
+	 * @param fs
+	 * @throws RuntimeException - если событие не удалось повторить
+	 */
+	public void replay(FileSystem fs) {
+		for (LatencyHistogram latency : latencies) {
+			latency.reset();
+		}
+		startTime = System.nanoTime();
+		ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		try {
+			List<Event> segment = Lists.newArrayList();
+			Event event;
+			for (int i = 0; i < barriers.length; ++i) {
+				event = events.get(i);
+				if (barriers[i]) {
+					replaySegment(fs, segment, executor);
+					segment.clear();
+					replay(fs, event);
+				} else {
+					segment.add(event);
+				}
+			}
+			replaySegment(fs, segment, executor);
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+			time = System.nanoTime() - startTime;
+		}
+	}
+
+	/**
+	 * Выполняет события без откатов и транзакций, делит их по потокам по имени файла
+	 */
+	private void replaySegment(final FileSystem fs, List<Event> segment, ExecutorService executor) {
+		if (segment.isEmpty()) {
+			return;
+		}
+		if (executor == null) {
+			replayShard(fs, segment);
+			return;
+		}
+		List<List<Event>> shards = Lists.newArrayListWithCapacity(threads);
+		for (int i = 0; i < threads; ++i) {
+			shards.add(Lists.<Event>newArrayList());
+		}
+		for (Event event : segment) {
+			shards.get((event.file.hashCode() & Integer.MAX_VALUE) % threads).add(event);
+		}
+		List<Future<Void>> futures = Lists.newArrayListWithCapacity(threads);
+		for (final List<Event> shard : shards) {
+			if (shard.isEmpty()) {
+				continue;
+			}
+			futures.add(executor.submit(new Callable<Void>() {
+				public Void call() {
+					replayShard(fs, shard);
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private void replayShard(FileSystem fs, List<Event> shard) {
+		for (Event event : shard) {
+			replay(fs, event);
+		}
+	}
+
+	/**
+	 * Выполняет событие в назначенное время.
+	 * При воспроизведении с паузами задержка считается от назначенного времени,
+	 * чтобы в нее попадало и ожидание за отстающими событиями.
+	 */
+	private void replay(FileSystem fs, Event event) {
+		long begin;
+		if (speed == 0) {
+			begin = System.nanoTime();
+		} else {
+			begin = startTime + (long) ((event.date.getTime() - events.get(0).date.getTime()) * 1e6 / speed);
+			long delay;
+			while ((delay = begin - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(delay);
+			}
+		}
+		apply(fs, event);
+		latencies[event.type.ordinal()].record(System.nanoTime() - begin);
+	}
+
+	/**
+	 * Повторяет действие события
+	 */
+	private static void apply(FileSystem fs, Event event) {
+		switch (event.type) {
+		case CREATE_FILE:
+			fs.createNewFile(event.file);
+			break;
+		case APPEND_TO_FILE:
+			fs.appendToFile(event.file, event.text);
+			break;
+		case DELETE_FILE:
+			fs.deleteFile(event.file);
+			break;
+		case CLEAR_FILE:
+			// очистка журналируется при перезаписи и удалении существующего файла,
+			// повторное создание файла очищает его так же
+			fs.createNewFile(event.file);
+			break;
+		case UNDO:
+			fs.undo(Integer.valueOf(event.text));
+			break;
+		case TRANSACTION:
+			// другие потоки не должны попасть в транзакцию
+			synchronized (fs) {
+				fs.beginTransaction();
+				try {
+					for (Event child : event.events) {
+						apply(fs, child);
+					}
+				} catch (RuntimeException e) {
+					fs.rollback();
+					throw e;
+				}
+				fs.commit();
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Время последнего воспроизведения в наносекундах
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Задержки событий данного типа последнего воспроизведения
+	 */
+	LatencyHistogram getLatency(EventType type) {
+		return latencies[type.ordinal()];
+	}
+
+	/**
+	 * Выводит пропускную способность и задержки по типам событий (в мкс)
+	 */
+	public void report(PrintStream out) {
+		double seconds = time / 1e9;
+		out.format(SUMMARY_FORMAT, events.size(), time / 1000000,
+				seconds == 0 ? 0.0 : events.size() / seconds, threads);
+		out.format(HEADER_FORMAT, "Событие", "Число", "Среднее", "p50", "p99", "max");
+		LatencyHistogram latency;
+		for (EventType type : EventType.values()) {
+			latency = getLatency(type);
+			if (latency.getCount() == 0) {
+				continue;
+			}
+			out.format(ROW_FORMAT, type.name(), latency.getCount(), latency.getMean() / 1000,
+					latency.getPercentile(50) / 1000.0, latency.getPercentile(99) / 1000.0, latency.getMax() / 1000.0);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		JournalReplayer replayer;
+		int threads = 1;
+		double speed = 0;
+		int argIndex = 0;
+		try {
+			while (argIndex + 1 < args.length) {
+				if (args[argIndex].equals(SPEED_FLAG)) {
+					speed = Double.valueOf(args[argIndex + 1]);
+				} else if (args[argIndex].equals(THREADS_FLAG)) {
+					threads = Integer.valueOf(args[argIndex + 1]);
+				} else {
+					break;
+				}
+				argIndex += 2;
+			}
+			if (argIndex != args.length - 1) {
+				throw new IllegalArgumentException();
+			}
+			replayer = load(new File(args[argIndex]));
+			replayer.setThreads(threads);
+			replayer.setSpeed(speed);
+		} catch (IllegalArgumentException e) {
+			System.out.println(USAGE);
+			return;
+		}
+		FileSystem fs = new FileSystem();
+		replayer.replay(fs);
+		replayer.report(System.out);
+		fs.getMetrics().dump(System.out);
+	}
+}
@@ -0,0 +1,7 @@
+/**
+ * Операция ФС, для которой собираются метрики
+ */
+enum OperationType {
+	CREATE, READ, WRITE, APPEND, DELETE, SIZE, DIR, LOG, UNDO,
+	COMMIT, ROLLBACK, SAVE, LOAD, SAVE_ASYNC, LOAD_ASYNC, GREP
+}
@@ -0,0 +1,107 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Сетевой протокол ФС.
+ * <h1>
+ * Запрос:
+ * </h1>
+ * <ol>
+ * <li>4 байта - длина оставшейся части запроса</li>
+ * <li>1 байт - тип команды ({@link CommandType#byteValue()})</li>
+ * <li>аргумент команды - строка</li>
+ * <li>данные команды (для cat > и cat >>) - строка</li>
+ * </ol>
+ * <h1>
+ * Ответ:
+ * </h1>
+ * <ol>
+ * <li>4 байта - длина оставшейся части ответа</li>
+ * <li>1 байт - статус ({@link #OK}, {@link #ERROR}, {@link #BYE})</li>
+ * <li>вывод команды или текст ошибки в UTF-8</li>
+ * </ol>
+ * Строка - 4 байта длины (-1 для null) и байты строки в UTF-8.
+ * Ответы приходят в том же порядке, в котором были отправлены запросы,
+ * поэтому клиент может отправлять запросы не дожидаясь ответов.
+ */
+final class Protocol {
+	static final Charset CHARSET = Charset.forName("UTF-8");
+
+	static final byte OK = 0;
+	static final byte ERROR = 1;
+	/**
+	 * ответ на exit, после него сервер закрывает соединение
+	 */
+	static final byte BYE = 2;
+
+	/**
+	 * максимальный размер кадра, защищает сервер от мусора в соединении
+	 */
+	static final int MAX_FRAME = 1 << 24;
+
+	private Protocol() {
+	}
+
+	static ByteBuffer encodeRequest(Command command) {
+		byte[] argument = command.argument == null ? null : command.argument.getBytes(CHARSET);
+		byte[] payload = command.payload == null ? null : command.payload.getBytes(CHARSET);
+		int length = 1 + stringLength(argument) + stringLength(payload);
+		ByteBuffer frame = ByteBuffer.allocate(4 + length);
+		frame.putInt(length);
+		frame.put(command.type.byteValue());
+		putString(frame, argument);
+		putString(frame, payload);
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Разбирает тело запроса (без длины)
+	 * @throws IllegalArgumentException - если запрос поврежден
+	 */
+	static Command decodeRequest(ByteBuffer frame) {
+		CommandType type = CommandType.valueOf(frame.get());
+		if (type == null) {
+			throw new IllegalArgumentException("Неизвестная команда");
+		}
+		String argument = getString(frame);
+		String payload = getString(frame);
+		return new Command(type, argument, payload);
+	}
+
+	static ByteBuffer encodeResponse(byte status, String text) {
+		byte[] body = text.getBytes(CHARSET);
+		ByteBuffer frame = ByteBuffer.allocate(4 + 1 + body.length);
+		frame.putInt(1 + body.length);
+		frame.put(status);
+		frame.put(body);
+		frame.flip();
+		return frame;
+	}
+
+	private static int stringLength(byte[] string) {
+		return 4 + (string == null ? 0 : string.length);
+	}
+
+	private static void putString(ByteBuffer frame, byte[] string) {
+		if (string == null) {
+			frame.putInt(-1);
+		} else {
+			frame.putInt(string.length);
+			frame.put(string);
+		}
+	}
+
+	private static String getString(ByteBuffer frame) {
+		int length = frame.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > frame.remaining()) {
+			throw new IllegalArgumentException("Поврежденная строка в запросе");
+		}
+		byte[] string = new byte[length];
+		frame.get(string);
+		return new String(string, CHARSET);
+	}
+}
@@ -0,0 +1,272 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Несколько независимых ФС (томов) под одним пространством имен.
+ * Файл живет в томе, номер которого определяется хешем имени, у каждого тома
+ * свои кластеры, журнал, образ и блокировка, так что операции над файлами
+ * разных томов идут параллельно. Образы томов сохраняются и грузятся одновременно.
+ * <p>
+ * Транзакции не поддерживаются: они не могут охватить несколько томов.
+ * </p>
+ */
+public class ShardedFileSystem {
+	private static final String IMAGE_FORMAT = "%s.%d";
+
+	private FileSystem[] volumes;
+	/**
+	 * события отката томов - общий откат, частью которого они являются,
+	 * меняется и читается только под блокировками всех томов
+	 */
+	private Map<Event, Object> undoGroups = Maps.newHashMap();
+
+	/**
+	 * @param volumesNum - число томов
+	 */
+	public ShardedFileSystem(int volumesNum) {
+		if (volumesNum < 1) {
+			throw new IllegalArgumentException();
+		}
+		volumes = new FileSystem[volumesNum];
+		for (int i = 0; i < volumesNum; ++i) {
+			volumes[i] = new FileSystem();
+		}
+	}
+
+	public int getVolumesNum() {
+		return volumes.length;
+	}
+
+	/**
+	 * Том, в котором живет файл
+	 */
+	FileSystem getVolume(String fileName) {
+		return volumes[(fileName.hashCode() & Integer.MAX_VALUE) % volumes.length];
+	}
+
+	FileSystem getVolume(int i) {
+		return volumes[i];
+	}
+
+	public void createNewFile(String fileName) {
+		getVolume(fileName).createNewFile(fileName);
+	}
+
+	public String readFile(String fileName) {
+		return getVolume(fileName).readFile(fileName);
+	}
+
+	public void writeToFile(String fileName, String text) {
+		getVolume(fileName).writeToFile(fileName, text);
+	}
+
+	public void appendToFile(String fileName, String text) {
+		getVolume(fileName).appendToFile(fileName, text);
+	}
+
+	public void deleteFile(String fileName) {
+		getVolume(fileName).deleteFile(fileName);
+	}
+
+	public int getFileSize(String fileName) {
+		return getVolume(fileName).getFileSize(fileName);
+	}
+
+	/**
+	 * Выводит в out имена всех файлов всех томов с их размерами, по порядку имен
+	 */
+	public void dir(PrintStream out) {
+		Map<String, Integer> files = Maps.newTreeMap();
+		for (FileSystem volume : volumes) {
+			files.putAll(volume.getFileSizes());
+		}
+		for (Entry<String, Integer> file : files.entrySet()) {
+			out.format(FileSystem.DIR_FORMAT, file.getKey(), file.getValue());
+		}
+	}
+
+	/**
+	 * Выводит в out журналы всех томов одним журналом
+	 * (индексы событий сквозные для всех ФС)
+	 */
+	public void showLog(PrintStream out) {
+		List<Event> log = Lists.newArrayList();
+		for (FileSystem volume : volumes) {
+			log.addAll(volume.getJournal());
+		}
+		// от новых к старым, как и в журнале тома
+		Collections.sort(log);
+		FileSystem.printLog(log, out);
+	}
+
+	/**
+	 * Откатывает count последних событий общего журнала:
+	 * каждый том откатывает свои события из них.
+	 * На все время отката захватываются блокировки всех томов (всегда по порядку номеров),
+	 * так что запись в любой том не вклинится между выбором событий и их откатом.
+	 * Каждый том журналирует свой откат отдельным событием, но эти события
+	 * считаются одним событием общего журнала и откатываются только вместе
+	 * (пока тома не перезагружены из образов).
+	 */
+	public void undo(int count) {
+		undo(0, count);
+	}
+
+	/**
+	 * Захватывает блокировку тома volume и следующих, после чего откатывает
+	 */
+	private void undo(int volume, int count) {
+		if (volume < volumes.length) {
+			synchronized (volumes[volume]) {
+				undo(volume + 1, count);
+			}
+			return;
+		}
+		List<Event> log = Lists.newArrayList();
+		Map<Event, Integer> owners = Maps.newHashMap();
+		for (int i = 0; i < volumes.length; ++i) {
+			for (Event event : volumes[i].getJournal()) {
+				log.add(event);
+				owners.put(event, i);
+			}
+		}
+		if (count < 0) {
+			throw new IllegalArgumentException();
+		}
+		Collections.sort(log);
+		int[] counts = new int[volumes.length];
+		int position = 0;
+		Object group;
+		for (int i = 0; i < count; ++i) {
+			if (position == log.size()) {
+				throw new IllegalArgumentException();
+			}
+			// события отката одного общего отката идут в общем журнале подряд
+			group = undoGroups.get(log.get(position));
+			do {
+				counts[owners.get(log.get(position++))]++;
+			} while (group != null && position < log.size() && undoGroups.get(log.get(position)) == group);
+		}
+		group = new Object();
+		for (int i = 0; i < volumes.length; ++i) {
+			if (counts[i] > 0) {
+				volumes[i].undo(counts[i]);
+				undoGroups.put(volumes[i].getLastEvent(), group);
+			}
+		}
+	}
+
+	/**
+	 * Ищет pattern во всех томах
+	 * @see FileSystem#grep(String, BiConsumer)
+	 */
+	public int grep(String pattern, BiConsumer<String, Integer> listener) {
+		int result = 0;
+		for (FileSystem volume : volumes) {
+			result += volume.grep(pattern, listener);
+		}
+		return result;
+	}
+
+	/**
+	 * Образ тома i
+	 */
+	static File getImage(File base, int i) {
+		return new File(String.format(IMAGE_FORMAT, base.getPath(), i));
+	}
+
+	/**
+	 * Сохраняет образы всех томов одновременно в base.0, base.1, ...:
+	 * каждый том собирает и пишет свой образ в отдельном потоке
+	 * @throws IOException
+	 */
+	public void createFileSystemImage(File base) throws IOException {
+		List<Callable<Void>> tasks = Lists.newArrayList();
+		for (int i = 0; i < volumes.length; ++i) {
+			final FileSystem volume = volumes[i];
+			final File image = getImage(base, i);
+			tasks.add(new Callable<Void>() {
+				public Void call() throws IOException {
+					volume.createFileSystemImage(image);
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks);
+	}
+
+	/**
+	 * Грузит все тома одновременно из base.0, base.1, ...
+	 * Образы сначала разбираются все, тома подменяются, только если разобрались все,
+	 * иначе ни один том не меняется.
+	 * @throws IOException
+	 */
+	public void loadFileSystem(File base) throws IOException {
+		for (int i = 0; i < volumes.length; ++i) {
+			if (!getImage(base, i).isFile()) {
+				throw new IOException("Нет образа тома " + getImage(base, i));
+			}
+		}
+		List<Callable<FileSystem>> tasks = Lists.newArrayList();
+		for (int i = 0; i < volumes.length; ++i) {
+			final FileSystem volume = volumes[i];
+			final File image = getImage(base, i);
+			tasks.add(new Callable<FileSystem>() {
+				public FileSystem call() throws IOException {
+					return volume.readImage(image);
+				}
+			});
+		}
+		List<FileSystem> loaded = invokeAll(tasks);
+		for (int i = 0; i < volumes.length; ++i) {
+			volumes[i].assignLoaded(loaded.get(i));
+		}
+	}
+
+	/**
+	 * Выполняет задачи томов, по потоку на том, и дожидается всех
+	 * @return результаты в порядке задач
+	 * @throws IOException - первая по порядку ошибка задач
+	 */
+	private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+		try {
+			List<T> result = Lists.newArrayListWithCapacity(tasks.size());
+			for (Future<T> future : executor.invokeAll(tasks)) {
+				result.add(future.get());
+			}
+			return result;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
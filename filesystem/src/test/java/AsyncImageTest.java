@@ -0,0 +1,73 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+public class AsyncImageTest {
+
+	private static String dump(FileSystem fs) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(output);
+		fs.dir(out);
+		fs.showLog(out);
+		return output.toString();
+	}
+
+	private static File tempImage() throws Exception {
+		File image = File.createTempFile("filesystem", ".img");
+		image.deleteOnExit();
+		return image;
+	}
+
+	@Test
+	public void snapshot() throws Exception {
+		FileSystem fs = new FileSystem();
+		fs.writeToFile("Тест1", "Привет, как дела?");
+		fs.writeToFile("Тест2", "Нормально.");
+		String before = dump(fs);
+
+		File image = tempImage();
+		ImageTransfer save = fs.saveAsync(image);
+		// ФС работает дальше, в образ это уже не попадет
+		fs.deleteFile("Тест1");
+		save.join();
+		assertEquals(save.getBytesTotal(), save.getBytesTransferred());
+		assertEquals(image.length(), fs.getBytesWritten());
+		assertEquals(1.0, save.getProgress(), 0);
+
+		FileSystem loaded = new FileSystem();
+		loaded.loadAsync(image).join();
+		assertEquals(before, dump(loaded));
+		assertEquals("Привет, как дела?", loaded.readFile("Тест1"));
+		assertEquals(image.length(), loaded.getBytesRead());
+	}
+
+	/**
+	 * Образ полностью занятой ФС больше одного куска асинхронной передачи
+	 */
+	@Test
+	public void fullImage() throws Exception {
+		FileSystem fs = new FileSystem();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 255 * 255; ++i) {
+			text.append((char) ('a' + i % 26));
+		}
+		fs.writeToFile("full", text.toString());
+		File image = tempImage();
+		ImageTransfer save = fs.saveAsync(image);
+		save.join();
+		assertTrue(save.getBytesTotal() > ImageTransfer.CHUNK_SIZE);
+
+		FileSystem loaded = new FileSystem();
+		loaded.loadFileSystem(image);
+		assertEquals(text.toString(), loaded.readFile("full"));
+
+		fs.createFileSystemImage(image);
+		loaded.loadAsync(image).join();
+		assertEquals(dump(fs), dump(loaded));
+	}
+}
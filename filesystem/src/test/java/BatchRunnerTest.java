@@ -0,0 +1,40 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+public class BatchRunnerTest {
+	private static final String SCRIPT =
+			"touch Тест1\n" +
+			"cat >Тест1\n" +
+			"Привет, как дела?\n" +
+			"cat >>Тест1\n" +
+			" Нормально.\n" +
+			"неизвестная команда\n" +
+			"cat >Тест2\n" +
+			"cat Тест2\n" +
+			"rm -f Тест2\n" +
+			"cat Тест1\n" +
+			"exit\n" +
+			"touch Тест3\n";
+
+	@Test
+	public void runScript() throws Exception {
+		BatchRunner batch = BatchRunner.parse(new ByteArrayInputStream(SCRIPT.getBytes()));
+		assertEquals(8, batch.getCommands().size());
+
+		FileSystem fs = new FileSystem();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		batch.run(fs, new PrintStream(output));
+
+		assertEquals(7, batch.getExecuted());
+		assertEquals("Привет, как дела? Нормально.", fs.readFile("Тест1"));
+		// cat >Тест2 забрал в качестве данных строку "cat Тест2"
+		assertEquals("Привет, как дела? Нормально.\n", output.toString());
+		assertEquals(0, fs.getFileSize("Тест3"));
+		System.out.println(batch.getSummary());
+	}
+}
@@ -0,0 +1,142 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class FileSystemServerTest {
+	private static final String HOST = "localhost";
+	private static final int ITERATIONS = 20000;
+
+	private FileSystem fs;
+	private FileSystemServer server;
+	private Thread serverThread;
+
+	@Before
+	public void start() throws Exception {
+		fs = new FileSystem();
+		server = new FileSystemServer(fs, 0);
+		serverThread = new Thread(server);
+		serverThread.start();
+	}
+
+	@After
+	public void stop() throws Exception {
+		server.close();
+		serverThread.join();
+	}
+
+	@Test
+	public void sharedVolume() throws Exception {
+		FileSystemClient first = new FileSystemClient(HOST, server.getPort());
+		FileSystemClient second = new FileSystemClient(HOST, server.getPort());
+
+		first.write("Тест1", "Привет, как дела?");
+		second.append("Тест1", " Нормально.");
+		assertEquals("Привет, как дела? Нормально.", first.read("Тест1"));
+		assertEquals("Привет, как дела? Нормально.", fs.readFile("Тест1"));
+
+		second.undo(1);
+		assertEquals("Привет, как дела?", first.read("Тест1"));
+		assertTrue(second.dir().contains("Тест1"));
+
+		first.remove("Тест1");
+		assertEquals("", second.dir());
+		first.close();
+		second.close();
+	}
+
+	@Test
+	public void images() throws Exception {
+		assertTrue(server.getAddress().isLoopbackAddress());
+		try {
+			new FileSystemServer(fs, new InetSocketAddress(0), null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// без директории образов слушать все адреса нельзя
+		}
+
+		File images = Files.createTempDirectory("images").toFile();
+		FileSystemServer confined = new FileSystemServer(fs,
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), images);
+		Thread confinedThread = new Thread(confined);
+		confinedThread.start();
+		File image = new File(images, "fs.img");
+		File outside = new File(images.getParentFile(), images.getName() + ".img");
+		try {
+			FileSystemClient client = new FileSystemClient(HOST, confined.getPort());
+			client.write("Тест1", "Привет");
+			client.save("fs.img");
+			assertTrue(image.isFile());
+			try {
+				client.execute(new Command(CommandType.SAVE_ASYNC, "fs.img"));
+				fail();
+			} catch (FileSystemClient.RemoteException e) {
+				// о результате фонового сохранения клиент бы не узнал
+			}
+			try {
+				client.execute(new Command(CommandType.SCRUB, "fs.img"));
+				fail();
+			} catch (FileSystemClient.RemoteException e) {
+				// и отчета проверки тоже
+			}
+			try {
+				client.save("../" + outside.getName());
+				fail();
+			} catch (FileSystemClient.RemoteException e) {
+				assertFalse(outside.exists());
+			}
+			client.close();
+		} finally {
+			confined.close();
+			confinedThread.join();
+			image.delete();
+			outside.delete();
+			images.delete();
+		}
+	}
+
+	/**
+	 * Сравнение последовательных запросов и конвейера на loopback
+	 */
+	@Test
+	public void pipelining() throws Exception {
+		System.out.println("\n\n	FileSystemServerTest:");
+		FileSystemClient client = new FileSystemClient(HOST, server.getPort());
+		client.write("Тест1", "Привет, как дела?");
+
+		long startTime = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; ++i) {
+			client.read("Тест1");
+		}
+		long sequential = System.nanoTime() - startTime;
+
+		List<Command> commands = Lists.newArrayList();
+		for (int i = 0; i < ITERATIONS; ++i) {
+			commands.add(new Command(CommandType.READ, "Тест1"));
+		}
+		startTime = System.nanoTime();
+		List<FileSystemClient.Response> responses = client.pipeline(commands);
+		long pipelined = System.nanoTime() - startTime;
+		client.close();
+
+		assertEquals(ITERATIONS, responses.size());
+		for (FileSystemClient.Response response : responses) {
+			assertTrue(response.isOk());
+		}
+		System.out.println(String.format("Sequential %d ms (%.0f ops/s)", sequential / 1000000, ITERATIONS * 1e9 / sequential));
+		System.out.println(String.format("Pipelined %d ms (%.0f ops/s)", pipelined / 1000000, ITERATIONS * 1e9 / pipelined));
+		System.out.println(String.format("Result: %d < %d", pipelined / 1000000, sequential / 1000000));
+	}
+}
@@ -0,0 +1,95 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class GrepTest {
+
+	private static List<String> grep(FileSystem fs, String pattern) {
+		final List<String> result = Collections.synchronizedList(Lists.<String>newArrayList());
+		int count = fs.grep(pattern, new BiConsumer<String, Integer>() {
+			public void accept(String file, Integer offset) {
+				result.add(file + ":" + offset);
+			}
+		});
+		assertEquals(count, result.size());
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Все вхождения поиском по строке
+	 */
+	private static List<String> naive(Map<String, String> files, String pattern) {
+		List<String> result = Lists.newArrayList();
+		byte[] bytes = pattern.getBytes();
+		for (Entry<String, String> file : files.entrySet()) {
+			byte[] data = file.getValue().getBytes();
+			for (int i = 0; i + bytes.length <= data.length; ++i) {
+				int j = 0;
+				while (j < bytes.length && data[i + j] == bytes[j]) {
+					j++;
+				}
+				if (j == bytes.length) {
+					result.add(file.getKey() + ":" + i);
+				}
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	@Test
+	public void clusterBoundary() {
+		FileSystem fs = new FileSystem();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 253; ++i) {
+			text.append('.');
+		}
+		// "needle" начинается в первом кластере и кончается во втором
+		text.append("needle");
+		fs.writeToFile("first", text.toString());
+		fs.writeToFile("second", "aaaa");
+		assertEquals(Lists.newArrayList("first:253"), grep(fs, "needle"));
+		// перекрывающиеся вхождения
+		assertEquals(Lists.newArrayList("second:0", "second:1"), grep(fs, "aaa"));
+		assertTrue(grep(fs, "nothing").isEmpty());
+	}
+
+	@Test
+	public void manyFiles() {
+		FileSystem fs = new FileSystem();
+		Map<String, String> files = Maps.newHashMap();
+		for (int i = 0; i < 40; ++i) {
+			StringBuilder text = new StringBuilder();
+			for (int j = 0; j < i * 9; ++j) {
+				text.append(j % 7 == 0 ? "абв" : "ab");
+			}
+			fs.writeToFile("file" + i, text.toString());
+			files.put("file" + i, text.toString());
+		}
+		for (String pattern : new String[] {"абв", "bab", "вab", "ababab"}) {
+			assertEquals(pattern, naive(files, pattern), grep(fs, pattern));
+		}
+	}
+
+	@Test
+	public void command() throws Exception {
+		FileSystem fs = new FileSystem();
+		fs.writeToFile("first", "hello world");
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Command.parse("grep o w", null).execute(fs, new PrintStream(output));
+		assertEquals("first:4\n", output.toString());
+	}
+}
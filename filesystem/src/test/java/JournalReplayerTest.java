@@ -0,0 +1,90 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class JournalReplayerTest {
+	private static FileSystem source;
+	private static File image;
+
+	@BeforeClass
+	public static void capture() throws Exception {
+		source = new FileSystem();
+		for (int i = 0; i < 200; ++i) {
+			String file = "file" + (i % 17);
+			switch (i % 5) {
+			case 0:
+				source.writeToFile(file, "text " + i);
+				break;
+			case 4:
+				source.deleteFile("file" + (i % 13));
+				break;
+			default:
+				source.appendToFile(file, ", " + i);
+			}
+			if (i % 23 == 22) {
+				source.undo(3);
+			}
+			if (i % 31 == 30) {
+				source.beginTransaction();
+				source.appendToFile("file1", "+");
+				source.deleteFile("file2");
+				source.commit();
+			}
+			if (i % 47 == 46) {
+				source.undo(2);
+			}
+		}
+		image = File.createTempFile("filesystem", ".img");
+		image.deleteOnExit();
+		source.createFileSystemImage(image);
+	}
+
+	private static String dump(FileSystem fs) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(output);
+		fs.dir(out);
+		for (int i = 0; i < 17; ++i) {
+			out.println(fs.readFile("file" + i));
+		}
+		return output.toString();
+	}
+
+	private static String journal(FileSystem fs) {
+		StringBuilder result = new StringBuilder();
+		for (Event event : fs.getJournal()) {
+			result.append(event.type).append(' ').append(event.file).append(' ').append(event.text).append('\n');
+		}
+		return result.toString();
+	}
+
+	@Test
+	public void sequential() throws Exception {
+		JournalReplayer replayer = JournalReplayer.load(image);
+		FileSystem replica = new FileSystem();
+		replayer.replay(replica);
+		assertEquals(dump(source), dump(replica));
+		assertEquals(journal(source), journal(replica));
+	}
+
+	@Test
+	public void sharded() throws Exception {
+		JournalReplayer replayer = JournalReplayer.load(image);
+		replayer.setThreads(4);
+		FileSystem replica = new FileSystem();
+		replayer.replay(replica);
+		assertEquals(dump(source), dump(replica));
+		List<Event> events = source.getJournal();
+		assertEquals(events.size(), replica.getJournal().size());
+		long total = 0;
+		for (EventType type : EventType.values()) {
+			total += replayer.getLatency(type).getCount();
+		}
+		assertEquals(events.size(), total);
+	}
+}
@@ -0,0 +1,60 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+public class MetricsTest {
+
+	@Test
+	public void histogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; ++i) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000, histogram.getMax());
+		// погрешность корзины не больше 1/16
+		assertEquals(500000, histogram.getPercentile(50), 500000 / 16);
+		assertEquals(990000, histogram.getPercentile(99), 990000 / 16);
+		assertEquals(1000000, histogram.getPercentile(100));
+		for (long value = 0; value < 1 << 20; value += 7) {
+			int index = LatencyHistogram.index(value);
+			assertTrue(LatencyHistogram.lowerBound(index) <= value);
+			assertTrue(LatencyHistogram.lowerBound(index + 1) > value);
+		}
+	}
+
+	@Test
+	public void operations() throws Exception {
+		FileSystem fs = new FileSystem();
+		fs.writeToFile("first", "Hello");
+		fs.appendToFile("first", ", world");
+		fs.readFile("first");
+		fs.deleteFile("first");
+		// вложенные операции отката не считаются
+		fs.undo(2);
+		FileSystemMetrics metrics = fs.getMetrics();
+		assertEquals(Long.valueOf(1), metrics.getOperationCounts().get("WRITE"));
+		assertEquals(Long.valueOf(1), metrics.getOperationCounts().get("APPEND"));
+		assertEquals(Long.valueOf(1), metrics.getOperationCounts().get("UNDO"));
+		assertEquals(Long.valueOf(0), metrics.getOperationCounts().get("CREATE"));
+		assertEquals(1, metrics.getAllocatedClusters());
+		assertEquals(254, metrics.getFreeClusters());
+		assertEquals(1 - 12 / 255.0, metrics.getFragmentation(), 1e-9);
+
+		File image = File.createTempFile("filesystem", ".img");
+		image.deleteOnExit();
+		fs.createFileSystemImage(image);
+		long journal = image.length() - (256 + 1 + 255 * 128 + 257 * 255);
+		assertEquals(journal, metrics.getJournalBytes());
+		assertTrue(metrics.getLastSaveMillis() > 0);
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Command.parse("stats", null).execute(fs, new PrintStream(output));
+		assertTrue(output.toString().contains("WRITE"));
+	}
+}
@@ -0,0 +1,50 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+public class ParallelLoadTest {
+	private static final int FILES = 100;
+	private static final int ITERATIONS = 200;
+
+	private static String dump(FileSystem fs) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(output);
+		fs.dir(out);
+		fs.showLog(out);
+		return output.toString();
+	}
+
+	/**
+	 * Журнал в десятки тысяч записей разбирается кусками в нескольких потоках
+	 */
+	@Test
+	public void largeJournal() throws Exception {
+		System.out.println("\n\n	ParallelLoadTest:");
+		FileSystem fs = new FileSystem();
+		for (int i = 0; i < ITERATIONS; ++i) {
+			fs.beginTransaction();
+			for (int j = 0; j < FILES; ++j) {
+				fs.writeToFile("Файл" + j, "Итерация " + i);
+			}
+			fs.commit();
+			for (int j = 0; j < FILES; j += 2) {
+				fs.appendToFile("Файл" + j, "!");
+			}
+			fs.undo(1);
+		}
+		File image = File.createTempFile("filesystem", ".img");
+		image.deleteOnExit();
+		fs.createFileSystemImage(image);
+
+		FileSystem loaded = new FileSystem();
+		long startTime = System.currentTimeMillis();
+		loaded.loadFileSystem(image);
+		long time = System.currentTimeMillis() - startTime;
+		assertEquals(dump(fs), dump(loaded));
+		System.out.println(String.format("Image %d bytes loaded in %d ms", image.length(), time));
+	}
+}
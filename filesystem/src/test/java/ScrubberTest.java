@@ -0,0 +1,97 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ScrubberTest {
+	private File image;
+
+	/**
+	 * Файлы first (кластеры 1, 2, 3) и second (кластер 4)
+	 */
+	@Before
+	public void save() throws Exception {
+		FileSystem fs = new FileSystem();
+		fs.setChecksums(true);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 255 * 2 + 10; ++i) {
+			text.append('a');
+		}
+		fs.writeToFile("first", text.toString());
+		fs.writeToFile("second", "hello");
+		image = File.createTempFile("filesystem", ".img");
+		image.deleteOnExit();
+		fs.createFileSystemImage(image);
+	}
+
+	private void patch(int cluster, int offset, int value) throws Exception {
+		RandomAccessFile raf = new RandomAccessFile(image, "rw");
+		try {
+			raf.seek(FileSystem.FS_BLOCKS_STARTS + (cluster - 1) * FileSystem.BLOCK_SIZE + offset);
+			raf.write(value);
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Test
+	public void clean() throws Exception {
+		ImageScrubber.Report report = new ImageScrubber(image, 0).start().get();
+		assertTrue(report.toString(), report.isClean());
+		assertEquals(FileSystem.BLOCK_NUM, report.clusters);
+
+		// контрольные суммы переживают загрузку и сохранение: пересохраненный образ тоже чист
+		FileSystem fs = new FileSystem();
+		fs.loadFileSystem(image);
+		assertTrue(fs.hasChecksums());
+		assertEquals("hello", fs.readFile("second"));
+		File copy = File.createTempFile("filesystem", ".img");
+		try {
+			fs.createFileSystemImage(copy);
+			report = new ImageScrubber(copy, 0).scrub();
+			assertTrue(report.checksums);
+			assertTrue(report.toString(), report.isClean());
+			assertEquals(FileSystem.BLOCK_NUM, report.clusters);
+		} finally {
+			copy.delete();
+		}
+	}
+
+	@Test
+	public void corruptedData() throws Exception {
+		patch(2, 10, 'b');
+		ImageScrubber.Report report = new ImageScrubber(image, 0).scrub();
+		assertFalse(report.isClean());
+		assertEquals(Lists.newArrayList(2), report.getChecksumErrors());
+		assertTrue(report.getCycles().isEmpty());
+	}
+
+	@Test
+	public void brokenChains() throws Exception {
+		// второй кластер first ссылается на первый
+		patch(2, 1, 1);
+		// кластер second ссылается на свободный
+		patch(4, 1, 100);
+		ImageScrubber.Report report = new ImageScrubber(image, 0).scrub();
+		assertEquals(Lists.newArrayList("first"), report.getCycles());
+		assertEquals(Lists.newArrayList(4), report.getDanglingPointers());
+		// третий кластер first больше никому не принадлежит
+		assertEquals(Lists.newArrayList(3), report.getOrphans());
+		assertEquals(Lists.newArrayList(2, 4), report.getChecksumErrors());
+	}
+
+	@Test
+	public void rateLimit() throws Exception {
+		// образ ~100 Кб при 1 Мб/с читается не меньше 0.1 с
+		ImageScrubber.Report report = new ImageScrubber(image, 1 << 20).scrub();
+		assertTrue(report.isClean());
+		assertTrue(report.time >= report.bytesRead * 1000000000L / (1 << 20));
+	}
+}
@@ -0,0 +1,204 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class ShardedFileSystemTest {
+	private static final int VOLUMES = 4;
+	private static final int THREADS = 4;
+	private static final int ITERATIONS = 20000;
+
+	private static String dir(ShardedFileSystem fs) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		fs.dir(new PrintStream(output));
+		return output.toString();
+	}
+
+	private static String log(ShardedFileSystem fs) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		fs.showLog(new PrintStream(output));
+		return output.toString();
+	}
+
+	@Test
+	public void mergedViews() throws Exception {
+		ShardedFileSystem fs = new ShardedFileSystem(VOLUMES);
+		FileSystem single = new FileSystem();
+		for (int i = 0; i < 40; ++i) {
+			fs.writeToFile("file" + i, "text " + i);
+			single.writeToFile("file" + i, "text " + i);
+		}
+		fs.appendToFile("file3", "!");
+		fs.deleteFile("file7");
+		single.appendToFile("file3", "!");
+		single.deleteFile("file7");
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		single.dir(new PrintStream(output));
+		assertEquals(output.toString(), dir(fs));
+		String log = log(fs);
+		assertTrue(log.startsWith("  1. "));
+		assertTrue(log.split("\n")[0].contains("file7"));
+		assertEquals(40 * 2 + 3, log.split("\n").length);
+
+		// откат последних трех событий общего журнала затрагивает два тома
+		fs.undo(3);
+		assertEquals("text 3", fs.readFile("file3"));
+		assertEquals("text 7", fs.readFile("file7"));
+	}
+
+	@Test
+	public void saveAndLoad() throws Exception {
+		ShardedFileSystem fs = new ShardedFileSystem(VOLUMES);
+		for (int i = 0; i < 40; ++i) {
+			fs.writeToFile("file" + i, "text " + i);
+		}
+		File base = File.createTempFile("filesystem", ".img");
+		base.deleteOnExit();
+		fs.createFileSystemImage(base);
+		for (int i = 0; i < VOLUMES; ++i) {
+			ShardedFileSystem.getImage(base, i).deleteOnExit();
+			assertTrue(ShardedFileSystem.getImage(base, i).isFile());
+		}
+
+		ShardedFileSystem loaded = new ShardedFileSystem(VOLUMES);
+		loaded.loadFileSystem(base);
+		assertEquals(dir(fs), dir(loaded));
+		assertEquals(log(fs), log(loaded));
+		assertEquals("text 17", loaded.readFile("file17"));
+	}
+
+	@Test
+	public void failedLoad() throws Exception {
+		ShardedFileSystem fs = new ShardedFileSystem(VOLUMES);
+		for (int i = 0; i < 40; ++i) {
+			fs.writeToFile("file" + i, "text " + i);
+		}
+		File base = File.createTempFile("filesystem", ".img");
+		base.deleteOnExit();
+		fs.createFileSystemImage(base);
+		for (int i = 0; i < VOLUMES; ++i) {
+			ShardedFileSystem.getImage(base, i).deleteOnExit();
+		}
+		// образ последнего тома испорчен
+		Files.write(ShardedFileSystem.getImage(base, VOLUMES - 1).toPath(), new byte[] { 1, 2, 3 });
+
+		ShardedFileSystem other = new ShardedFileSystem(VOLUMES);
+		for (int i = 0; i < 40; ++i) {
+			other.writeToFile("other" + i, "other " + i);
+		}
+		String before = dir(other);
+		try {
+			other.loadFileSystem(base);
+			fail();
+		} catch (RuntimeException e) {
+			// образ не разобран
+		}
+		assertEquals(before, dir(other));
+	}
+
+	@Test
+	public void undoAsUnit() throws Exception {
+		ShardedFileSystem fs = new ShardedFileSystem(VOLUMES);
+		for (int i = 0; i < 40; ++i) {
+			fs.writeToFile("file" + i, "text " + i);
+		}
+		String before = dir(fs);
+		for (int i = 0; i < 40; ++i) {
+			fs.appendToFile("file" + i, "!");
+		}
+		// откат затрагивает все тома, откат отката возвращает все дописывания
+		fs.undo(40);
+		assertEquals(before, dir(fs));
+		fs.undo(1);
+		for (int i = 0; i < 40; ++i) {
+			assertEquals("text " + i + "!", fs.readFile("file" + i));
+		}
+	}
+
+	private static ShardedFileSystem prepareUndo() {
+		ShardedFileSystem fs = new ShardedFileSystem(VOLUMES);
+		for (int i = 0; i < 40; ++i) {
+			fs.writeToFile("file" + i, "text " + i);
+			fs.appendToFile("file" + (i / 2), "!");
+		}
+		return fs;
+	}
+
+	/**
+	 * Одновременные откаты дают то же, что и последовательные
+	 */
+	@Test
+	public void concurrentUndo() throws Exception {
+		ShardedFileSystem expected = prepareUndo();
+		for (int i = 0; i < THREADS; ++i) {
+			expected.undo(3);
+		}
+		for (int round = 0; round < 50; ++round) {
+			final ShardedFileSystem fs = prepareUndo();
+			Thread[] threads = new Thread[THREADS];
+			for (int t = 0; t < THREADS; ++t) {
+				threads[t] = new Thread() {
+					public void run() {
+						fs.undo(3);
+					}
+				};
+			}
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertEquals(dir(expected), dir(fs));
+			for (int i = 0; i < 40; ++i) {
+				assertEquals(expected.readFile("file" + i), fs.readFile("file" + i));
+			}
+		}
+	}
+
+	/**
+	 * Дозапись из нескольких потоков в разные файлы одной ФС и томов
+	 */
+	private static long append(final Object fs, final boolean sharded) throws Exception {
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; ++t) {
+			final String fileName = "file" + t;
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < ITERATIONS; ++i) {
+						if (sharded) {
+							((ShardedFileSystem) fs).writeToFile(fileName, "text");
+						} else {
+							((FileSystem) fs).writeToFile(fileName, "text");
+						}
+					}
+				}
+			};
+		}
+		long startTime = System.nanoTime();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return System.nanoTime() - startTime;
+	}
+
+	@Test
+	public void throughput() throws Exception {
+		long single = append(new FileSystem(), false);
+		long sharded = append(new ShardedFileSystem(VOLUMES), true);
+		int operations = THREADS * ITERATIONS;
+		System.out.println(String.format("Single volume %d ms (%.0f ops/s)", single / 1000000, operations * 1e9 / single));
+		System.out.println(String.format("%d volumes %d ms (%.0f ops/s)", VOLUMES, sharded / 1000000, operations * 1e9 / sharded));
+		System.out.println(String.format("Result: %d < %d", sharded / 1000000, single / 1000000));
+	}
+}
@@ -0,0 +1,99 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+public class TransactionTest {
+
+	private static String log(FileSystem fs) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		fs.showLog(new PrintStream(output));
+		return output.toString();
+	}
+
+	private static int logSize(FileSystem fs) {
+		return log(fs).split("\n\\s*\\d+\\. ").length;
+	}
+
+	@Test
+	public void commitAndUndo() {
+		FileSystem fs = new FileSystem();
+		fs.writeToFile("first", "Hello");
+		fs.beginTransaction();
+		fs.appendToFile("first", ", world");
+		fs.writeToFile("second", "text");
+		fs.deleteFile("first");
+		fs.commit();
+		assertFalse(fs.inTransaction());
+		assertEquals(3, logSize(fs));
+		assertEquals(0, fs.getFileSize("first"));
+		assertEquals("text", fs.readFile("second"));
+
+		fs.undo(1);
+		assertEquals("Hello", fs.readFile("first"));
+		assertEquals(0, fs.getFileSize("second"));
+
+		// отмена отмены повторяет транзакцию целиком
+		fs.undo(1);
+		assertEquals(0, fs.getFileSize("first"));
+		assertEquals("text", fs.readFile("second"));
+	}
+
+	@Test
+	public void rollback() {
+		FileSystem fs = new FileSystem();
+		fs.writeToFile("first", "Hello");
+		String log = log(fs);
+		fs.beginTransaction();
+		fs.appendToFile("first", ", world");
+		fs.createNewFile("second");
+		fs.rollback();
+		assertEquals("Hello", fs.readFile("first"));
+		assertEquals(log, log(fs));
+	}
+
+	@Test
+	public void outOfMemory() {
+		FileSystem fs = new FileSystem();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 255 * 200; ++i) {
+			text.append('a');
+		}
+		fs.beginTransaction();
+		fs.writeToFile("first", text.toString());
+		try {
+			fs.appendToFile("first", text.toString());
+			fail();
+		} catch (RuntimeException e) {
+			fs.rollback();
+		}
+		assertEquals(0, fs.getFileSize("first"));
+		// все кластеры освобождены
+		fs.writeToFile("first", text.toString());
+		assertEquals(text.length(), fs.getFileSize("first"));
+	}
+
+	@Test
+	public void saveAndLoad() throws Exception {
+		FileSystem fs = new FileSystem();
+		fs.beginTransaction();
+		fs.writeToFile("first", "Hello");
+		fs.writeToFile("second", "world");
+		fs.commit();
+		File image = File.createTempFile("filesystem", ".img");
+		image.deleteOnExit();
+		fs.createFileSystemImage(image);
+
+		FileSystem loaded = new FileSystem();
+		loaded.loadFileSystem(image);
+		assertEquals(log(fs), log(loaded));
+		loaded.undo(1);
+		assertEquals(0, loaded.getFileSize("first"));
+		assertEquals(0, loaded.getFileSize("second"));
+	}
+}
@@ -0,0 +1,52 @@
+import java.nio.ByteBuffer;
+
+import benchmark.Allocator;
+
+/**
+ * Аллокаторы для бенчмарков из пакета benchmark: new byte[] и слэбы в куче и вне кучи
+ */
+public class AllocatorImplementation implements Allocator {
+	private HeapSlabAllocator heap;
+	private DirectSlabAllocator direct;
+	private byte[] zeros;
+
+	public void prepare(String kind, int[] sizes) {
+		zeros = new byte[sizes[sizes.length - 1]];
+		if ("heap".equals(kind)) {
+			heap = new HeapSlabAllocator(sizes);
+		} else if ("direct".equals(kind)) {
+			direct = new DirectSlabAllocator(sizes);
+		} else if (!"new".equals(kind)) {
+			throw new IllegalArgumentException(kind);
+		}
+	}
+
+	public Object allocate(int size) {
+		if (heap != null) {
+			return heap.allocate(size);
+		} else if (direct != null) {
+			return direct.allocate(size);
+		}
+		return new byte[size];
+	}
+
+	public void free(Object block) {
+		if (heap != null) {
+			heap.free((byte[]) block);
+		} else if (direct != null) {
+			direct.free((ByteBuffer) block);
+		}
+	}
+
+	public void clear(Object block) {
+		if (block instanceof ByteBuffer) {
+			ByteBuffer buffer = (ByteBuffer) block;
+			buffer.put(0, zeros, 0, buffer.capacity());
+		} else {
+			byte[] array = (byte[]) block;
+			for (int j = 0; j < array.length; ++j) {
+				array[j] = 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import benchmark.Counter;
+
+/**
+ * Счетчики для бенчмарков из пакета benchmark
+ */
+public class CounterImplementation implements Counter {
+	private AtomicLong atomic;
+	private LongAdder adder;
+	private StripedCounter striped;
+	private PaddedCounters padded;
+	private PaddedSequence sequence;
+
+	public void prepare(String kind, int threads) {
+		if ("atomic".equals(kind)) {
+			atomic = new AtomicLong();
+		} else if ("adder".equals(kind)) {
+			adder = new LongAdder();
+		} else if ("striped".equals(kind)) {
+			striped = new StripedCounter();
+		} else if ("padded".equals(kind)) {
+			padded = new PaddedCounters(threads);
+		} else if ("sequence".equals(kind)) {
+			sequence = new PaddedSequence();
+		} else {
+			throw new IllegalArgumentException(kind);
+		}
+	}
+
+	public void increment(int thread) {
+		if (atomic != null) {
+			atomic.incrementAndGet();
+		} else if (adder != null) {
+			adder.increment();
+		} else if (striped != null) {
+			striped.increment();
+		} else if (padded != null) {
+			padded.increment(thread);
+		} else {
+			sequence.incrementAndGet();
+		}
+	}
+
+	public long sum() {
+		if (atomic != null) {
+			return atomic.get();
+		} else if (adder != null) {
+			return adder.sum();
+		} else if (striped != null) {
+			return striped.sum();
+		} else if (padded != null) {
+			return padded.sum();
+		}
+		return sequence.get();
+	}
+}
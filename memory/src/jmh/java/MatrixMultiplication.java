@@ -0,0 +1,99 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import benchmark.Multiplication;
+
+/**
+ * Матрицы для бенчмарков из пакета benchmark
+ */
+public class MatrixMultiplication implements Multiplication {
+	private static final int STRASSEN_THRESHOLD = 256;
+	private static final double SPARSE_DENSITY = 0.005;
+
+	private Runnable multiplication;
+	private Object result;
+
+	public void prepare(int dimension, String variant) {
+		final int n = dimension;
+		if ("naive".equals(variant) || "tiled".equals(variant) || "vector".equals(variant)
+				|| "strassen".equals(variant)) {
+			final DoubleMatrix matrix = fill(new DoubleMatrix(n));
+			final DoubleMatrix product = new DoubleMatrix(n);
+			final MatrixMultiplier multiplier;
+			if ("naive".equals(variant)) {
+				multiplier = new MatrixMultiplier(NaiveKernel.INSTANCE);
+			} else if ("tiled".equals(variant)) {
+				multiplier = new MatrixMultiplier(KernelTuner.getTunedKernel());
+			} else if ("vector".equals(variant)) {
+				multiplier = new MatrixMultiplier(KernelTuner.getBestKernel());
+			} else {
+				multiplier = new MatrixMultiplier(ForkJoinPool.commonPool(), KernelTuner.getBestKernel(), STRASSEN_THRESHOLD);
+			}
+			multiplication = new Runnable() {
+				public void run() {
+					matrix.multiply(matrix, product, multiplier);
+				}
+			};
+			result = product;
+		} else if ("blocked".equals(variant) || "morton".equals(variant)) {
+			final BlockedDoubleMatrix matrix = new BlockedDoubleMatrix(n, n, BlockedDoubleMatrix.DEFAULT_BLOCK_SIZE,
+					"morton".equals(variant));
+			final BlockedDoubleMatrix product = new BlockedDoubleMatrix(n, n, BlockedDoubleMatrix.DEFAULT_BLOCK_SIZE,
+					"morton".equals(variant));
+			for (int i = 0; i < n; ++i) {
+				for (int j = 0; j < n; ++j) {
+					matrix.setCell(i, j, 1.0 / (i + j + 1));
+				}
+			}
+			multiplication = new Runnable() {
+				public void run() {
+					matrix.multiply(matrix, product);
+				}
+			};
+			result = product;
+		} else if ("offheap".equals(variant)) {
+			final OffHeapMatrix matrix = OffHeapMatrix.allocate(n);
+			final OffHeapMatrix product = OffHeapMatrix.allocate(n);
+			for (int i = 0; i < n; ++i) {
+				for (int j = 0; j < n; ++j) {
+					matrix.setCell(i, j, 1.0 / (i + j + 1));
+				}
+			}
+			multiplication = new Runnable() {
+				public void run() {
+					matrix.multiply(matrix, product);
+				}
+			};
+			result = product;
+		} else if ("sparse".equals(variant)) {
+			DoubleMatrix dense = new DoubleMatrix(n);
+			Random random = new Random(42);
+			for (int l = 0; l < n * n * SPARSE_DENSITY; ++l) {
+				dense.setCell(random.nextInt(n), random.nextInt(n), random.nextDouble());
+			}
+			final CsrMatrix matrix = CsrMatrix.of(dense);
+			multiplication = new Runnable() {
+				public void run() {
+					result = matrix.multiply(matrix);
+				}
+			};
+		} else {
+			throw new IllegalArgumentException(variant);
+		}
+	}
+
+	private static DoubleMatrix fill(DoubleMatrix matrix) {
+		int n = matrix.getDimension();
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				matrix.setCell(i, j, 1.0 / (i + j + 1));
+			}
+		}
+		return matrix;
+	}
+
+	public Object multiply() {
+		multiplication.run();
+		return result;
+	}
+}
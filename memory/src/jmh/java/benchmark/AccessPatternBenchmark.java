@@ -0,0 +1,141 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Чтение-запись long по заранее посчитанному массиву индексов (в отличие от PageTest,
+ * генератор случайных чисел в замер не попадает, а все шаблоны платят за чтение индекса одинаково):
+ * подряд, с шагом в страницу 4 Кб и вразброс. Память - long[] в куче, direct-буфер
+ * или отображенный в память файл, размеры - от помещающегося в кеш до 1 Гб, где на каждое
+ * обращение вразброс нужен и промах TLB.
+ * <p>
+ * Тот же набор с прозрачными большими страницами - {@link HugePagesAccessBenchmark}.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Thread)
+public class AccessPatternBenchmark {
+	static final int ACCESSES = 1 << 20;
+	/**
+	 * long в странице 4 Кб
+	 */
+	static final int PAGE_STRIDE = 4096 / 8;
+
+	/**
+	 * байт, степень 2
+	 */
+	@Param({ "16777216", "268435456", "1073741824" })
+	long size;
+
+	@Param({ "heap", "direct", "mapped" })
+	String backing;
+
+	@Param({ "sequential", "strided", "random" })
+	String pattern;
+
+	private long[] heap;
+	private LongBuffer buffer;
+	private File file;
+	private FileChannel channel;
+	private int[] indexes;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		int length = (int) (size / 8);
+		if ("heap".equals(backing)) {
+			heap = new long[length];
+		} else if ("direct".equals(backing)) {
+			buffer = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder()).asLongBuffer();
+		} else if ("mapped".equals(backing)) {
+			file = File.createTempFile("access", ".bin");
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size).order(ByteOrder.nativeOrder()).asLongBuffer();
+		} else {
+			throw new IllegalArgumentException(backing);
+		}
+		// все страницы - в памяти до замера
+		for (int i = 0; i < length; i += PAGE_STRIDE) {
+			if (heap != null) {
+				heap[i] = i;
+			} else {
+				buffer.put(i, i);
+			}
+		}
+		indexes = new int[ACCESSES];
+		Random random = new Random(42);
+		for (int i = 0; i < ACCESSES; ++i) {
+			if ("sequential".equals(pattern)) {
+				indexes[i] = i & (length - 1);
+			} else if ("strided".equals(pattern)) {
+				// по странице за раз, после прохода всех страниц - следующий long в каждой
+				indexes[i] = (int) (((long) i * PAGE_STRIDE + (long) i * PAGE_STRIDE / length) & (length - 1));
+			} else if ("random".equals(pattern)) {
+				indexes[i] = random.nextInt(length);
+			} else {
+				throw new IllegalArgumentException(pattern);
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		heap = null;
+		buffer = null;
+		if (channel != null) {
+			channel.close();
+			file.delete();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ACCESSES)
+	public long access() {
+		long sum = 0;
+		int[] indexes = this.indexes;
+		if (heap != null) {
+			long[] heap = this.heap;
+			for (int i = 0; i < ACCESSES; ++i) {
+				sum += heap[indexes[i]]++;
+			}
+		} else {
+			LongBuffer buffer = this.buffer;
+			int index;
+			long value;
+			for (int i = 0; i < ACCESSES; ++i) {
+				// то же, что heap[index]++ в массиве
+				index = indexes[i];
+				value = buffer.get(index);
+				sum += value;
+				buffer.put(index, value + 1);
+			}
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,95 @@
+package benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Нагрузка на аллокатор из ThreadTest: случайно выделить блок 256-1024 байт,
+ * освободить случайный блок или обнулить случайный блок. У каждого потока свой список блоков,
+ * не длиннее live (в ThreadTest список не ограничен и растет до ~1/3 операций).
+ * Аллокатор: new - new byte[] и сборщик мусора, heap и direct - слэбы в куче и вне кучи
+ * с явным освобождением. Число потоков - -t n (по умолчанию 4), с -prof gc видно
+ * выделение памяти, число и время сборок.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class AllocationBenchmark {
+	static final int[] BLOCK_SIZES = { 256, 512, 768, 1024 };
+
+	@State(Scope.Benchmark)
+	public static class Blocks {
+		@Param({ "new", "heap", "direct" })
+		String allocator;
+
+		Allocator blocks;
+
+		@Setup
+		public void setUp() {
+			blocks = MemoryBenchmarks.newAllocator();
+			blocks.prepare(allocator, BLOCK_SIZES);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Owner {
+		@Param({ "1000", "16000" })
+		int live;
+
+		List<Object> allocatedMemory;
+		int seed;
+
+		@Setup
+		public void setUp() {
+			allocatedMemory = Lists.newArrayList();
+			seed = (int) System.nanoTime();
+		}
+	}
+
+	@Benchmark
+	public int action(Blocks blocks, Owner owner) {
+		List<Object> allocatedMemory = owner.allocatedMemory;
+		owner.seed = MemoryBenchmarks.nextRandom(owner.seed);
+		int random = owner.seed >>> 8;
+		int size = allocatedMemory.size();
+		int index = size == 0 ? 0 : random % size;
+		switch (random % 3) {
+		case 0:
+			if (size < owner.live) {
+				allocatedMemory.add(blocks.blocks.allocate(BLOCK_SIZES[(random >>> 2) % BLOCK_SIZES.length]));
+			}
+			break;
+		case 1:
+			if (size != 0) {
+				// порядок блоков не важен: на место удаляемого ставится последний
+				blocks.blocks.free(allocatedMemory.get(index));
+				allocatedMemory.set(index, allocatedMemory.get(size - 1));
+				allocatedMemory.remove(size - 1);
+			}
+			break;
+		default:
+			if (size != 0) {
+				blocks.blocks.clear(allocatedMemory.get(index));
+			}
+		}
+		return allocatedMemory.size();
+	}
+}
@@ -0,0 +1,21 @@
+package benchmark;
+
+/**
+ * Выделение блоков, которое меряет {@link AllocationBenchmark}
+ * (реализация - AllocatorImplementation в пакете по умолчанию, см. {@link Multiplication})
+ */
+public interface Allocator {
+	/**
+	 * @param kind - одно из значений {@link AllocationBenchmark.Blocks#allocator}
+	 */
+	void prepare(String kind, int[] sizes);
+
+	Object allocate(int size);
+
+	void free(Object block);
+
+	/**
+	 * Обнуляет блок
+	 */
+	void clear(Object block);
+}
@@ -0,0 +1,20 @@
+package benchmark;
+
+/**
+ * Счетчик, который меряет {@link CounterBenchmark}
+ * (реализация - CounterImplementation в пакете по умолчанию, см. {@link Multiplication})
+ */
+public interface Counter {
+	/**
+	 * @param kind - одно из значений {@link CounterBenchmark#kind}
+	 * @param threads - сколько потоков будет писать
+	 */
+	void prepare(String kind, int threads);
+
+	/**
+	 * @param thread - номер пишущего потока, от 0 до threads - 1
+	 */
+	void increment(int thread);
+
+	long sum();
+}
@@ -0,0 +1,70 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Общий счетчик, в который пишут все потоки: AtomicLong, LongAdder, StripedCounter,
+ * PaddedCounters (у каждого потока свой счетчик) и PaddedSequence (один CAS-индекс).
+ * Число потоков - -t n, для сравнения от 1 до 64: -t 1, -t 4, -t 16, -t 64.
+ * Раз в 1024 прибавления поток читает сумму, как читатель метрик.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class CounterBenchmark {
+	private static final int READ_PERIOD = 1024;
+
+	@State(Scope.Benchmark)
+	public static class Shared {
+		@Param({ "atomic", "adder", "striped", "padded", "sequence" })
+		String kind;
+
+		Counter counter;
+		final AtomicInteger threads = new AtomicInteger();
+
+		@Setup
+		public void setUp(BenchmarkParams params) {
+			counter = MemoryBenchmarks.newCounter();
+			counter.prepare(kind, params.getThreads());
+			threads.set(0);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Writer {
+		int thread;
+		int increments;
+
+		@Setup
+		public void setUp(Shared shared) {
+			thread = shared.threads.getAndIncrement();
+		}
+	}
+
+	@Benchmark
+	public long increment(Shared shared, Writer writer) {
+		shared.counter.increment(writer.thread);
+		if (++writer.increments % READ_PERIOD == 0) {
+			return shared.counter.sum();
+		}
+		return writer.increments;
+	}
+}
@@ -0,0 +1,15 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Fork;
+
+/**
+ * {@link AccessPatternBenchmark} с прозрачными большими страницами (THP, Linux):
+ * JVM просит у ядра 2 Мб страницы для кучи (madvise), поэтому разница видна на heap,
+ * а на direct - если в /sys/kernel/mm/transparent_hugepage/enabled стоит always.
+ * Отображенный файл большие страницы не получает (THP для файлов - только tmpfs).
+ * Для явных больших страниц (hugetlbfs, нужно vm.nr_hugepages) -
+ * java -jar benchmarks.jar HugePagesAccessBenchmark -jvmArgsAppend -XX:+UseLargePages
+ */
+@Fork(value = 2, jvmArgsAppend = { "-Xmx3g", "-XX:+UseTransparentHugePages" })
+public class HugePagesAccessBenchmark extends AccessPatternBenchmark {
+}
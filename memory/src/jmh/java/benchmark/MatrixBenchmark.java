@@ -0,0 +1,47 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Умножение матриц (MatrixTest) по вариантам: ядра над построчной матрицей, блочные раскладки,
+ * матрица вне кучи и разреженная матрица с 0.5% ненулевых элементов.
+ * Размеры - степень 2 и не кратный блокам.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@State(Scope.Benchmark)
+public class MatrixBenchmark {
+	@Param({ "512", "1000", "1024" })
+	int dimension;
+
+	@Param({ "naive", "tiled", "vector", "strassen", "blocked", "morton", "offheap", "sparse" })
+	String variant;
+
+	private Multiplication multiplication;
+
+	@Setup
+	public void setUp() {
+		multiplication = MemoryBenchmarks.newMultiplication();
+		multiplication.prepare(dimension, variant);
+	}
+
+	@Benchmark
+	public Object multiply() {
+		return multiplication.multiply();
+	}
+}
@@ -0,0 +1,45 @@
+package benchmark;
+
+/**
+ * Общие заготовки для бенчмарков памяти
+ */
+final class MemoryBenchmarks {
+	private static final String MULTIPLICATION_CLASS = "MatrixMultiplication";
+	private static final String COUNTER_CLASS = "CounterImplementation";
+	private static final String ALLOCATOR_CLASS = "AllocatorImplementation";
+
+	private MemoryBenchmarks() {
+	}
+
+	static Multiplication newMultiplication() {
+		try {
+			return (Multiplication) Class.forName(MULTIPLICATION_CLASS).getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static Counter newCounter() {
+		try {
+			return (Counter) Class.forName(COUNTER_CLASS).getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static Allocator newAllocator() {
+		try {
+			return (Allocator) Class.forName(ALLOCATOR_CLASS).getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Следующее псевдослучайное число линейного конгруэнтного генератора:
+	 * дешевле Math.random() и не создает объектов
+	 */
+	static int nextRandom(int seed) {
+		return seed * 1103515245 + 12345;
+	}
+}
@@ -0,0 +1,23 @@
+package benchmark;
+
+/**
+ * Умножение матриц, которое меряет {@link MatrixBenchmark}.
+ * JMH не работает с классами из пакета по умолчанию, а классы из именованного
+ * пакета не видят матриц, поэтому матрицы подключаются через этот интерфейс
+ * (реализация - MatrixMultiplication в пакете по умолчанию).
+ */
+public interface Multiplication {
+	/**
+	 * Заполняет две матрицы dimension x dimension и матрицу результата
+	 *
+	 * @param variant - одно из значений {@link MatrixBenchmark#variant}
+	 */
+	void prepare(int dimension, String variant);
+
+	/**
+	 * Перемножает подготовленные матрицы
+	 *
+	 * @return матрица результата
+	 */
+	Object multiply();
+}
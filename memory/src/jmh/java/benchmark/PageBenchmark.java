@@ -0,0 +1,72 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Запись в массив подряд и вразброс (PageTest) на массивах в L2, в L3 и больше кеша.
+ * В обоих случаях считается и случайный, и последовательный индекс, как в PageTest,
+ * используется один из них.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PageBenchmark {
+	private static final int ACCESSES = 4096;
+
+	/**
+	 * байт, степень 2
+	 */
+	@Param({ "262144", "8388608", "268435456" })
+	int size;
+
+	private byte[] memory;
+	private int position;
+	private int seed;
+
+	@Setup
+	public void setUp() {
+		memory = new byte[size];
+		position = 0;
+		seed = 1;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ACCESSES)
+	public byte successively() {
+		int mask = size - 1;
+		for (int i = 0; i < ACCESSES; ++i) {
+			seed = MemoryBenchmarks.nextRandom(seed);
+			position = (position + 1) & mask;
+			memory[position] = (byte) i;
+		}
+		return memory[seed & mask];
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ACCESSES)
+	public byte unsuccessively() {
+		int mask = size - 1;
+		for (int i = 0; i < ACCESSES; ++i) {
+			seed = MemoryBenchmarks.nextRandom(seed);
+			position = (position + 1) & mask;
+			memory[(seed >>> 8) & mask] = (byte) i;
+		}
+		return memory[position];
+	}
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Счетчики потоков рядом и врозь (SeparationTest): счетчик потока i лежит в общем массиве
+ * на месте i * stride. stride 1 - соседние счетчики в одной строке кеша (ложное разделение),
+ * 16 int - по строке кеша на счетчик, 256 int - как в SeparationTest.
+ * Число потоков - -t n (по умолчанию 4).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class SeparationBenchmark {
+	private static final int MAX_THREADS = 64;
+
+	@State(Scope.Benchmark)
+	public static class Counters {
+		@Param({ "1", "16", "256" })
+		int stride;
+
+		volatile int[] counters;
+		final AtomicInteger threads = new AtomicInteger();
+
+		@Setup
+		public void setUp() {
+			counters = new int[MAX_THREADS * stride];
+			threads.set(0);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Counter {
+		int index;
+
+		@Setup
+		public void setUp(Counters counters) {
+			index = counters.threads.getAndIncrement() % MAX_THREADS * counters.stride;
+		}
+	}
+
+	@Benchmark
+	public int increment(Counters counters, Counter counter) {
+		// массив читается через volatile-ссылку, как в SeparationTest
+		return ++counters.counters[counter.index];
+	}
+}
@@ -0,0 +1,209 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Прямоугольная матрица из double, хранимая блоками blockSize x blockSize.
+ * Каждый блок лежит в массиве непрерывно и построчно, размеры дополняются нулями
+ * до кратных blockSize. Блоки идут либо по строкам блоков, либо в порядке Мортона
+ * (Z-кривая): соседние по строке и по столбцу блоки оказываются рядом в памяти.
+ * <p>
+ * При умножении блок уже является плиткой: блоки перемножаются внутренним циклом
+ * {@link TiledKernel} без копирования, блоки результата считаются параллельно.
+ * Нулевое дополнение в произведение ничего не вносит, поэтому краевых случаев нет.
+ * </p>
+ */
+public class BlockedDoubleMatrix {
+	/**
+	 * Блок помещается в L1 по {@link MachineProfile}: 64 x 64 double - 32 Кб
+	 */
+	static final int DEFAULT_BLOCK_SIZE = MachineProfile.getInstance().getTileSide(1, 8, 1);
+	/**
+	 * меньше стольких блоков результата задача не делится
+	 */
+	static final int MIN_BLOCKS = 2;
+
+	private final int rows;
+	private final int columns;
+	private final int blockSizeLog2;
+	private final int blockSizeMinusOne;
+	private final int rowBlocks;
+	private final int columnBlocks;
+	private final boolean morton;
+	/**
+	 * номер места блока (bi, bj) в matrix - blockIndex[bi * columnBlocks + bj]
+	 */
+	private final int[] blockIndex;
+	final double[] matrix;
+
+	public BlockedDoubleMatrix(int rows, int columns) {
+		this(rows, columns, DEFAULT_BLOCK_SIZE, true);
+	}
+
+	/**
+	 * @param blockSize - сторона блока, степень 2
+	 * @param morton - хранить блоки в порядке Мортона, иначе - по строкам блоков
+	 */
+	public BlockedDoubleMatrix(int rows, int columns, int blockSize, boolean morton) {
+		if (rows < 1 || columns < 1 || blockSize < 1 || Integer.bitCount(blockSize) != 1) {
+			throw new IllegalArgumentException();
+		}
+		this.rows = rows;
+		this.columns = columns;
+		this.morton = morton;
+		blockSizeLog2 = Integer.numberOfTrailingZeros(blockSize);
+		blockSizeMinusOne = blockSize - 1;
+		rowBlocks = (rows + blockSizeMinusOne) >> blockSizeLog2;
+		columnBlocks = (columns + blockSizeMinusOne) >> blockSizeLog2;
+		blockIndex = getBlockIndex(rowBlocks, columnBlocks, morton);
+		matrix = new double[rowBlocks * columnBlocks << (2 * blockSizeLog2)];
+	}
+
+	/**
+	 * Места блоков: по строкам блоков или по возрастанию кода Мортона
+	 * (на прямоугольной сетке коды идут с пропусками, места - подряд)
+	 */
+	static int[] getBlockIndex(int rowBlocks, int columnBlocks, boolean morton) {
+		int blocks = rowBlocks * columnBlocks;
+		int[] index = new int[blocks];
+		if (!morton) {
+			for (int i = 0; i < blocks; ++i) {
+				index[i] = i;
+			}
+			return index;
+		}
+		// код Мортона в старших 32 битах, номер блока по строкам - в младших
+		long[] codes = new long[blocks];
+		for (int bi = 0; bi < rowBlocks; ++bi) {
+			for (int bj = 0; bj < columnBlocks; ++bj) {
+				codes[bi * columnBlocks + bj] = (long) getMortonCode(bi, bj) << 32 | (bi * columnBlocks + bj);
+			}
+		}
+		Arrays.sort(codes);
+		for (int i = 0; i < blocks; ++i) {
+			index[(int) codes[i]] = i;
+		}
+		return index;
+	}
+
+	/**
+	 * Чередует биты: биты строки - на нечетных местах, биты столбца - на четных
+	 */
+	static int getMortonCode(int row, int column) {
+		return spreadBits(row) << 1 | spreadBits(column);
+	}
+
+	private static int spreadBits(int x) {
+		x &= 0xFFFF;
+		x = (x | (x << 8)) & 0x00FF00FF;
+		x = (x | (x << 4)) & 0x0F0F0F0F;
+		x = (x | (x << 2)) & 0x33333333;
+		x = (x | (x << 1)) & 0x55555555;
+		return x;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getBlockSize() {
+		return blockSizeMinusOne + 1;
+	}
+
+	public boolean isMorton() {
+		return morton;
+	}
+
+	/**
+	 * Начало блока (bi, bj) в matrix
+	 */
+	int getBlockStart(int bi, int bj) {
+		return blockIndex[bi * columnBlocks + bj] << (2 * blockSizeLog2);
+	}
+
+	private int getPosition(int i, int j) {
+		return getBlockStart(i >> blockSizeLog2, j >> blockSizeLog2)
+				+ ((i & blockSizeMinusOne) << blockSizeLog2) + (j & blockSizeMinusOne);
+	}
+
+	public double getCell(int i, int j) {
+		return matrix[getPosition(i, j)];
+	}
+
+	public void setCell(int i, int j, double element) {
+		matrix[getPosition(i, j)] = element;
+	}
+
+	/**
+	 * result = this * rightOper на общем пуле потоков лучшим ядром {@link KernelTuner#getBestKernel()}
+	 *
+	 * @return время умножения в мс
+	 */
+	public long multiply(BlockedDoubleMatrix rightOper, BlockedDoubleMatrix result) {
+		return multiply(rightOper, result, KernelTuner.getBestKernel(), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * result = this * rightOper, размеры блоков у всех трех матриц должны совпадать,
+	 * порядок блоков может быть разным
+	 *
+	 * @return время умножения в мс
+	 */
+	public long multiply(BlockedDoubleMatrix rightOper, BlockedDoubleMatrix result, TiledKernel kernel, ForkJoinPool pool) {
+		if (columns != rightOper.rows || rows != result.rows || rightOper.columns != result.columns) {
+			throw new IllegalArgumentException("Dimensions are different");
+		}
+		if (blockSizeLog2 != rightOper.blockSizeLog2 || blockSizeLog2 != result.blockSizeLog2) {
+			throw new IllegalArgumentException("Block sizes are different");
+		}
+		long startTime = System.currentTimeMillis();
+		pool.invoke(new Blocks(rightOper, result, kernel, 0, result.rowBlocks * result.columnBlocks));
+		return System.currentTimeMillis() - startTime;
+	}
+
+	/**
+	 * Блоки результата с from по to - 1 по строкам блоков
+	 */
+	@SuppressWarnings("serial")
+	private class Blocks extends RecursiveAction {
+		private BlockedDoubleMatrix rightOper;
+		private BlockedDoubleMatrix result;
+		private TiledKernel kernel;
+		private int from;
+		private int to;
+
+		Blocks(BlockedDoubleMatrix rightOper, BlockedDoubleMatrix result, TiledKernel kernel, int from, int to) {
+			this.rightOper = rightOper;
+			this.result = result;
+			this.kernel = kernel;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > MIN_BLOCKS) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Blocks(rightOper, result, kernel, from, middle),
+						new Blocks(rightOper, result, kernel, middle, to));
+				return;
+			}
+			int blockSize = blockSizeMinusOne + 1;
+			int bi, bj, resultStart;
+			for (int block = from; block < to; ++block) {
+				bi = block / result.columnBlocks;
+				bj = block % result.columnBlocks;
+				resultStart = result.getBlockStart(bi, bj);
+				Arrays.fill(result.matrix, resultStart, resultStart + (blockSize << blockSizeLog2), 0);
+				for (int bk = 0; bk < columnBlocks; ++bk) {
+					kernel.multiplyBlock(matrix, getBlockStart(bi, bk), rightOper.matrix, rightOper.getBlockStart(bk, bj),
+							result.matrix, resultStart, blockSize);
+				}
+			}
+		}
+	}
+}
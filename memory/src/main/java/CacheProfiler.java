@@ -0,0 +1,244 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Задержки кешей и памяти по обходу указателей: массив int содержит случайную циклическую
+ * перестановку узлов (алгоритм Саттоло), следующий адрес известен только после чтения
+ * текущего, поэтому ни предвыборка, ни параллельные промахи не помогают и время шага -
+ * задержка того уровня, в который помещается рабочий набор.
+ * <p>
+ * Рабочий набор удваивается от 4 Кб до заданного размера; уровни - участки между скачками
+ * задержки, граница уровня - последний размер перед скачком. Последний участок - память,
+ * поэтому наибольший размер должен быть заметно больше последнего кеша.
+ * Размер строки - наименьшее расстояние между двумя зависимыми чтениями одного узла,
+ * при котором второе чтение становится промахом (при парной подкачке строк получится 128).
+ * </p>
+ * Запуск: java CacheProfiler [наибольший размер в Мб [файл профиля]] - измеряет и сохраняет профиль
+ * (по умолчанию 1024 Мб и {@link MachineProfile#getDefaultFile()}).
+ */
+public class CacheProfiler {
+	static final long MIN_SIZE = 4 << 10;
+	/**
+	 * наибольший рабочий набор: массив int из 8 Гб уже не индексируется int
+	 */
+	static final long MAX_SIZE = 4L << 30;
+	static final int STEPS = 1 << 21;
+	/**
+	 * рост задержки между соседними размерами больше чем во столько раз - переход на следующий уровень
+	 */
+	static final double JUMP = 1.5;
+	/**
+	 * расстояние между узлами при измерении задержки - строка с запасом
+	 */
+	static final int NODE_STRIDE = 64;
+	/**
+	 * расстояние между узлами и рабочий набор при поиске размера строки
+	 */
+	static final int LINE_NODE_STRIDE = 512;
+	static final long LINE_WORKING_SET = 256 << 20;
+	static final int MAX_LINE_SIZE = 256;
+	/**
+	 * замеров на точку, берется наименьший - шум только увеличивает время
+	 */
+	static final int REPEATS = 3;
+
+	/**
+	 * результат обходов, чтобы JIT не выбросил их
+	 */
+	static volatile int sink;
+
+	/**
+	 * Массив из size байт, узлы через stride байт связаны в случайный цикл
+	 *
+	 * @return массив; цикл начинается с 0
+	 * @throws IllegalArgumentException - если в int[] не помещается size байт
+	 */
+	static int[] getCycle(long size, int stride, Random random) {
+		if (size / 4 > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(size + " bytes do not fit in int[]");
+		}
+		int step = stride / 4;
+		int nodes = (int) (size / stride);
+		int[] next = new int[(int) (size / 4)];
+		int[] order = new int[nodes];
+		for (int i = 0; i < nodes; ++i) {
+			order[i] = i;
+		}
+		// Саттоло: перестановка из одного цикла
+		int j, swap;
+		for (int i = nodes - 1; i > 0; --i) {
+			j = random.nextInt(i);
+			swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+		for (int i = 0; i < nodes; ++i) {
+			next[i * step] = order[i] * step;
+		}
+		return next;
+	}
+
+	/**
+	 * Среднее время шага по циклу, нс
+	 */
+	static double chase(int[] next, int steps) {
+		double result = Double.MAX_VALUE;
+		for (int i = 0; i < REPEATS; ++i) {
+			result = Math.min(result, chaseOnce(next, steps));
+		}
+		return result;
+	}
+
+	private static double chaseOnce(int[] next, int steps) {
+		int p = 0;
+		// прогрев: рабочий набор загружается в кеш
+		for (int i = 0; i < Math.min(steps, next.length); ++i) {
+			p = next[p];
+		}
+		long startTime = System.nanoTime();
+		for (int i = 0; i < steps; ++i) {
+			p = next[p];
+		}
+		long time = System.nanoTime() - startTime;
+		sink = p;
+		return (double) time / steps;
+	}
+
+	/**
+	 * Задержка обращения при рабочем наборе size байт, нс
+	 */
+	public static double measureLatency(long size) {
+		return chase(getCycle(size, NODE_STRIDE, new Random(size)), STEPS);
+	}
+
+	/**
+	 * Размер строки кеша: узлы цикла лежат через {@link #LINE_NODE_STRIDE} байт, из начала узла
+	 * указатель ведет на слово того же узла на расстоянии distance, а оттуда - в следующий узел.
+	 * Пока distance в пределах строки, второе чтение - попадание; как только оно выходит
+	 * за строку, шаг становится вдвое дольше - размер строки там, где задержка выросла сильнее всего. Узлов столько, что даже их первые строки не
+	 * помещаются в кеш, а distance не выходит за страницу узла.
+	 */
+	public static int measureLineSize() {
+		int step = LINE_NODE_STRIDE / 4;
+		int nodes = (int) (LINE_WORKING_SET / LINE_NODE_STRIDE);
+		int[] order = getCycle((long) nodes * 4, 4, new Random(LINE_WORKING_SET));
+		int[] next = new int[(int) (LINE_WORKING_SET / 4)];
+		double previous = 0;
+		double latency;
+		double jump = JUMP;
+		int lineSize = MAX_LINE_SIZE * 2;
+		for (int distance = 4; distance <= MAX_LINE_SIZE; distance <<= 1) {
+			for (int node = 0; node < nodes; ++node) {
+				next[node * step] = node * step + distance / 4;
+				next[node * step + distance / 4] = order[node] * step;
+			}
+			latency = chase(next, STEPS);
+			// наибольший скачок: шум дает скачки меньше
+			if (distance > 4 && latency > previous * jump) {
+				jump = latency / previous;
+				lineSize = distance;
+			}
+			previous = latency;
+			for (int node = 0; node < nodes; ++node) {
+				next[node * step + distance / 4] = 0;
+			}
+		}
+		return lineSize;
+	}
+
+	/**
+	 * Измеряет задержки от 4 Кб до maxSize и находит уровни
+	 * (на гладкой кривой или малом maxSize уровней может не найтись - такой профиль не сохраняется)
+	 *
+	 * @param maxSize - не меньше 4 Кб и не больше 4 Гб
+	 * @param log - куда печатать задержки по размерам, null - никуда
+	 */
+	public static MachineProfile profile(long maxSize, PrintStream log) {
+		if (maxSize < MIN_SIZE || maxSize > MAX_SIZE) {
+			throw new IllegalArgumentException("Size must be from " + (MIN_SIZE >> 10) + " KB to " + (MAX_SIZE >> 20) + " MB");
+		}
+		// компиляция обхода до замеров
+		for (int i = 0; i < REPEATS; ++i) {
+			chase(getCycle(MIN_SIZE, NODE_STRIDE, new Random()), STEPS);
+		}
+		List<Long> sizes = Lists.newArrayList();
+		List<Double> latencies = Lists.newArrayList();
+		for (long size = MIN_SIZE; size <= maxSize; size <<= 1) {
+			sizes.add(size);
+			latencies.add(measureLatency(size));
+			if (log != null) {
+				log.println(String.format("%10d KB %7.2f ns", size >> 10, latencies.get(latencies.size() - 1)));
+			}
+		}
+		return getProfile(sizes, latencies, measureLineSize());
+	}
+
+	/**
+	 * Уровни по задержкам: граница уровня - размер, после которого задержка выросла больше
+	 * чем в {@link #JUMP} раз (из нескольких скачков подряд - первый), задержка уровня -
+	 * медиана его участка, последний участок - память
+	 *
+	 * @param sizes - по возрастанию, хотя бы один
+	 */
+	static MachineProfile getProfile(List<Long> sizes, List<Double> latencies, int lineSize) {
+		if (sizes.isEmpty()) {
+			throw new IllegalArgumentException("No sizes measured");
+		}
+		List<Long> cacheSizes = Lists.newArrayList();
+		List<Double> cacheLatencies = Lists.newArrayList();
+		int from = 0;
+		int i = 0;
+		while (i + 1 < sizes.size()) {
+			if (latencies.get(i + 1) <= latencies.get(i) * JUMP) {
+				++i;
+				continue;
+			}
+			cacheSizes.add(sizes.get(i));
+			cacheLatencies.add(median(latencies.subList(from, i + 1)));
+			// подъем к следующему уровню
+			do {
+				++i;
+			} while (i + 1 < sizes.size() && latencies.get(i + 1) > latencies.get(i) * JUMP);
+			from = i;
+		}
+		long[] resultSizes = new long[cacheSizes.size()];
+		double[] resultLatencies = new double[cacheSizes.size()];
+		for (i = 0; i < resultSizes.length; ++i) {
+			resultSizes[i] = cacheSizes.get(i);
+			resultLatencies[i] = cacheLatencies.get(i);
+		}
+		return new MachineProfile(true, lineSize, resultSizes, resultLatencies,
+				median(latencies.subList(from, latencies.size())));
+	}
+
+	private static double median(List<Double> values) {
+		Double[] sorted = values.toArray(new Double[values.size()]);
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	public static void main(String[] args) throws IOException {
+		long maxSize = (args.length > 0 ? Long.parseLong(args[0]) : 1024) << 20;
+		File file = args.length > 1 ? new File(args[1]) : MachineProfile.getDefaultFile();
+		// размер задается в Мб, поэтому наименьший - 1 Мб, а не MIN_SIZE
+		if (maxSize < 1 << 20 || maxSize > MAX_SIZE) {
+			System.out.println("Size must be from 1 to " + (MAX_SIZE >> 20) + " MB");
+			return;
+		}
+		MachineProfile profile = profile(maxSize, System.out);
+		System.out.println(profile);
+		if (profile.getCacheLevels() == 0) {
+			// такой профиль сломал бы размеры плиток и блоков во всех следующих запусках
+			System.out.println("No cache levels found, profile is not saved: try a larger size");
+			return;
+		}
+		profile.save(file);
+		System.out.println("Saved to " + file);
+	}
+}
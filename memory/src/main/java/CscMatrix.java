@@ -0,0 +1,94 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Разреженная матрица из double в формате CSC: ненулевые элементы по столбцам.
+ * Хранится как CSR транспонированной матрицы, поэтому столбцы достаются так же дешево,
+ * как строки в {@link CsrMatrix}, а произведение двух CSC-матриц - это параллельное
+ * CSR-произведение транспонированных в обратном порядке: (AB)^T = B^T A^T.
+ */
+public class CscMatrix {
+	/**
+	 * строка i transposed - столбец i этой матрицы
+	 */
+	private final CsrMatrix transposed;
+
+	CscMatrix(CsrMatrix transposed) {
+		this.transposed = transposed;
+	}
+
+	/**
+	 * Матрица из троек (row[l], column[l], value[l]) в любом порядке,
+	 * повторяющиеся клетки складываются
+	 */
+	public static CscMatrix of(int rows, int columns, int[] row, int[] column, double[] value) {
+		return new CscMatrix(CsrMatrix.of(columns, rows, column, row, value));
+	}
+
+	public static CscMatrix of(DoubleMatrix dense) {
+		return CsrMatrix.of(dense).toCsc();
+	}
+
+	public DoubleMatrix toDense() {
+		return toCsr().toDense();
+	}
+
+	/**
+	 * Та же матрица в формате CSR
+	 */
+	public CsrMatrix toCsr() {
+		return transposed.transpose();
+	}
+
+	public int getRows() {
+		return transposed.getColumns();
+	}
+
+	public int getColumns() {
+		return transposed.getRows();
+	}
+
+	public int getNonzeros() {
+		return transposed.getNonzeros();
+	}
+
+	public double getCell(int i, int j) {
+		return transposed.getCell(j, i);
+	}
+
+	/**
+	 * result = this * vector: сумма столбцов с весами из vector, за O(ненулевых элементов).
+	 * Столбцы пишут в одни и те же клетки result, поэтому умножение последовательное,
+	 * параллельное - у {@link CsrMatrix}.
+	 */
+	public void multiply(double[] vector, double[] result) {
+		if (vector.length != getColumns() || result.length != getRows()) {
+			throw new IllegalArgumentException("Dimensions are different");
+		}
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = 0;
+		}
+		double x;
+		for (int j = 0; j < vector.length; ++j) {
+			x = vector[j];
+			if (x != 0) {
+				for (int l = transposed.rowStart[j]; l < transposed.rowStart[j + 1]; ++l) {
+					result[transposed.columnIndex[l]] += transposed.values[l] * x;
+				}
+			}
+		}
+	}
+
+	/**
+	 * this * rightOper на общем пуле потоков
+	 */
+	public CscMatrix multiply(CscMatrix rightOper) {
+		return multiply(rightOper, ForkJoinPool.commonPool());
+	}
+
+	public CscMatrix multiply(CscMatrix rightOper, ForkJoinPool pool) {
+		if (getColumns() != rightOper.getRows()) {
+			throw new IllegalArgumentException("Dimensions are different");
+		}
+		return new CscMatrix(rightOper.transposed.multiply(transposed, pool));
+	}
+}
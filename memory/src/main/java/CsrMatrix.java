@@ -0,0 +1,386 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Разреженная матрица из double в формате CSR: ненулевые элементы по строкам,
+ * в строке - по возрастанию столбцов. Строка i - это элементы с rowStart[i] по rowStart[i + 1] - 1,
+ * columnIndex - их столбцы, values - значения.
+ * <p>
+ * Умножения стоят порядка числа ненулевых элементов (и ненулевых произведений), а не n^3,
+ * строки результата считаются параллельно, диапазоны строк делятся по числу ненулевых элементов.
+ * Матрица неизменяема.
+ * </p>
+ * @see CscMatrix
+ */
+public class CsrMatrix {
+	/**
+	 * меньше стольких ненулевых элементов задача не делится
+	 */
+	static final int MIN_NONZEROS = 4096;
+
+	private final int rows;
+	private final int columns;
+	final int[] rowStart;
+	final int[] columnIndex;
+	final double[] values;
+
+	CsrMatrix(int rows, int columns, int[] rowStart, int[] columnIndex, double[] values) {
+		this.rows = rows;
+		this.columns = columns;
+		this.rowStart = rowStart;
+		this.columnIndex = columnIndex;
+		this.values = values;
+	}
+
+	/**
+	 * Матрица из троек (row[l], column[l], value[l]) в любом порядке,
+	 * повторяющиеся клетки складываются, нули не хранятся
+	 */
+	public static CsrMatrix of(int rows, int columns, int[] row, int[] column, double[] value) {
+		if (row.length != column.length || row.length != value.length) {
+			throw new IllegalArgumentException();
+		}
+		// сортировка подсчетом по строкам
+		int[] rowStart = new int[rows + 1];
+		for (int i : row) {
+			if (i < 0 || i >= rows) {
+				throw new IndexOutOfBoundsException();
+			}
+			rowStart[i + 1]++;
+		}
+		for (int i = 0; i < rows; ++i) {
+			rowStart[i + 1] += rowStart[i];
+		}
+		int[] position = Arrays.copyOf(rowStart, rows);
+		int[] order = new int[row.length];
+		for (int l = 0; l < row.length; ++l) {
+			order[position[row[l]]++] = l;
+		}
+		// в строке - сортировка по столбцам и сложение повторов
+		int[] columnIndex = new int[row.length];
+		double[] values = new double[row.length];
+		long[] line = new long[0];
+		int nonzeros = 0;
+		int start, length, j;
+		double sum;
+		for (int i = 0; i < rows; ++i) {
+			start = rowStart[i];
+			length = rowStart[i + 1] - start;
+			if (line.length < length) {
+				line = new long[length];
+			}
+			for (int l = 0; l < length; ++l) {
+				j = column[order[start + l]];
+				if (j < 0 || j >= columns) {
+					throw new IndexOutOfBoundsException();
+				}
+				// столбец в старших битах, номер тройки - в младших
+				line[l] = (long) j << 32 | order[start + l];
+			}
+			Arrays.sort(line, 0, length);
+			rowStart[i] = nonzeros;
+			for (int l = 0; l < length; ) {
+				j = (int) (line[l] >>> 32);
+				sum = 0;
+				for (; l < length && (int) (line[l] >>> 32) == j; ++l) {
+					sum += value[(int) line[l]];
+				}
+				if (sum != 0) {
+					columnIndex[nonzeros] = j;
+					values[nonzeros++] = sum;
+				}
+			}
+		}
+		rowStart[rows] = nonzeros;
+		return new CsrMatrix(rows, columns, rowStart, Arrays.copyOf(columnIndex, nonzeros),
+				Arrays.copyOf(values, nonzeros));
+	}
+
+	/**
+	 * Ненулевые элементы плотной матрицы
+	 */
+	public static CsrMatrix of(DoubleMatrix dense) {
+		int n = dense.getDimension();
+		int[] rowStart = new int[n + 1];
+		for (int i = 0; i < n * n; ++i) {
+			if (dense.matrix[i] != 0) {
+				rowStart[i / n + 1]++;
+			}
+		}
+		for (int i = 0; i < n; ++i) {
+			rowStart[i + 1] += rowStart[i];
+		}
+		int[] columnIndex = new int[rowStart[n]];
+		double[] values = new double[rowStart[n]];
+		int nonzeros = 0;
+		for (int i = 0; i < n * n; ++i) {
+			if (dense.matrix[i] != 0) {
+				columnIndex[nonzeros] = i % n;
+				values[nonzeros++] = dense.matrix[i];
+			}
+		}
+		return new CsrMatrix(n, n, rowStart, columnIndex, values);
+	}
+
+	/**
+	 * Плотная матрица, только для квадратных матриц
+	 */
+	public DoubleMatrix toDense() {
+		if (rows != columns) {
+			throw new IllegalArgumentException("Matrix is not square");
+		}
+		DoubleMatrix dense = new DoubleMatrix(rows);
+		for (int i = 0; i < rows; ++i) {
+			for (int l = rowStart[i]; l < rowStart[i + 1]; ++l) {
+				dense.matrix[i * columns + columnIndex[l]] = values[l];
+			}
+		}
+		return dense;
+	}
+
+	/**
+	 * Та же матрица в формате CSC
+	 */
+	public CscMatrix toCsc() {
+		return new CscMatrix(transpose());
+	}
+
+	/**
+	 * Транспонированная матрица за O(ненулевых элементов + размер)
+	 */
+	public CsrMatrix transpose() {
+		int[] start = new int[columns + 1];
+		for (int l = 0; l < getNonzeros(); ++l) {
+			start[columnIndex[l] + 1]++;
+		}
+		for (int j = 0; j < columns; ++j) {
+			start[j + 1] += start[j];
+		}
+		int[] position = Arrays.copyOf(start, columns);
+		int[] index = new int[getNonzeros()];
+		double[] transposed = new double[getNonzeros()];
+		int p;
+		// строки идут по возрастанию, поэтому в строках транспонированной матрицы столбцы упорядочены
+		for (int i = 0; i < rows; ++i) {
+			for (int l = rowStart[i]; l < rowStart[i + 1]; ++l) {
+				p = position[columnIndex[l]]++;
+				index[p] = i;
+				transposed[p] = values[l];
+			}
+		}
+		return new CsrMatrix(columns, rows, start, index, transposed);
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getNonzeros() {
+		return rowStart[rows];
+	}
+
+	/**
+	 * Доля ненулевых элементов
+	 */
+	public double getDensity() {
+		return (double) getNonzeros() / rows / columns;
+	}
+
+	/**
+	 * Двоичный поиск по строке
+	 */
+	public double getCell(int i, int j) {
+		int l = Arrays.binarySearch(columnIndex, rowStart[i], rowStart[i + 1], j);
+		return l < 0 ? 0 : values[l];
+	}
+
+	/**
+	 * result = this * vector на общем пуле потоков
+	 */
+	public void multiply(double[] vector, double[] result) {
+		multiply(vector, result, ForkJoinPool.commonPool());
+	}
+
+	public void multiply(final double[] vector, final double[] result, ForkJoinPool pool) {
+		if (vector.length != columns || result.length != rows) {
+			throw new IllegalArgumentException("Dimensions are different");
+		}
+		pool.invoke(new Lines(0, rows) {
+			@Override
+			protected void compute(int from, int to) {
+				double sum;
+				for (int i = from; i < to; ++i) {
+					sum = 0;
+					for (int l = rowStart[i]; l < rowStart[i + 1]; ++l) {
+						sum += values[l] * vector[columnIndex[l]];
+					}
+					result[i] = sum;
+				}
+			}
+		});
+	}
+
+	/**
+	 * result = this * dense лучшим ядром на общем пуле потоков
+	 *
+	 * @return время умножения в мс
+	 */
+	public long multiply(DoubleMatrix dense, DoubleMatrix result) {
+		return multiply(dense, result, KernelTuner.getBestKernel(), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * result = this * dense: строка результата - сумма строк dense с весами из строки this,
+	 * строки складываются внутренним циклом kernel
+	 *
+	 * @return время умножения в мс
+	 */
+	public long multiply(final DoubleMatrix dense, final DoubleMatrix result, final TiledKernel kernel, ForkJoinPool pool) {
+		final int n = dense.getDimension();
+		if (columns != n || rows != n || result.getDimension() != n) {
+			throw new IllegalArgumentException("Dimensions are different");
+		}
+		long startTime = System.currentTimeMillis();
+		pool.invoke(new Lines(0, rows) {
+			@Override
+			protected void compute(int from, int to) {
+				Arrays.fill(result.matrix, from * n, to * n, 0);
+				for (int i = from; i < to; ++i) {
+					for (int l = rowStart[i]; l < rowStart[i + 1]; ++l) {
+						kernel.multiplyAdd(values[l], dense.matrix, columnIndex[l] * n, result.matrix, i * n, n);
+					}
+				}
+			}
+		});
+		return System.currentTimeMillis() - startTime;
+	}
+
+	/**
+	 * this * rightOper на общем пуле потоков
+	 */
+	public CsrMatrix multiply(CsrMatrix rightOper) {
+		return multiply(rightOper, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * this * rightOper по Густавсону: строка результата накапливается в плотном массиве
+	 * по строкам rightOper, выбранным ненулевыми элементами строки this.
+	 * Каждая задача пишет свои строки в свои массивы, потом они склеиваются.
+	 */
+	public CsrMatrix multiply(final CsrMatrix rightOper, ForkJoinPool pool) {
+		if (columns != rightOper.rows) {
+			throw new IllegalArgumentException("Dimensions are different");
+		}
+		final int[][] lineColumns = new int[rows][];
+		final double[][] lineValues = new double[rows][];
+		pool.invoke(new Lines(0, rows) {
+			@Override
+			protected void compute(int from, int to) {
+				double[] accumulator = new double[rightOper.columns];
+				boolean[] used = new boolean[rightOper.columns];
+				int[] touched = new int[rightOper.columns];
+				int count, k, j, nonzeros;
+				double a;
+				for (int i = from; i < to; ++i) {
+					count = 0;
+					for (int l = rowStart[i]; l < rowStart[i + 1]; ++l) {
+						a = values[l];
+						k = columnIndex[l];
+						for (int r = rightOper.rowStart[k]; r < rightOper.rowStart[k + 1]; ++r) {
+							j = rightOper.columnIndex[r];
+							if (!used[j]) {
+								used[j] = true;
+								touched[count++] = j;
+							}
+							accumulator[j] += a * rightOper.values[r];
+						}
+					}
+					Arrays.sort(touched, 0, count);
+					lineColumns[i] = new int[count];
+					lineValues[i] = new double[count];
+					nonzeros = 0;
+					for (int t = 0; t < count; ++t) {
+						j = touched[t];
+						if (accumulator[j] != 0) {
+							lineColumns[i][nonzeros] = j;
+							lineValues[i][nonzeros++] = accumulator[j];
+						}
+						accumulator[j] = 0;
+						used[j] = false;
+					}
+					if (nonzeros < count) {
+						lineColumns[i] = Arrays.copyOf(lineColumns[i], nonzeros);
+						lineValues[i] = Arrays.copyOf(lineValues[i], nonzeros);
+					}
+				}
+			}
+		});
+		int[] start = new int[rows + 1];
+		for (int i = 0; i < rows; ++i) {
+			start[i + 1] = start[i] + lineColumns[i].length;
+		}
+		int[] index = new int[start[rows]];
+		double[] product = new double[start[rows]];
+		for (int i = 0; i < rows; ++i) {
+			System.arraycopy(lineColumns[i], 0, index, start[i], lineColumns[i].length);
+			System.arraycopy(lineValues[i], 0, product, start[i], lineValues[i].length);
+		}
+		return new CsrMatrix(rows, rightOper.columns, start, index, product);
+	}
+
+	/**
+	 * Строки с from по to - 1, делятся пополам по числу ненулевых элементов,
+	 * пока их больше {@link #MIN_NONZEROS}
+	 */
+	@SuppressWarnings("serial")
+	private abstract class Lines extends RecursiveAction {
+		private int from;
+		private int to;
+
+		Lines(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected abstract void compute(int from, int to);
+
+		@Override
+		protected void compute() {
+			if (to - from < 2 || rowStart[to] - rowStart[from] <= MIN_NONZEROS) {
+				compute(from, to);
+				return;
+			}
+			final Lines parent = this;
+			// первая строка, на которой набирается половина ненулевых элементов
+			int half = (rowStart[from] + rowStart[to]) >>> 1;
+			int low = from + 1;
+			int high = to - 1;
+			int middle;
+			while (low < high) {
+				middle = (low + high) >>> 1;
+				if (rowStart[middle] < half) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			middle = low;
+			invokeAll(new Lines(from, middle) {
+				@Override
+				protected void compute(int from, int to) {
+					parent.compute(from, to);
+				}
+			}, new Lines(middle, to) {
+				@Override
+				protected void compute(int from, int to) {
+					parent.compute(from, to);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,35 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Аллокатор блоков вне кучи: слэб - один direct-буфер, блоки - его куски.
+ * Перед выдачей у блока сбрасываются позиция и граница.
+ */
+public class DirectSlabAllocator extends SlabAllocator<ByteBuffer> {
+	public DirectSlabAllocator() {
+		this(DEFAULT_SIZES);
+	}
+
+	public DirectSlabAllocator(int[] sizes) {
+		super(sizes);
+	}
+
+	@Override
+	protected void newSlab(int size, Object[] blocks) {
+		ByteBuffer slab = ByteBuffer.allocateDirect(size * blocks.length);
+		for (int i = 0; i < blocks.length; ++i) {
+			blocks[i] = slab.slice(i * size, size);
+		}
+	}
+
+	@Override
+	protected int getSize(ByteBuffer block) {
+		return block.capacity();
+	}
+
+	@Override
+	public ByteBuffer allocate(int size) {
+		ByteBuffer block = super.allocate(size);
+		block.clear();
+		return block;
+	}
+}
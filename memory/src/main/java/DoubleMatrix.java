@@ -0,0 +1,24 @@
+/**
+ * Матрица из double
+ */
+public class DoubleMatrix extends PrimitiveMatrix<DoubleMatrix> {
+	final double[] matrix;
+
+	public DoubleMatrix(int dimension) {
+		super(dimension);
+		matrix = new double[dimension * dimension];
+	}
+
+	public double getCell(int i, int j) {
+		return matrix[i * dimension + j];
+	}
+
+	public void setCell(int i, int j, double element) {
+		matrix[i * dimension + j] = element;
+	}
+
+	@Override
+	protected void multiply(MatrixMultiplier multiplier, DoubleMatrix rightOper, DoubleMatrix result) {
+		multiplier.multiply(matrix, rightOper.matrix, result.matrix, dimension);
+	}
+}
@@ -0,0 +1,15 @@
+import java.util.List;
+
+/**
+ * Способ выполнить пачку задач, см. {@link ExecutorProfiler}
+ */
+public interface ExecutionStrategy {
+	String getName();
+
+	/**
+	 * Выполняет все задачи и возвращается, когда они закончатся
+	 *
+	 * @param parallelism - число потоков (для пулов)
+	 */
+	void execute(List<? extends Runnable> tasks, int parallelism) throws InterruptedException;
+}
@@ -0,0 +1,360 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Сравнение способов выполнения одной и той же смеси задач: счетных, выделяющих память
+ * и блокирующихся (как на вводе-выводе). Для каждого способа считаются пропускная способность,
+ * задержки задач от начала пачки (очередь + выполнение) и наибольшее число живых потоков.
+ * <p>
+ * Способы: пул фиксированного размера, пул с захватом работы (newWorkStealingPool),
+ * ForkJoinPool с рекурсивным fork/join пачки, отдельный поток на задачу и виртуальный поток
+ * на задачу - последний только на JDK 21+, ищется через отражение.
+ * Блокирующиеся задачи ждут через {@link ForkJoinPool#managedBlock}, чтобы ForkJoinPool
+ * мог добавить поток на время ожидания; вне ForkJoinPool это обычное ожидание.
+ * </p>
+ * Запуск: java ExecutorProfiler [потоков [задач]]
+ */
+public class ExecutorProfiler {
+	static final int CPU_ITERATIONS = 20000;
+	static final int ALLOCATIONS = 64;
+	static final int[] BLOCK_SIZES = { 256, 512, 768, 1024 };
+	static final long BLOCKING_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final String VIRTUAL_FACTORY = "newVirtualThreadPerTaskExecutor";
+
+	public enum TaskType {
+		CPU, ALLOCATION, BLOCKING
+	}
+
+	/**
+	 * Задача с замером времени окончания
+	 */
+	public static class ProfiledTask implements Runnable {
+		final TaskType type;
+		final int seed;
+		long endTime;
+		/**
+		 * чтобы JIT не выбросил вычисления
+		 */
+		volatile long result;
+
+		ProfiledTask(TaskType type, int seed) {
+			this.type = type;
+			this.seed = seed;
+		}
+
+		public void run() {
+			switch (type) {
+			case CPU:
+				long sum = seed;
+				for (int i = 0; i < CPU_ITERATIONS; ++i) {
+					sum = sum * 6364136223846793005L + i;
+				}
+				result = sum;
+				break;
+			case ALLOCATION:
+				byte[][] blocks = new byte[ALLOCATIONS][];
+				for (int i = 0; i < ALLOCATIONS; ++i) {
+					blocks[i] = new byte[BLOCK_SIZES[(seed + i) % BLOCK_SIZES.length]];
+					blocks[i][i] = (byte) i;
+				}
+				result = blocks[seed % ALLOCATIONS].length;
+				break;
+			default:
+				try {
+					ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+						private boolean done;
+
+						public boolean block() {
+							LockSupport.parkNanos(BLOCKING_NANOS);
+							done = true;
+							return true;
+						}
+
+						public boolean isReleasable() {
+							return done;
+						}
+					});
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			endTime = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Результат одного способа
+	 */
+	public static class Report {
+		private static final String FORMAT = "%-16s %6d tasks %6d ms %8.1f tasks/s  p50 %7.2f ms  p99 %7.2f ms  p99.9 %7.2f ms  %4d threads";
+
+		String strategy;
+		int tasks;
+		long time;
+		/**
+		 * задержки задач по возрастанию, нс
+		 */
+		long[] latencies;
+		int peakThreads;
+
+		public String getStrategy() {
+			return strategy;
+		}
+
+		/**
+		 * Время всей пачки, нс
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public double getThroughput() {
+			return tasks * 1e9 / time;
+		}
+
+		/**
+		 * Задержка, которую не превышает доля quantile задач, нс
+		 */
+		public long getLatency(double quantile) {
+			return latencies[Math.min(latencies.length - 1, (int) Math.ceil(quantile * latencies.length) - 1)];
+		}
+
+		/**
+		 * Наибольшее число живых потоков платформы во время пачки (виртуальные потоки не считаются)
+		 */
+		public int getPeakThreads() {
+			return peakThreads;
+		}
+
+		public String toString() {
+			return String.format(FORMAT, strategy, tasks, time / 1000000, getThroughput(), getLatency(0.5) / 1e6,
+					getLatency(0.99) / 1e6, getLatency(0.999) / 1e6, peakThreads);
+		}
+	}
+
+	/**
+	 * Пачка из tasks задач, типы идут по кругу
+	 */
+	public static List<ProfiledTask> getMix(int tasks, TaskType... types) {
+		List<ProfiledTask> mix = Lists.newArrayList();
+		Random random = new Random(tasks);
+		for (int i = 0; i < tasks; ++i) {
+			mix.add(new ProfiledTask(types[i % types.length], random.nextInt(Integer.MAX_VALUE)));
+		}
+		return mix;
+	}
+
+	/**
+	 * Выполняет задачи способом strategy и собирает отчет
+	 * @throws IllegalArgumentException - если задач нет: у пустой пачки нет задержек
+	 */
+	public static Report profile(ExecutionStrategy strategy, List<ProfiledTask> tasks, int parallelism)
+			throws InterruptedException {
+		if (tasks.isEmpty()) {
+			throw new IllegalArgumentException("No tasks");
+		}
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		threads.resetPeakThreadCount();
+		long startTime = System.nanoTime();
+		strategy.execute(tasks, parallelism);
+		Report report = new Report();
+		report.time = System.nanoTime() - startTime;
+		report.strategy = strategy.getName();
+		report.tasks = tasks.size();
+		report.peakThreads = threads.getPeakThreadCount();
+		report.latencies = new long[tasks.size()];
+		for (int i = 0; i < tasks.size(); ++i) {
+			report.latencies[i] = tasks.get(i).endTime - startTime;
+		}
+		Arrays.sort(report.latencies);
+		return report;
+	}
+
+	/**
+	 * Все способы, доступные на этой JDK
+	 */
+	public static List<ExecutionStrategy> getStrategies() {
+		List<ExecutionStrategy> strategies = Lists.newArrayList(fixedPool(), workStealingPool(), forkJoin(),
+				threadPerTask());
+		if (virtualThreads() != null) {
+			strategies.add(virtualThreads());
+		}
+		return strategies;
+	}
+
+	/**
+	 * Все задачи отдаются в ExecutorService, потом он закрывается
+	 */
+	private static abstract class ExecutorStrategy implements ExecutionStrategy {
+		private final String name;
+
+		ExecutorStrategy(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		abstract ExecutorService create(int parallelism);
+
+		public void execute(List<? extends Runnable> tasks, int parallelism) throws InterruptedException {
+			ExecutorService executor = create(parallelism);
+			try {
+				List<Future<?>> futures = Lists.newArrayList();
+				for (Runnable task : tasks) {
+					futures.add(executor.submit(task));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			} finally {
+				executor.shutdown();
+			}
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+	}
+
+	public static ExecutionStrategy fixedPool() {
+		return new ExecutorStrategy("fixed pool") {
+			ExecutorService create(int parallelism) {
+				return Executors.newFixedThreadPool(parallelism);
+			}
+		};
+	}
+
+	public static ExecutionStrategy workStealingPool() {
+		return new ExecutorStrategy("work stealing") {
+			ExecutorService create(int parallelism) {
+				return Executors.newWorkStealingPool(parallelism);
+			}
+		};
+	}
+
+	/**
+	 * Новый поток платформы на каждую задачу
+	 */
+	public static ExecutionStrategy threadPerTask() {
+		return new ExecutionStrategy() {
+			public String getName() {
+				return "thread per task";
+			}
+
+			public void execute(List<? extends Runnable> tasks, int parallelism) throws InterruptedException {
+				List<Thread> threads = Lists.newArrayList();
+				for (Runnable task : tasks) {
+					Thread thread = new Thread(task);
+					thread.start();
+					threads.add(thread);
+				}
+				for (Thread thread : threads) {
+					thread.join();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Виртуальный поток на каждую задачу, null - если JDK их не умеет (до 21)
+	 */
+	public static ExecutionStrategy virtualThreads() {
+		final Method factory;
+		try {
+			factory = Executors.class.getMethod(VIRTUAL_FACTORY);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+		return new ExecutorStrategy("virtual threads") {
+			ExecutorService create(int parallelism) {
+				try {
+					return (ExecutorService) factory.invoke(null);
+				} catch (ReflectiveOperationException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * ForkJoinPool: пачка рекурсивно делится пополам и половины выполняются через fork/join
+	 */
+	public static ExecutionStrategy forkJoin() {
+		return new ExecutionStrategy() {
+			public String getName() {
+				return "fork/join";
+			}
+
+			public void execute(List<? extends Runnable> tasks, int parallelism) {
+				ForkJoinPool pool = new ForkJoinPool(parallelism);
+				try {
+					pool.invoke(new Batch(tasks, 0, tasks.size()));
+				} finally {
+					pool.shutdown();
+				}
+			}
+		};
+	}
+
+	@SuppressWarnings("serial")
+	private static class Batch extends RecursiveAction {
+		private List<? extends Runnable> tasks;
+		private int from;
+		private int to;
+
+		Batch(List<? extends Runnable> tasks, int from, int to) {
+			this.tasks = tasks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				if (to > from) {
+					tasks.get(from).run();
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			Batch right = new Batch(tasks, middle, to);
+			right.fork();
+			new Batch(tasks, from, middle).compute();
+			right.join();
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int parallelism = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int tasks = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+		if (parallelism < 1 || tasks < 1) {
+			System.out.println("Threads and tasks must be at least 1");
+			return;
+		}
+		if (virtualThreads() == null) {
+			System.out.println("Virtual threads are not available (JDK 21+), skipped");
+		}
+		TaskType[][] mixes = { { TaskType.CPU }, { TaskType.ALLOCATION }, { TaskType.BLOCKING }, TaskType.values() };
+		for (TaskType[] mix : mixes) {
+			System.out.println(Arrays.toString(mix) + ", " + parallelism + " threads:");
+			for (ExecutionStrategy strategy : getStrategies()) {
+				System.out.println(profile(strategy, getMix(tasks, mix), parallelism));
+			}
+		}
+	}
+}
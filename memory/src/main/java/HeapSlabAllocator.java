@@ -0,0 +1,25 @@
+/**
+ * Аллокатор массивов byte[] в куче: сборщик мусора их не освобождает, пока они в магазинах,
+ * и не тратит время на новые массивы
+ */
+public class HeapSlabAllocator extends SlabAllocator<byte[]> {
+	public HeapSlabAllocator() {
+		this(DEFAULT_SIZES);
+	}
+
+	public HeapSlabAllocator(int[] sizes) {
+		super(sizes);
+	}
+
+	@Override
+	protected void newSlab(int size, Object[] blocks) {
+		for (int i = 0; i < blocks.length; ++i) {
+			blocks[i] = new byte[size];
+		}
+	}
+
+	@Override
+	protected int getSize(byte[] block) {
+		return block.length;
+	}
+}
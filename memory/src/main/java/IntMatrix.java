@@ -0,0 +1,24 @@
+/**
+ * Матрица из int
+ */
+public class IntMatrix extends PrimitiveMatrix<IntMatrix> {
+	final int[] matrix;
+
+	public IntMatrix(int dimension) {
+		super(dimension);
+		matrix = new int[dimension * dimension];
+	}
+
+	public int getCell(int i, int j) {
+		return matrix[i * dimension + j];
+	}
+
+	public void setCell(int i, int j, int element) {
+		matrix[i * dimension + j] = element;
+	}
+
+	@Override
+	protected void multiply(MatrixMultiplier multiplier, IntMatrix rightOper, IntMatrix result) {
+		multiplier.multiply(matrix, rightOper.matrix, result.matrix, dimension);
+	}
+}
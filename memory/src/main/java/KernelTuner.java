@@ -0,0 +1,115 @@
+/**
+ * Подбор размеров плиток {@link TiledKernel} под текущую машину.
+ * Все варианты плиток прогоняются на матрицах double {@link #TUNE_DIMENSION} x {@link #TUNE_DIMENSION},
+ * выбирается самый быстрый. Подбор выполняется один раз при первом обращении
+ * (около секунды); его можно пропустить, задав плитки свойствами
+ * -Dmatrix.l1Tile=.. -Dmatrix.l2Tile=.. [-Dmatrix.pack=true].
+ * Если есть измеренный {@link MachineProfile}, плитки берутся из размеров его кешей:
+ * три плитки (две множителя и результата) должны помещаться в L1 и в L2.
+ */
+public class KernelTuner {
+	static final int[] L1_TILES = { 16, 32, 64 };
+	static final int[] L2_TILES = { 64, 128, 256 };
+	static final int TUNE_DIMENSION = 256;
+	private static final int REPEATS = 3;
+
+	private static final String L1_PROPERTY = "matrix.l1Tile";
+	private static final String L2_PROPERTY = "matrix.l2Tile";
+	private static final String PACK_PROPERTY = "matrix.pack";
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+	private static class Holder {
+		static final TiledKernel TUNED = configuredOrTuned();
+	}
+
+	/**
+	 * Лучшее доступное ядро: векторное с подобранными плитками, если подключен
+	 * модуль jdk.incubator.vector, иначе скалярное
+	 */
+	public static TiledKernel getBestKernel() {
+		TiledKernel tuned = getTunedKernel();
+		if (isVectorAvailable()) {
+			return new VectorKernel(tuned.getL1Tile(), tuned.getL2Tile(), tuned.isPacked());
+		}
+		return tuned;
+	}
+
+	/**
+	 * Подключен ли модуль Vector API (--add-modules jdk.incubator.vector)
+	 */
+	public static boolean isVectorAvailable() {
+		return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+	}
+
+	/**
+	 * Ядро с подобранными для этой машины плитками
+	 */
+	public static TiledKernel getTunedKernel() {
+		return Holder.TUNED;
+	}
+
+	private static TiledKernel configuredOrTuned() {
+		Integer l1Tile = Integer.getInteger(L1_PROPERTY);
+		Integer l2Tile = Integer.getInteger(L2_PROPERTY);
+		if (l1Tile != null && l2Tile != null) {
+			return new TiledKernel(l1Tile, l2Tile, Boolean.getBoolean(PACK_PROPERTY));
+		}
+		MachineProfile profile = MachineProfile.getInstance();
+		if (profile.isMeasured()) {
+			int l1ProfileTile = profile.getTileSide(1, 8, 3);
+			return new TiledKernel(l1ProfileTile, Math.max(l1ProfileTile, profile.getTileSide(2, 8, 3)),
+					Boolean.getBoolean(PACK_PROPERTY));
+		}
+		return tune(TUNE_DIMENSION);
+	}
+
+	/**
+	 * Прогоняет все варианты плиток на матрицах dimension x dimension
+	 * 
+	 * @return самое быстрое ядро
+	 */
+	public static TiledKernel tune(int dimension) {
+		double[] left = new double[dimension * dimension];
+		double[] right = new double[dimension * dimension];
+		double[] result = new double[dimension * dimension];
+		for (int i = 0; i < left.length; ++i) {
+			left[i] = i % 7;
+			right[i] = i % 5;
+		}
+		TiledKernel best = null;
+		long bestTime = Long.MAX_VALUE;
+		TiledKernel kernel;
+		long time;
+		for (int l1Tile : L1_TILES) {
+			for (int l2Tile : L2_TILES) {
+				if (l2Tile % l1Tile != 0) {
+					continue;
+				}
+				for (boolean pack : new boolean[] { false, true }) {
+					kernel = new TiledKernel(l1Tile, l2Tile, pack);
+					time = measure(kernel, left, right, result, dimension);
+					if (time < bestTime) {
+						bestTime = time;
+						best = kernel;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Лучшее время из {@link #REPEATS} прогонов после прогрева, нс
+	 */
+	static long measure(MatrixKernel kernel, double[] left, double[] right, double[] result, int dimension) {
+		kernel.multiply(left, right, result, dimension, 0, dimension);
+		long best = Long.MAX_VALUE;
+		long startTime;
+		for (int i = 0; i < REPEATS; ++i) {
+			startTime = System.nanoTime();
+			kernel.multiply(left, right, result, dimension, 0, dimension);
+			best = Math.min(best, System.nanoTime() - startTime);
+		}
+		return best;
+	}
+}
@@ -0,0 +1,24 @@
+/**
+ * Матрица из long
+ */
+public class LongMatrix extends PrimitiveMatrix<LongMatrix> {
+	final long[] matrix;
+
+	public LongMatrix(int dimension) {
+		super(dimension);
+		matrix = new long[dimension * dimension];
+	}
+
+	public long getCell(int i, int j) {
+		return matrix[i * dimension + j];
+	}
+
+	public void setCell(int i, int j, long element) {
+		matrix[i * dimension + j] = element;
+	}
+
+	@Override
+	protected void multiply(MatrixMultiplier multiplier, LongMatrix rightOper, LongMatrix result) {
+		multiplier.multiply(matrix, rightOper.matrix, result.matrix, dimension);
+	}
+}
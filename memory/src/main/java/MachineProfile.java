@@ -0,0 +1,176 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Размеры и задержки кешей машины, измеренные {@link CacheProfiler}.
+ * Профиль хранится в файле свойств (-Dmachine.profile=файл, по умолчанию ~/.machine-profile.properties)
+ * и читается один раз; по нему выбирают размеры плиток {@link KernelTuner}, блоков
+ * {@link BlockedDoubleMatrix} и отступов {@link PaddedCounters}.
+ * Если файла нет, профиль не измерен и размеры - привычные: строка 64 байта, L1 32 Кб, L2 256 Кб.
+ */
+public class MachineProfile {
+	private static final String PROFILE_PROPERTY = "machine.profile";
+	private static final String DEFAULT_FILE = ".machine-profile.properties";
+	private static final String LINE_SIZE = "line.size";
+	private static final String LEVELS = "cache.levels";
+	private static final String CACHE_SIZE = "cache.%d.size";
+	private static final String CACHE_LATENCY = "cache.%d.latency";
+	private static final String MEMORY_LATENCY = "memory.latency";
+
+	static final int DEFAULT_LINE_SIZE = 64;
+	static final long[] DEFAULT_CACHE_SIZES = { 32 << 10, 256 << 10 };
+
+	private final boolean measured;
+	private final int lineSize;
+	/**
+	 * байт, от L1 к последнему уровню
+	 */
+	private final long[] cacheSizes;
+	/**
+	 * нс на обращение
+	 */
+	private final double[] cacheLatencies;
+	private final double memoryLatency;
+
+	private static class Holder {
+		static final MachineProfile INSTANCE = loadOrDefault();
+	}
+
+	MachineProfile(boolean measured, int lineSize, long[] cacheSizes, double[] cacheLatencies, double memoryLatency) {
+		this.measured = measured;
+		this.lineSize = lineSize;
+		this.cacheSizes = cacheSizes;
+		this.cacheLatencies = cacheLatencies;
+		this.memoryLatency = memoryLatency;
+	}
+
+	/**
+	 * Профиль из файла -Dmachine.profile (или ~/.machine-profile.properties), если он есть
+	 */
+	public static MachineProfile getInstance() {
+		return Holder.INSTANCE;
+	}
+
+	public static File getDefaultFile() {
+		String path = System.getProperty(PROFILE_PROPERTY);
+		return path != null ? new File(path) : new File(System.getProperty("user.home"), DEFAULT_FILE);
+	}
+
+	private static MachineProfile loadOrDefault() {
+		File file = getDefaultFile();
+		if (file.isFile()) {
+			try {
+				return load(file);
+			} catch (IOException e) {
+				System.err.println("Machine profile " + file + " is not read: " + e.getMessage());
+			} catch (RuntimeException e) {
+				System.err.println("Machine profile " + file + " is broken: " + e);
+			}
+		}
+		return new MachineProfile(false, DEFAULT_LINE_SIZE, DEFAULT_CACHE_SIZES, new double[DEFAULT_CACHE_SIZES.length], 0);
+	}
+
+	public static MachineProfile load(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		int levels = Integer.parseInt(properties.getProperty(LEVELS));
+		int lineSize = Integer.parseInt(properties.getProperty(LINE_SIZE));
+		if (levels < 1 || lineSize < 1) {
+			throw new IOException("No cache levels or line size in " + file);
+		}
+		long[] sizes = new long[levels];
+		double[] latencies = new double[levels];
+		for (int level = 1; level <= levels; ++level) {
+			sizes[level - 1] = Long.parseLong(properties.getProperty(String.format(CACHE_SIZE, level)));
+			latencies[level - 1] = Double.parseDouble(properties.getProperty(String.format(CACHE_LATENCY, level)));
+		}
+		return new MachineProfile(true, lineSize, sizes, latencies,
+				Double.parseDouble(properties.getProperty(MEMORY_LATENCY)));
+	}
+
+	/**
+	 * @throws IllegalStateException - если в профиле нет ни одного уровня кеша
+	 */
+	public void save(File file) throws IOException {
+		if (cacheSizes.length == 0) {
+			throw new IllegalStateException("No cache levels to save");
+		}
+		Properties properties = new Properties();
+		properties.setProperty(LINE_SIZE, Integer.toString(lineSize));
+		properties.setProperty(LEVELS, Integer.toString(cacheSizes.length));
+		for (int level = 1; level <= cacheSizes.length; ++level) {
+			properties.setProperty(String.format(CACHE_SIZE, level), Long.toString(cacheSizes[level - 1]));
+			properties.setProperty(String.format(CACHE_LATENCY, level), Double.toString(cacheLatencies[level - 1]));
+		}
+		properties.setProperty(MEMORY_LATENCY, Double.toString(memoryLatency));
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, "CacheProfiler");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Измерен ли профиль (или это размеры по умолчанию)
+	 */
+	public boolean isMeasured() {
+		return measured;
+	}
+
+	public int getLineSize() {
+		return lineSize;
+	}
+
+	public int getCacheLevels() {
+		return cacheSizes.length;
+	}
+
+	/**
+	 * @param level - от 1
+	 */
+	public long getCacheSize(int level) {
+		return cacheSizes[level - 1];
+	}
+
+	public double getCacheLatency(int level) {
+		return cacheLatencies[level - 1];
+	}
+
+	public double getMemoryLatency() {
+		return memoryLatency;
+	}
+
+	/**
+	 * Наибольшая степень 2 - сторона квадратной плитки, при которой tiles плиток
+	 * из элементов по elementBytes байт помещаются в кеш level (если такого уровня нет - в последний,
+	 * если уровней нет совсем - в кеш по умолчанию)
+	 */
+	public int getTileSide(int level, int elementBytes, int tiles) {
+		long[] sizes = cacheSizes.length > 0 ? cacheSizes : DEFAULT_CACHE_SIZES;
+		long size = sizes[Math.min(level, sizes.length) - 1];
+		int side = (int) Math.sqrt((double) size / elementBytes / tiles);
+		return Math.max(1, Integer.highestOneBit(side));
+	}
+
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append(String.format("line %d bytes", lineSize));
+		for (int level = 1; level <= cacheSizes.length; ++level) {
+			result.append(String.format(", L%d %d KB %.1f ns", level, cacheSizes[level - 1] >> 10,
+					cacheLatencies[level - 1]));
+		}
+		result.append(String.format(", memory %.1f ns", memoryLatency));
+		return measured ? result.toString() : "default: " + result;
+	}
+}
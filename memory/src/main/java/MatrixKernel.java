@@ -0,0 +1,11 @@
+/**
+ * Ядро умножения матриц: считает строки результата с from по to - 1.
+ * Матрицы квадратные n x n и хранятся построчно.
+ */
+public interface MatrixKernel {
+	void multiply(int[] left, int[] right, int[] result, int n, int from, int to);
+
+	void multiply(long[] left, long[] right, long[] result, int n, int from, int to);
+
+	void multiply(double[] left, double[] right, double[] result, int n, int from, int to);
+}
@@ -0,0 +1,337 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Параллельное умножение квадратных матриц в {@link ForkJoinPool}.
+ * Строки результата рекурсивно делятся пополам, пока их не станет меньше порога,
+ * дальше строки считает {@link MatrixKernel}. Матрицы размера не меньше
+ * strassenThreshold (и четного) умножаются по Штрассену: 7 умножений половинного
+ * размера вместо 8, умножения идут параллельно.
+ * <p>
+ * Для int и long Штрассен дает тот же результат, для double - отличается
+ * в младших разрядах из-за другого порядка сложений.
+ * </p>
+ */
+public class MatrixMultiplier {
+	/**
+	 * меньше стольких строк задача не делится
+	 */
+	static final int MIN_LINES = 16;
+
+	private static final ForkJoinPool SHARED_POOL = new ForkJoinPool();
+
+	private final ForkJoinPool pool;
+	private final MatrixKernel kernel;
+	/**
+	 * 0 - Штрассен не используется
+	 */
+	private final int strassenThreshold;
+
+	/**
+	 * @param pool - пул потоков, по умолчанию - общий пул по числу ядер
+	 * @param kernel - ядро для строк результата
+	 * @param strassenThreshold - с какого размера умножать по Штрассену, 0 - никогда
+	 */
+	public MatrixMultiplier(ForkJoinPool pool, MatrixKernel kernel, int strassenThreshold) {
+		if (strassenThreshold < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.pool = pool;
+		this.kernel = kernel;
+		this.strassenThreshold = strassenThreshold;
+	}
+
+	public MatrixMultiplier(MatrixKernel kernel) {
+		this(SHARED_POOL, kernel, 0);
+	}
+
+	private static class Holder {
+		static final MatrixMultiplier DEFAULT = new MatrixMultiplier(KernelTuner.getBestKernel());
+	}
+
+	/**
+	 * Общий пул, лучшее ядро от {@link KernelTuner}, без Штрассена
+	 */
+	public static MatrixMultiplier getDefault() {
+		return Holder.DEFAULT;
+	}
+
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	public void multiply(int[] left, int[] right, int[] result, int n) {
+		pool.invoke(useStrassen(n) ? new IntStrassen(left, right, result, n) : new Lines(left, right, result, n, 0, n));
+	}
+
+	public void multiply(long[] left, long[] right, long[] result, int n) {
+		pool.invoke(useStrassen(n) ? new LongStrassen(left, right, result, n) : new Lines(left, right, result, n, 0, n));
+	}
+
+	public void multiply(double[] left, double[] right, double[] result, int n) {
+		pool.invoke(useStrassen(n) ? new DoubleStrassen(left, right, result, n) : new Lines(left, right, result, n, 0, n));
+	}
+
+	private boolean useStrassen(int n) {
+		return strassenThreshold > 0 && n >= strassenThreshold && (n & 1) == 0;
+	}
+
+	/**
+	 * Сколько строк считать одной задачей: хватает на 4 задачи на поток
+	 */
+	private int getGrain(int n) {
+		return Math.max(MIN_LINES, n / (pool.getParallelism() * 4));
+	}
+
+	/**
+	 * Строки результата с from по to - 1, массивы - int[], long[] или double[]
+	 */
+	@SuppressWarnings("serial")
+	private class Lines extends RecursiveAction {
+		private Object left;
+		private Object right;
+		private Object result;
+		private int n;
+		private int from;
+		private int to;
+
+		Lines(Object left, Object right, Object result, int n, int from, int to) {
+			this.left = left;
+			this.right = right;
+			this.result = result;
+			this.n = n;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > getGrain(n)) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Lines(left, right, result, n, from, middle), new Lines(left, right, result, n, middle, to));
+			} else if (left instanceof int[]) {
+				kernel.multiply((int[]) left, (int[]) right, (int[]) result, n, from, to);
+			} else if (left instanceof long[]) {
+				kernel.multiply((long[]) left, (long[]) right, (long[]) result, n, from, to);
+			} else {
+				kernel.multiply((double[]) left, (double[]) right, (double[]) result, n, from, to);
+			}
+		}
+	}
+
+	/**
+	 * Умножение по Штрассену, подзадачи меньше порога считаются через {@link Lines}
+	 */
+	@SuppressWarnings("serial")
+	private class IntStrassen extends RecursiveAction {
+		private int[] left;
+		private int[] right;
+		private int[] result;
+		private int n;
+
+		IntStrassen(int[] left, int[] right, int[] result, int n) {
+			this.left = left;
+			this.right = right;
+			this.result = result;
+			this.n = n;
+		}
+
+		private RecursiveAction product(int[] left, int[] right, int[] result, int n) {
+			return useStrassen(n) ? new IntStrassen(left, right, result, n) : new Lines(left, right, result, n, 0, n);
+		}
+
+		@Override
+		protected void compute() {
+			int h = n / 2;
+			int[] a11 = quarter(left, n, 0, 0), a12 = quarter(left, n, 0, h);
+			int[] a21 = quarter(left, n, h, 0), a22 = quarter(left, n, h, h);
+			int[] b11 = quarter(right, n, 0, 0), b12 = quarter(right, n, 0, h);
+			int[] b21 = quarter(right, n, h, 0), b22 = quarter(right, n, h, h);
+			int[][] m = new int[7][h * h];
+			invokeAll(product(sum(a11, a22, 1), sum(b11, b22, 1), m[0], h),
+					product(sum(a21, a22, 1), b11, m[1], h),
+					product(a11, sum(b12, b22, -1), m[2], h),
+					product(a22, sum(b21, b11, -1), m[3], h),
+					product(sum(a11, a12, 1), b22, m[4], h),
+					product(sum(a21, a11, -1), sum(b11, b12, 1), m[5], h),
+					product(sum(a12, a22, -1), sum(b21, b22, 1), m[6], h));
+			int cell;
+			for (int i = 0; i < h; ++i) {
+				for (int j = 0; j < h; ++j) {
+					cell = i * h + j;
+					result[i * n + j] = m[0][cell] + m[3][cell] - m[4][cell] + m[6][cell];
+					result[i * n + j + h] = m[2][cell] + m[4][cell];
+					result[(i + h) * n + j] = m[1][cell] + m[3][cell];
+					result[(i + h) * n + j + h] = m[0][cell] - m[1][cell] + m[2][cell] + m[5][cell];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Копия четверти матрицы n x n, начинающейся в (row, column)
+	 */
+	private static int[] quarter(int[] matrix, int n, int row, int column) {
+		int h = n / 2;
+		int[] result = new int[h * h];
+		for (int i = 0; i < h; ++i) {
+			System.arraycopy(matrix, (row + i) * n + column, result, i * h, h);
+		}
+		return result;
+	}
+
+	/**
+	 * first + sign * second
+	 */
+	private static int[] sum(int[] first, int[] second, int sign) {
+		int[] result = new int[first.length];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = sign > 0 ? first[i] + second[i] : first[i] - second[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Умножение по Штрассену, подзадачи меньше порога считаются через {@link Lines}
+	 */
+	@SuppressWarnings("serial")
+	private class LongStrassen extends RecursiveAction {
+		private long[] left;
+		private long[] right;
+		private long[] result;
+		private int n;
+
+		LongStrassen(long[] left, long[] right, long[] result, int n) {
+			this.left = left;
+			this.right = right;
+			this.result = result;
+			this.n = n;
+		}
+
+		private RecursiveAction product(long[] left, long[] right, long[] result, int n) {
+			return useStrassen(n) ? new LongStrassen(left, right, result, n) : new Lines(left, right, result, n, 0, n);
+		}
+
+		@Override
+		protected void compute() {
+			int h = n / 2;
+			long[] a11 = quarter(left, n, 0, 0), a12 = quarter(left, n, 0, h);
+			long[] a21 = quarter(left, n, h, 0), a22 = quarter(left, n, h, h);
+			long[] b11 = quarter(right, n, 0, 0), b12 = quarter(right, n, 0, h);
+			long[] b21 = quarter(right, n, h, 0), b22 = quarter(right, n, h, h);
+			long[][] m = new long[7][h * h];
+			invokeAll(product(sum(a11, a22, 1), sum(b11, b22, 1), m[0], h),
+					product(sum(a21, a22, 1), b11, m[1], h),
+					product(a11, sum(b12, b22, -1), m[2], h),
+					product(a22, sum(b21, b11, -1), m[3], h),
+					product(sum(a11, a12, 1), b22, m[4], h),
+					product(sum(a21, a11, -1), sum(b11, b12, 1), m[5], h),
+					product(sum(a12, a22, -1), sum(b21, b22, 1), m[6], h));
+			int cell;
+			for (int i = 0; i < h; ++i) {
+				for (int j = 0; j < h; ++j) {
+					cell = i * h + j;
+					result[i * n + j] = m[0][cell] + m[3][cell] - m[4][cell] + m[6][cell];
+					result[i * n + j + h] = m[2][cell] + m[4][cell];
+					result[(i + h) * n + j] = m[1][cell] + m[3][cell];
+					result[(i + h) * n + j + h] = m[0][cell] - m[1][cell] + m[2][cell] + m[5][cell];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Копия четверти матрицы n x n, начинающейся в (row, column)
+	 */
+	private static long[] quarter(long[] matrix, int n, int row, int column) {
+		int h = n / 2;
+		long[] result = new long[h * h];
+		for (int i = 0; i < h; ++i) {
+			System.arraycopy(matrix, (row + i) * n + column, result, i * h, h);
+		}
+		return result;
+	}
+
+	/**
+	 * first + sign * second
+	 */
+	private static long[] sum(long[] first, long[] second, int sign) {
+		long[] result = new long[first.length];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = sign > 0 ? first[i] + second[i] : first[i] - second[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Умножение по Штрассену, подзадачи меньше порога считаются через {@link Lines}
+	 */
+	@SuppressWarnings("serial")
+	private class DoubleStrassen extends RecursiveAction {
+		private double[] left;
+		private double[] right;
+		private double[] result;
+		private int n;
+
+		DoubleStrassen(double[] left, double[] right, double[] result, int n) {
+			this.left = left;
+			this.right = right;
+			this.result = result;
+			this.n = n;
+		}
+
+		private RecursiveAction product(double[] left, double[] right, double[] result, int n) {
+			return useStrassen(n) ? new DoubleStrassen(left, right, result, n) : new Lines(left, right, result, n, 0, n);
+		}
+
+		@Override
+		protected void compute() {
+			int h = n / 2;
+			double[] a11 = quarter(left, n, 0, 0), a12 = quarter(left, n, 0, h);
+			double[] a21 = quarter(left, n, h, 0), a22 = quarter(left, n, h, h);
+			double[] b11 = quarter(right, n, 0, 0), b12 = quarter(right, n, 0, h);
+			double[] b21 = quarter(right, n, h, 0), b22 = quarter(right, n, h, h);
+			double[][] m = new double[7][h * h];
+			invokeAll(product(sum(a11, a22, 1), sum(b11, b22, 1), m[0], h),
+					product(sum(a21, a22, 1), b11, m[1], h),
+					product(a11, sum(b12, b22, -1), m[2], h),
+					product(a22, sum(b21, b11, -1), m[3], h),
+					product(sum(a11, a12, 1), b22, m[4], h),
+					product(sum(a21, a11, -1), sum(b11, b12, 1), m[5], h),
+					product(sum(a12, a22, -1), sum(b21, b22, 1), m[6], h));
+			int cell;
+			for (int i = 0; i < h; ++i) {
+				for (int j = 0; j < h; ++j) {
+					cell = i * h + j;
+					result[i * n + j] = m[0][cell] + m[3][cell] - m[4][cell] + m[6][cell];
+					result[i * n + j + h] = m[2][cell] + m[4][cell];
+					result[(i + h) * n + j] = m[1][cell] + m[3][cell];
+					result[(i + h) * n + j + h] = m[0][cell] - m[1][cell] + m[2][cell] + m[5][cell];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Копия четверти матрицы n x n, начинающейся в (row, column)
+	 */
+	private static double[] quarter(double[] matrix, int n, int row, int column) {
+		int h = n / 2;
+		double[] result = new double[h * h];
+		for (int i = 0; i < h; ++i) {
+			System.arraycopy(matrix, (row + i) * n + column, result, i * h, h);
+		}
+		return result;
+	}
+
+	/**
+	 * first + sign * second
+	 */
+	private static double[] sum(double[] first, double[] second, int sign) {
+		double[] result = new double[first.length];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = sign > 0 ? first[i] + second[i] : first[i] - second[i];
+		}
+		return result;
+	}
+}
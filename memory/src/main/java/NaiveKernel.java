@@ -0,0 +1,51 @@
+/**
+ * Умножение в порядке i-j-k: каждая ячейка результата - скалярное произведение
+ * строки на столбец, сумма копится в локальной переменной.
+ * Столбец правой матрицы читается с шагом n, поэтому на больших матрицах
+ * почти каждое обращение - промах кеша.
+ */
+public class NaiveKernel implements MatrixKernel {
+	public static final NaiveKernel INSTANCE = new NaiveKernel();
+
+	@Override
+	public void multiply(int[] left, int[] right, int[] result, int n, int from, int to) {
+		int sum;
+		for (int i = from; i < to; ++i) {
+			for (int j = 0; j < n; ++j) {
+				sum = 0;
+				for (int k = 0; k < n; ++k) {
+					sum += left[i * n + k] * right[k * n + j];
+				}
+				result[i * n + j] = sum;
+			}
+		}
+	}
+
+	@Override
+	public void multiply(long[] left, long[] right, long[] result, int n, int from, int to) {
+		long sum;
+		for (int i = from; i < to; ++i) {
+			for (int j = 0; j < n; ++j) {
+				sum = 0;
+				for (int k = 0; k < n; ++k) {
+					sum += left[i * n + k] * right[k * n + j];
+				}
+				result[i * n + j] = sum;
+			}
+		}
+	}
+
+	@Override
+	public void multiply(double[] left, double[] right, double[] result, int n, int from, int to) {
+		double sum;
+		for (int i = from; i < to; ++i) {
+			for (int j = 0; j < n; ++j) {
+				sum = 0;
+				for (int k = 0; k < n; ++k) {
+					sum += left[i * n + k] * right[k * n + j];
+				}
+				result[i * n + j] = sum;
+			}
+		}
+	}
+}
@@ -0,0 +1,238 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Матрица из double вне кучи: в direct-буферах или в отображенном в память файле.
+ * Сборщик мусора ее не видит, а отображенная матрица может быть больше -Xmx
+ * (и больше памяти - страницы подгружает ОС).
+ * <p>
+ * Буфер не может быть больше 2 Гб, поэтому матрица разбита на куски по целым строкам,
+ * не больше {@link #CHUNK_BYTES} байт каждый. Умножение идет плитками
+ * {@link #getTile()} x {@link #getTile()}: плитки копируются в массивы в куче,
+ * перемножаются ядром и складываются в плитку результата, которая записывается обратно.
+ * </p>
+ */
+public class OffHeapMatrix implements Closeable {
+	static final int CHUNK_BYTES = 1 << 30;
+	static final int DEFAULT_TILE = 512;
+
+	private final int dimension;
+	private final int rowsPerChunk;
+	private final DoubleBuffer[] chunks;
+	/**
+	 * null, если матрица не отображена на файл
+	 */
+	private final FileChannel channel;
+	private final MappedByteBuffer[] mapped;
+	private int tile = DEFAULT_TILE;
+
+	private OffHeapMatrix(int dimension, FileChannel channel) throws IOException {
+		this.dimension = dimension;
+		this.channel = channel;
+		rowsPerChunk = Math.max(1, CHUNK_BYTES / (dimension * 8));
+		chunks = new DoubleBuffer[(dimension + rowsPerChunk - 1) / rowsPerChunk];
+		mapped = channel == null ? null : new MappedByteBuffer[chunks.length];
+		int rows;
+		long offset = 0;
+		ByteBuffer chunk;
+		for (int i = 0; i < chunks.length; ++i) {
+			rows = Math.min(rowsPerChunk, dimension - i * rowsPerChunk);
+			if (channel == null) {
+				chunk = ByteBuffer.allocateDirect(rows * dimension * 8);
+			} else {
+				mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) rows * dimension * 8);
+				chunk = mapped[i];
+			}
+			chunks[i] = chunk.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+			offset += (long) rows * dimension * 8;
+		}
+	}
+
+	/**
+	 * Нулевая матрица в direct-буферах
+	 */
+	public static OffHeapMatrix allocate(int dimension) {
+		try {
+			return new OffHeapMatrix(dimension, null);
+		} catch (IOException e) {
+			// без файла ввода-вывода нет
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Матрица, отображенная на файл (построчно, родной порядок байт).
+	 * Если файл короче матрицы, он дополняется нулями.
+	 */
+	public static OffHeapMatrix map(File file, int dimension) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			return new OffHeapMatrix(dimension, channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	public int getTile() {
+		return tile;
+	}
+
+	/**
+	 * Сторона плитки при умножении этой матрицы на другую: 4 плитки на поток должны помещаться в куче
+	 */
+	public void setTile(int tile) {
+		if (tile < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.tile = tile;
+	}
+
+	public double getCell(int i, int j) {
+		return chunks[i / rowsPerChunk].get((i % rowsPerChunk) * dimension + j);
+	}
+
+	public void setCell(int i, int j, double element) {
+		chunks[i / rowsPerChunk].put((i % rowsPerChunk) * dimension + j, element);
+	}
+
+	/**
+	 * Копирует плитку с углом (row, column) в tile x tile массив, за краем матрицы - нули
+	 */
+	void readTile(int row, int column, int tile, double[] dst) {
+		int rows = Math.min(tile, dimension - row);
+		int columns = Math.min(tile, dimension - column);
+		if (rows < tile || columns < tile) {
+			Arrays.fill(dst, 0);
+		}
+		int i;
+		for (int r = 0; r < rows; ++r) {
+			i = row + r;
+			chunks[i / rowsPerChunk].get((i % rowsPerChunk) * dimension + column, dst, r * tile, columns);
+		}
+	}
+
+	/**
+	 * Записывает часть плитки, попадающую в матрицу
+	 */
+	void writeTile(int row, int column, int tile, double[] src) {
+		int rows = Math.min(tile, dimension - row);
+		int columns = Math.min(tile, dimension - column);
+		int i;
+		for (int r = 0; r < rows; ++r) {
+			i = row + r;
+			chunks[i / rowsPerChunk].put((i % rowsPerChunk) * dimension + column, src, r * tile, columns);
+		}
+	}
+
+	/**
+	 * result = this * rightOper плитками {@link #getTile()} на общем пуле потоков
+	 * лучшим ядром {@link KernelTuner#getBestKernel()}
+	 *
+	 * @return время умножения в мс
+	 */
+	public long multiply(OffHeapMatrix rightOper, OffHeapMatrix result) {
+		return multiply(rightOper, result, KernelTuner.getBestKernel(), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * result = this * rightOper плитками {@link #getTile()}, каждая плитка результата считается отдельной задачей
+	 *
+	 * @return время умножения в мс
+	 */
+	public long multiply(OffHeapMatrix rightOper, OffHeapMatrix result, MatrixKernel kernel, ForkJoinPool pool) {
+		if (dimension != rightOper.dimension || dimension != result.dimension) {
+			throw new IllegalArgumentException("Dimensions are different");
+		}
+		long startTime = System.currentTimeMillis();
+		List<TileProduct> tasks = Lists.newArrayList();
+		for (int row = 0; row < dimension; row += tile) {
+			for (int column = 0; column < dimension; column += tile) {
+				tasks.add(new TileProduct(rightOper, result, kernel, row, column));
+			}
+		}
+		pool.invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		return System.currentTimeMillis() - startTime;
+	}
+
+	/**
+	 * Плитка результата с углом (row, column): сумма произведений плиток
+	 * строки плиток левой матрицы на столбец плиток правой
+	 */
+	@SuppressWarnings("serial")
+	private class TileProduct extends RecursiveAction {
+		private OffHeapMatrix rightOper;
+		private OffHeapMatrix result;
+		private MatrixKernel kernel;
+		private int row;
+		private int column;
+
+		TileProduct(OffHeapMatrix rightOper, OffHeapMatrix result, MatrixKernel kernel, int row, int column) {
+			this.rightOper = rightOper;
+			this.result = result;
+			this.kernel = kernel;
+			this.row = row;
+			this.column = column;
+		}
+
+		@Override
+		protected void compute() {
+			double[] left = new double[tile * tile];
+			double[] right = new double[tile * tile];
+			double[] product = new double[tile * tile];
+			double[] sum = new double[tile * tile];
+			for (int k = 0; k < dimension; k += tile) {
+				readTile(row, k, tile, left);
+				rightOper.readTile(k, column, tile, right);
+				kernel.multiply(left, right, product, tile, 0, tile);
+				for (int i = 0; i < sum.length; ++i) {
+					sum[i] += product[i];
+				}
+			}
+			result.writeTile(row, column, tile, sum);
+		}
+	}
+
+	/**
+	 * Сбрасывает изменения отображенной матрицы в файл
+	 */
+	public void force() {
+		if (mapped != null) {
+			for (MappedByteBuffer chunk : mapped) {
+				chunk.force();
+			}
+		}
+	}
+
+	/**
+	 * Закрывает файл отображенной матрицы, сами отображения освобождаются сборщиком мусора
+	 */
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+}
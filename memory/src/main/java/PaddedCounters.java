@@ -0,0 +1,61 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Массив счетчиков, каждый в своей строке кеша: счетчики разных потоков (или ядер)
+ * не мешают друг другу, как в SeparationTest.FastThread. Между соседними счетчиками
+ * {@link #STRIDE} long - две строки по {@link MachineProfile} (128 байт): процессор
+ * подгружает строки кеша парами, поэтому одной строки в 64 байта мало. Перед первым счетчиком - тоже отступ,
+ * чтобы он не делил строку с заголовком массива.
+ * <p>
+ * У счетчика должен быть один пишущий поток: {@link #add(int, long)} - не атомарное
+ * чтение-изменение-запись. Для счетчика, в который пишут все потоки, - {@link StripedCounter}.
+ * </p>
+ */
+public class PaddedCounters {
+	static final int STRIDE = MachineProfile.getInstance().getLineSize() * 2 / 8;
+	private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private final int size;
+	private final long[] cells;
+
+	public PaddedCounters(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.size = size;
+		cells = new long[(size + 1) * STRIDE];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void increment(int cell) {
+		add(cell, 1);
+	}
+
+	/**
+	 * Прибавляет x к счетчику cell, вызывается только его пишущим потоком.
+	 * Запись release: читающие потоки видят значения без разрывов и по порядку.
+	 */
+	public void add(int cell, long x) {
+		int index = (cell + 1) * STRIDE;
+		CELLS.setRelease(cells, index, (long) CELLS.getOpaque(cells, index) + x);
+	}
+
+	public long get(int cell) {
+		return (long) CELLS.getAcquire(cells, (cell + 1) * STRIDE);
+	}
+
+	/**
+	 * Сумма всех счетчиков; если в них пишут, то не мгновенный снимок
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int cell = 0; cell < size; ++cell) {
+			sum += get(cell);
+		}
+		return sum;
+	}
+}
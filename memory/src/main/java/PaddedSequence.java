@@ -0,0 +1,81 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Поля до значения: суперкласс раскладывается в памяти раньше подкласса
+ */
+abstract class SequenceLeftPadding {
+	protected long p1, p2, p3, p4, p5, p6, p7, p8, p9, p10, p11, p12, p13, p14, p15;
+}
+
+abstract class SequenceValue extends SequenceLeftPadding {
+	protected volatile long value;
+}
+
+/**
+ * Индекс кольцевого буфера (позиция писателя или читателя) в своей строке кеша:
+ * до и после значения по 120 байт полей-заглушек, чтобы индексы писателя и читателя,
+ * лежащие в соседних объектах, не разделяли строку. Ячейка буфера - get() & (capacity - 1).
+ * <p>
+ * Если индекс двигает один поток, достаточно {@link #setRelease(long)} вместо атомарных операций.
+ * </p>
+ */
+public class PaddedSequence extends SequenceValue {
+	private static final VarHandle VALUE;
+
+	static {
+		try {
+			VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	protected long p16, p17, p18, p19, p20, p21, p22, p23, p24, p25, p26, p27, p28, p29, p30;
+
+	public PaddedSequence() {
+		this(0);
+	}
+
+	public PaddedSequence(long initialValue) {
+		value = initialValue;
+	}
+
+	public long get() {
+		return value;
+	}
+
+	public void set(long newValue) {
+		value = newValue;
+	}
+
+	/**
+	 * Запись без барьера store-load: дешевле set, когда индекс двигает один поток
+	 */
+	public void setRelease(long newValue) {
+		VALUE.setRelease(this, newValue);
+	}
+
+	public boolean compareAndSet(long expectedValue, long newValue) {
+		return VALUE.compareAndSet(this, expectedValue, newValue);
+	}
+
+	public long incrementAndGet() {
+		return addAndGet(1);
+	}
+
+	public long addAndGet(long delta) {
+		return (long) VALUE.getAndAdd(this, delta) + delta;
+	}
+
+	/**
+	 * Ячейка кольцевого буфера емкости capacity (степень 2)
+	 */
+	public int getIndex(int capacity) {
+		return (int) (value & (capacity - 1));
+	}
+
+	public String toString() {
+		return Long.toString(value);
+	}
+}
@@ -0,0 +1,53 @@
+/**
+ * Квадратная матрица из примитивов, хранится построчно в одном массиве.
+ * Умножение не создает объектов, строки результата считает {@link MatrixKernel},
+ * по умолчанию - плиточное (векторное, если доступно) ядро с подобранными под машину плитками,
+ * параллельно в {@link MatrixMultiplier}.
+ * 
+ * @param <M> - конкретный тип матрицы, умножаются только матрицы одного типа
+ */
+public abstract class PrimitiveMatrix<M extends PrimitiveMatrix<M>> {
+	protected final int dimension;
+
+	public PrimitiveMatrix(int dimension) {
+		this.dimension = dimension;
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * result = this * rightOper через {@link MatrixMultiplier#getDefault()}
+	 * 
+	 * @return время умножения в мс
+	 */
+	public long multiply(M rightOper, M result) {
+		return multiply(rightOper, result, MatrixMultiplier.getDefault());
+	}
+
+	/**
+	 * result = this * rightOper заданным ядром на общем пуле потоков
+	 * 
+	 * @return время умножения в мс
+	 */
+	public long multiply(M rightOper, M result, MatrixKernel kernel) {
+		return multiply(rightOper, result, new MatrixMultiplier(kernel));
+	}
+
+	/**
+	 * result = this * rightOper
+	 * 
+	 * @return время умножения в мс
+	 */
+	public long multiply(M rightOper, M result, MatrixMultiplier multiplier) {
+		if (dimension != rightOper.dimension || dimension != result.dimension) {
+			throw new IllegalArgumentException("Dimensions are different");
+		}
+		long startTime = System.currentTimeMillis();
+		multiply(multiplier, rightOper, result);
+		return System.currentTimeMillis() - startTime;
+	}
+
+	protected abstract void multiply(MatrixMultiplier multiplier, M rightOper, M result);
+}
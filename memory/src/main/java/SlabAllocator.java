@@ -0,0 +1,222 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicStampedReference;
+
+/**
+ * Аллокатор блоков нескольких фиксированных размеров (классов) с явным освобождением.
+ * Блоки создаются пачками (слэбами) по {@link #MAGAZINE_SIZE} и потом только переиспользуются.
+ * <p>
+ * У каждого потока на каждый класс два магазина - стека свободных блоков, выделение и освобождение
+ * работают с ними без синхронизации. Когда оба магазина потока пусты (или полны), поток меняет
+ * магазин на полный (пустой) через общий склад - стек магазинов без блокировок.
+ * Новый слэб создается, только если на складе нет полных магазинов.
+ * </p>
+ * <p>
+ * Освобождать можно в любом потоке, но только выделенный этим аллокатором и только один раз
+ * (это не проверяется). Блоки в магазинах завершившегося потока пропадают.
+ * </p>
+ *
+ * @param <B> - тип блока
+ */
+public abstract class SlabAllocator<B> {
+	public static final int[] DEFAULT_SIZES = { 256, 512, 768, 1024 };
+	/**
+	 * блоков в магазине и в слэбе
+	 */
+	static final int MAGAZINE_SIZE = 64;
+
+	private final int[] sizes;
+	private final Depot[] fullMagazines;
+	private final Depot[] emptyMagazines;
+	private final AtomicInteger slabs = new AtomicInteger();
+	private final AtomicLong reservedBytes = new AtomicLong();
+	/**
+	 * [класс][0] - текущий магазин потока, [класс][1] - предыдущий
+	 */
+	private final ThreadLocal<Magazine[][]> magazines = new ThreadLocal<Magazine[][]>() {
+		@Override
+		protected Magazine[][] initialValue() {
+			Magazine[][] local = new Magazine[sizes.length][2];
+			for (int i = 0; i < sizes.length; ++i) {
+				local[i][0] = new Magazine();
+				local[i][1] = new Magazine();
+			}
+			return local;
+		}
+	};
+
+	/**
+	 * Магазин: стек блоков одного класса
+	 */
+	static class Magazine {
+		final Object[] blocks = new Object[MAGAZINE_SIZE];
+		int count;
+		/**
+		 * следующий магазин на складе
+		 */
+		Magazine next;
+
+		boolean isEmpty() {
+			return count == 0;
+		}
+
+		boolean isFull() {
+			return count == MAGAZINE_SIZE;
+		}
+	}
+
+	/**
+	 * Склад: стек магазинов Трайбера. Магазины переиспользуются, поэтому вершина - со штампом,
+	 * иначе снятие магазина, вернувшегося на вершину, прочло бы устаревший next (ABA)
+	 */
+	static class Depot {
+		private final AtomicStampedReference<Magazine> top = new AtomicStampedReference<Magazine>(null, 0);
+
+		void push(Magazine magazine) {
+			int[] stamp = new int[1];
+			Magazine current;
+			do {
+				current = top.get(stamp);
+				magazine.next = current;
+			} while (!top.compareAndSet(current, magazine, stamp[0], stamp[0] + 1));
+		}
+
+		Magazine pop() {
+			int[] stamp = new int[1];
+			Magazine current;
+			do {
+				current = top.get(stamp);
+				if (current == null) {
+					return null;
+				}
+			} while (!top.compareAndSet(current, current.next, stamp[0], stamp[0] + 1));
+			current.next = null;
+			return current;
+		}
+	}
+
+	/**
+	 * @param sizes - размеры блоков по возрастанию
+	 */
+	protected SlabAllocator(int[] sizes) {
+		if (sizes.length == 0) {
+			throw new IllegalArgumentException();
+		}
+		for (int i = 0; i < sizes.length; ++i) {
+			if (sizes[i] < 1 || i > 0 && sizes[i] <= sizes[i - 1]) {
+				throw new IllegalArgumentException("Sizes must be positive and ascending");
+			}
+		}
+		this.sizes = sizes.clone();
+		fullMagazines = new Depot[sizes.length];
+		emptyMagazines = new Depot[sizes.length];
+		for (int i = 0; i < sizes.length; ++i) {
+			fullMagazines[i] = new Depot();
+			emptyMagazines[i] = new Depot();
+		}
+	}
+
+	/**
+	 * Новые блоки размера size
+	 */
+	protected abstract void newSlab(int size, Object[] blocks);
+
+	/**
+	 * Размер блока, выданного аллокатором
+	 */
+	protected abstract int getSize(B block);
+
+	public int[] getSizes() {
+		return sizes.clone();
+	}
+
+	/**
+	 * Сколько слэбов создано
+	 */
+	public int getSlabs() {
+		return slabs.get();
+	}
+
+	/**
+	 * Сколько байт во всех блоках, выданных и свободных
+	 */
+	public long getReservedBytes() {
+		return reservedBytes.get();
+	}
+
+	/**
+	 * Класс - наименьший размер не меньше size
+	 */
+	private int getSizeClass(int size) {
+		int sizeClass = Arrays.binarySearch(sizes, size);
+		if (sizeClass < 0) {
+			sizeClass = -sizeClass - 1;
+		}
+		if (sizeClass == sizes.length) {
+			throw new IllegalArgumentException("Block is bigger than " + sizes[sizes.length - 1]);
+		}
+		return sizeClass;
+	}
+
+	/**
+	 * Блок наименьшего класса, вмещающего size байт. Содержимое не обнуляется.
+	 */
+	@SuppressWarnings("unchecked")
+	public B allocate(int size) {
+		int sizeClass = getSizeClass(size);
+		Magazine[] local = magazines.get()[sizeClass];
+		if (local[0].isEmpty()) {
+			if (!local[1].isEmpty()) {
+				swap(local);
+			} else {
+				Magazine full = fullMagazines[sizeClass].pop();
+				if (full != null) {
+					emptyMagazines[sizeClass].push(local[1]);
+					local[1] = local[0];
+					local[0] = full;
+				} else {
+					newSlab(sizes[sizeClass], local[0].blocks);
+					local[0].count = MAGAZINE_SIZE;
+					slabs.incrementAndGet();
+					reservedBytes.addAndGet((long) sizes[sizeClass] * MAGAZINE_SIZE);
+				}
+			}
+		}
+		Magazine magazine = local[0];
+		B block = (B) magazine.blocks[--magazine.count];
+		magazine.blocks[magazine.count] = null;
+		return block;
+	}
+
+	/**
+	 * Возвращает блок аллокатору
+	 * @throws IllegalArgumentException - если размер блока не равен ни одному классу:
+	 * такой блок не выделялся этим аллокатором и выдать его потом как блок класса нельзя
+	 */
+	public void free(B block) {
+		int size = getSize(block);
+		int sizeClass = getSizeClass(size);
+		if (sizes[sizeClass] != size) {
+			throw new IllegalArgumentException("Block of " + size + " bytes was not allocated here");
+		}
+		Magazine[] local = magazines.get()[sizeClass];
+		if (local[0].isFull()) {
+			if (!local[1].isFull()) {
+				swap(local);
+			} else {
+				fullMagazines[sizeClass].push(local[1]);
+				local[1] = local[0];
+				Magazine empty = emptyMagazines[sizeClass].pop();
+				local[0] = empty != null ? empty : new Magazine();
+			}
+		}
+		local[0].blocks[local[0].count++] = block;
+	}
+
+	private static void swap(Magazine[] local) {
+		Magazine magazine = local[0];
+		local[0] = local[1];
+		local[1] = magazine;
+	}
+}
@@ -0,0 +1,112 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Счетчик, в который пишут все потоки, по образцу LongAdder: значение разбито на полосы
+ * в разных строках кеша ({@link PaddedCounters#STRIDE} long между полосами), поток пишет
+ * в свою полосу, а сумма собирается только при чтении. Если CAS в полосе не удался
+ * (в нее пишет другой поток), поток переходит на другую полосу.
+ * <p>
+ * В отличие от LongAdder полосы выделяются сразу, по умолчанию - по две на ядро,
+ * и полоса потока хранится в ThreadLocal (LongAdder хранит ее в закрытом поле Thread).
+ * </p>
+ */
+public class StripedCounter {
+	private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	/**
+	 * номер полосы потока, меняется при конфликте
+	 */
+	private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[] { mix(Thread.currentThread().getId()) };
+		}
+	};
+
+	private final long[] cells;
+	private final int mask;
+
+	/**
+	 * По две полосы на ядро
+	 */
+	public StripedCounter() {
+		this(Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	/**
+	 * @param stripes - число полос, округляется вверх до степени 2
+	 */
+	public StripedCounter(int stripes) {
+		if (stripes < 1) {
+			throw new IllegalArgumentException();
+		}
+		int size = Integer.highestOneBit(stripes);
+		if (size < stripes) {
+			size <<= 1;
+		}
+		mask = size - 1;
+		cells = new long[(size + 1) * PaddedCounters.STRIDE];
+	}
+
+	private static int mix(long x) {
+		x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+		x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return (int) (x ^ (x >>> 33));
+	}
+
+	/**
+	 * Следующее значение xorshift для перехода на другую полосу
+	 */
+	private static int advance(int probe) {
+		probe ^= probe << 13;
+		probe ^= probe >>> 17;
+		probe ^= probe << 5;
+		return probe;
+	}
+
+	public int getStripes() {
+		return mask + 1;
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	public void add(long x) {
+		int[] probe = PROBE.get();
+		int index = ((probe[0] & mask) + 1) * PaddedCounters.STRIDE;
+		long value = (long) CELLS.getVolatile(cells, index);
+		if (!CELLS.compareAndSet(cells, index, value, value + x)) {
+			probe[0] = advance(probe[0]);
+			CELLS.getAndAdd(cells, ((probe[0] & mask) + 1) * PaddedCounters.STRIDE, x);
+		}
+	}
+
+	/**
+	 * Сумма полос; если в счетчик пишут, то не мгновенный снимок
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int stripe = 1; stripe <= mask + 1; ++stripe) {
+			sum += (long) CELLS.getVolatile(cells, stripe * PaddedCounters.STRIDE);
+		}
+		return sum;
+	}
+
+	/**
+	 * Сумма с обнулением полос: прибавления, идущие одновременно, не теряются,
+	 * а попадают в эту или в следующую сумму
+	 */
+	public long sumThenReset() {
+		long sum = 0;
+		for (int stripe = 1; stripe <= mask + 1; ++stripe) {
+			sum += (long) CELLS.getAndSet(cells, stripe * PaddedCounters.STRIDE, 0L);
+		}
+		return sum;
+	}
+
+	public String toString() {
+		return Long.toString(sum());
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ * Умножение по плиткам в порядке i-k-j.
+ * Внешние плитки l2 x l2 правой матрицы должны помещаться в L2, внутренние
+ * l1 x l1 - в L1; во внутреннем цикле строка правой матрицы и строка результата
+ * читаются подряд. При упаковке плитка l2 x l2 правой матрицы сначала копируется
+ * в непрерывный буфер, чтобы ее строки не конфликтовали в кеше и TLB.
+ * <p>
+ * Слагаемые каждой ячейки складываются в том же порядке, что и в {@link NaiveKernel},
+ * так что результат для double совпадает побитно. Внутренний цикл вынесен в multiplyAdd,
+ * чтобы его можно было заменить векторным.
+ * </p>
+ */
+public class TiledKernel implements MatrixKernel {
+	private final int l1Tile;
+	private final int l2Tile;
+	private final boolean pack;
+
+	/**
+	 * @param l1Tile - сторона плитки для L1
+	 * @param l2Tile - сторона плитки для L2, кратна l1Tile
+	 * @param pack - копировать ли плитку правой матрицы в непрерывный буфер
+	 */
+	public TiledKernel(int l1Tile, int l2Tile, boolean pack) {
+		if (l1Tile < 1 || l2Tile < l1Tile || l2Tile % l1Tile != 0) {
+			throw new IllegalArgumentException("Wrong tile sizes " + l1Tile + ", " + l2Tile);
+		}
+		this.l1Tile = l1Tile;
+		this.l2Tile = l2Tile;
+		this.pack = pack;
+	}
+
+	public int getL1Tile() {
+		return l1Tile;
+	}
+
+	public int getL2Tile() {
+		return l2Tile;
+	}
+
+	public boolean isPacked() {
+		return pack;
+	}
+
+	public String toString() {
+		return String.format("tiles %d/%d%s", l1Tile, l2Tile, pack ? ", packed" : "");
+	}
+
+	/**
+	 * result[resultFrom..] += a * row[rowFrom..] для length элементов
+	 */
+	protected void multiplyAdd(int a, int[] row, int rowFrom, int[] result, int resultFrom, int length) {
+		for (int j = 0; j < length; ++j) {
+			result[resultFrom + j] += a * row[rowFrom + j];
+		}
+	}
+
+	@Override
+	public void multiply(int[] left, int[] right, int[] result, int n, int from, int to) {
+		for (int i = from * n; i < to * n; ++i) {
+			result[i] = 0;
+		}
+		// плитка правой матрицы: при упаковке - буфер со строками длины l2Tile
+		int[] panel = pack ? new int[l2Tile * l2Tile] : right;
+		int kEnd, jEnd, iEnd, k1End, j1End;
+		int panelRow, panelOffset, resultRow, row;
+		int a;
+		for (int kk = 0; kk < n; kk += l2Tile) {
+			kEnd = Math.min(n, kk + l2Tile);
+			for (int jj = 0; jj < n; jj += l2Tile) {
+				jEnd = Math.min(n, jj + l2Tile);
+				if (pack) {
+					for (int k = kk; k < kEnd; ++k) {
+						System.arraycopy(right, k * n + jj, panel, (k - kk) * l2Tile, jEnd - jj);
+					}
+				}
+				// строка k плитки начинается в panel с (k * panelRow - panelOffset)
+				panelRow = pack ? l2Tile : n;
+				panelOffset = pack ? kk * l2Tile + jj : 0;
+				for (int i0 = from; i0 < to; i0 += l1Tile) {
+					iEnd = Math.min(to, i0 + l1Tile);
+					for (int k0 = kk; k0 < kEnd; k0 += l1Tile) {
+						k1End = Math.min(kEnd, k0 + l1Tile);
+						for (int j0 = jj; j0 < jEnd; j0 += l1Tile) {
+							j1End = Math.min(jEnd, j0 + l1Tile);
+							for (int i = i0; i < iEnd; ++i) {
+								resultRow = i * n;
+								for (int k = k0; k < k1End; ++k) {
+									a = left[resultRow + k];
+									row = k * panelRow - panelOffset;
+									multiplyAdd(a, panel, row + j0, result, resultRow + j0, j1End - j0);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * result[resultFrom..] += a * row[rowFrom..] для length элементов
+	 */
+	protected void multiplyAdd(long a, long[] row, int rowFrom, long[] result, int resultFrom, int length) {
+		for (int j = 0; j < length; ++j) {
+			result[resultFrom + j] += a * row[rowFrom + j];
+		}
+	}
+
+	@Override
+	public void multiply(long[] left, long[] right, long[] result, int n, int from, int to) {
+		for (int i = from * n; i < to * n; ++i) {
+			result[i] = 0;
+		}
+		// плитка правой матрицы: при упаковке - буфер со строками длины l2Tile
+		long[] panel = pack ? new long[l2Tile * l2Tile] : right;
+		int kEnd, jEnd, iEnd, k1End, j1End;
+		int panelRow, panelOffset, resultRow, row;
+		long a;
+		for (int kk = 0; kk < n; kk += l2Tile) {
+			kEnd = Math.min(n, kk + l2Tile);
+			for (int jj = 0; jj < n; jj += l2Tile) {
+				jEnd = Math.min(n, jj + l2Tile);
+				if (pack) {
+					for (int k = kk; k < kEnd; ++k) {
+						System.arraycopy(right, k * n + jj, panel, (k - kk) * l2Tile, jEnd - jj);
+					}
+				}
+				// строка k плитки начинается в panel с (k * panelRow - panelOffset)
+				panelRow = pack ? l2Tile : n;
+				panelOffset = pack ? kk * l2Tile + jj : 0;
+				for (int i0 = from; i0 < to; i0 += l1Tile) {
+					iEnd = Math.min(to, i0 + l1Tile);
+					for (int k0 = kk; k0 < kEnd; k0 += l1Tile) {
+						k1End = Math.min(kEnd, k0 + l1Tile);
+						for (int j0 = jj; j0 < jEnd; j0 += l1Tile) {
+							j1End = Math.min(jEnd, j0 + l1Tile);
+							for (int i = i0; i < iEnd; ++i) {
+								resultRow = i * n;
+								for (int k = k0; k < k1End; ++k) {
+									a = left[resultRow + k];
+									row = k * panelRow - panelOffset;
+									multiplyAdd(a, panel, row + j0, result, resultRow + j0, j1End - j0);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * result[resultFrom..] += a * row[rowFrom..] для length элементов
+	 */
+	protected void multiplyAdd(double a, double[] row, int rowFrom, double[] result, int resultFrom, int length) {
+		for (int j = 0; j < length; ++j) {
+			result[resultFrom + j] += a * row[rowFrom + j];
+		}
+	}
+
+	@Override
+	public void multiply(double[] left, double[] right, double[] result, int n, int from, int to) {
+		for (int i = from * n; i < to * n; ++i) {
+			result[i] = 0;
+		}
+		// плитка правой матрицы: при упаковке - буфер со строками длины l2Tile
+		double[] panel = pack ? new double[l2Tile * l2Tile] : right;
+		int kEnd, jEnd, iEnd, k1End, j1End;
+		int panelRow, panelOffset, resultRow, row;
+		double a;
+		for (int kk = 0; kk < n; kk += l2Tile) {
+			kEnd = Math.min(n, kk + l2Tile);
+			for (int jj = 0; jj < n; jj += l2Tile) {
+				jEnd = Math.min(n, jj + l2Tile);
+				if (pack) {
+					for (int k = kk; k < kEnd; ++k) {
+						System.arraycopy(right, k * n + jj, panel, (k - kk) * l2Tile, jEnd - jj);
+					}
+				}
+				// строка k плитки начинается в panel с (k * panelRow - panelOffset)
+				panelRow = pack ? l2Tile : n;
+				panelOffset = pack ? kk * l2Tile + jj : 0;
+				for (int i0 = from; i0 < to; i0 += l1Tile) {
+					iEnd = Math.min(to, i0 + l1Tile);
+					for (int k0 = kk; k0 < kEnd; k0 += l1Tile) {
+						k1End = Math.min(kEnd, k0 + l1Tile);
+						for (int j0 = jj; j0 < jEnd; j0 += l1Tile) {
+							j1End = Math.min(jEnd, j0 + l1Tile);
+							for (int i = i0; i < iEnd; ++i) {
+								resultRow = i * n;
+								for (int k = k0; k < k1End; ++k) {
+									a = left[resultRow + k];
+									row = k * panelRow - panelOffset;
+									multiplyAdd(a, panel, row + j0, result, resultRow + j0, j1End - j0);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * result += left * right для непрерывных построчных блоков size x size,
+	 * начинающихся с leftFrom, rightFrom и resultFrom (для блочных матриц,
+	 * где блок уже сам является плиткой)
+	 */
+	void multiplyBlock(double[] left, int leftFrom, double[] right, int rightFrom,
+			double[] result, int resultFrom, int size) {
+		int resultRow;
+		for (int i = 0; i < size; ++i) {
+			resultRow = resultFrom + i * size;
+			for (int k = 0; k < size; ++k) {
+				multiplyAdd(left[leftFrom + i * size + k], right, rightFrom + k * size, result, resultRow, size);
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Плиточное ядро, у которого внутренний цикл считается векторами
+ * jdk.incubator.vector максимальной для процессора длины (AVX2 - 256 бит, AVX-512 - 512 бит),
+ * хвост строки короче вектора - скалярно.
+ * <p>
+ * Для int и long результат совпадает с {@link TiledKernel} побитно. Для double используется
+ * fma, т.е. без промежуточного округления произведения, поэтому результат отличается
+ * в младших разрядах.
+ * </p>
+ * Требует --add-modules jdk.incubator.vector, см. {@link KernelTuner#isVectorAvailable()}.
+ */
+public class VectorKernel extends TiledKernel {
+	private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Long> LONG_SPECIES = LongVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Double> DOUBLE_SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	public VectorKernel(int l1Tile, int l2Tile, boolean pack) {
+		super(l1Tile, l2Tile, pack);
+	}
+
+	/**
+	 * Длина вектора в битах
+	 */
+	public static int getVectorBits() {
+		return DOUBLE_SPECIES.vectorBitSize();
+	}
+
+	@Override
+	protected void multiplyAdd(int a, int[] row, int rowFrom, int[] result, int resultFrom, int length) {
+		IntVector va = IntVector.broadcast(INT_SPECIES, a);
+		int bound = INT_SPECIES.loopBound(length);
+		int j = 0;
+		for (; j < bound; j += INT_SPECIES.length()) {
+			IntVector.fromArray(INT_SPECIES, row, rowFrom + j).mul(va)
+					.add(IntVector.fromArray(INT_SPECIES, result, resultFrom + j))
+					.intoArray(result, resultFrom + j);
+		}
+		for (; j < length; ++j) {
+			result[resultFrom + j] += a * row[rowFrom + j];
+		}
+	}
+
+	@Override
+	protected void multiplyAdd(long a, long[] row, int rowFrom, long[] result, int resultFrom, int length) {
+		LongVector va = LongVector.broadcast(LONG_SPECIES, a);
+		int bound = LONG_SPECIES.loopBound(length);
+		int j = 0;
+		for (; j < bound; j += LONG_SPECIES.length()) {
+			LongVector.fromArray(LONG_SPECIES, row, rowFrom + j).mul(va)
+					.add(LongVector.fromArray(LONG_SPECIES, result, resultFrom + j))
+					.intoArray(result, resultFrom + j);
+		}
+		for (; j < length; ++j) {
+			result[resultFrom + j] += a * row[rowFrom + j];
+		}
+	}
+
+	@Override
+	protected void multiplyAdd(double a, double[] row, int rowFrom, double[] result, int resultFrom, int length) {
+		DoubleVector va = DoubleVector.broadcast(DOUBLE_SPECIES, a);
+		int bound = DOUBLE_SPECIES.loopBound(length);
+		int j = 0;
+		for (; j < bound; j += DOUBLE_SPECIES.length()) {
+			DoubleVector.fromArray(DOUBLE_SPECIES, row, rowFrom + j)
+					.fma(va, DoubleVector.fromArray(DOUBLE_SPECIES, result, resultFrom + j))
+					.intoArray(result, resultFrom + j);
+		}
+		for (; j < length; ++j) {
+			result[resultFrom + j] = Math.fma(a, row[rowFrom + j], result[resultFrom + j]);
+		}
+	}
+
+	public String toString() {
+		return String.format("vector %d bit, %s", getVectorBits(), super.toString());
+	}
+}
@@ -0,0 +1,255 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class AllocatorTest {
+	private static final int ITERATIONS = 200000;
+	private static final int PROCESS_NUM = 30;
+	private static final int[] BLOCK_SIZES = { 256, 512, 768, 1024 };
+	/**
+	 * не больше стольких живых блоков у потока
+	 */
+	private static final int LIVE_BLOCKS = 2000;
+
+	/**
+	 * Выделение и освобождение блока для нагрузки ThreadTest
+	 */
+	private interface Blocks<B> {
+		B allocate(int size);
+
+		void free(B block);
+
+		/**
+		 * Помечает блок потоком-владельцем
+		 */
+		void mark(B block, byte owner);
+
+		byte getMark(B block);
+
+		void clear(B block);
+	}
+
+	private static class NewBlocks implements Blocks<byte[]> {
+		public byte[] allocate(int size) {
+			return new byte[size];
+		}
+
+		public void free(byte[] block) {
+		}
+
+		public void mark(byte[] block, byte owner) {
+			block[0] = owner;
+		}
+
+		public byte getMark(byte[] block) {
+			return block[0];
+		}
+
+		public void clear(byte[] block) {
+			for (int j = 1; j < block.length; ++j) {
+				block[j] = 0;
+			}
+		}
+	}
+
+	private static class HeapBlocks extends NewBlocks {
+		private HeapSlabAllocator allocator = new HeapSlabAllocator(BLOCK_SIZES);
+
+		public byte[] allocate(int size) {
+			return allocator.allocate(size);
+		}
+
+		public void free(byte[] block) {
+			allocator.free(block);
+		}
+	}
+
+	private static class DirectBlocks implements Blocks<ByteBuffer> {
+		private static final byte[] ZEROS = new byte[BLOCK_SIZES[BLOCK_SIZES.length - 1]];
+		private DirectSlabAllocator allocator = new DirectSlabAllocator(BLOCK_SIZES);
+
+		public ByteBuffer allocate(int size) {
+			return allocator.allocate(size);
+		}
+
+		public void free(ByteBuffer block) {
+			allocator.free(block);
+		}
+
+		public void mark(ByteBuffer block, byte owner) {
+			block.put(0, owner);
+		}
+
+		public byte getMark(ByteBuffer block) {
+			return block.get(0);
+		}
+
+		public void clear(ByteBuffer block) {
+			block.put(1, ZEROS, 0, block.capacity() - 1);
+		}
+	}
+
+	/**
+	 * Нагрузка ThreadTest.action: выделить, освободить или обнулить случайный блок.
+	 * Оставшиеся блоки поток отдает в leftovers, их освобождает другой поток.
+	 */
+	private static <B> void action(Blocks<B> blocks, byte owner, Queue<B> leftovers, AtomicInteger errors) {
+		List<B> allocatedMemory = Lists.newArrayList();
+		Random random = new Random(owner);
+		int size, index;
+		B block;
+		for (int i = 0; i < ITERATIONS; ++i) {
+			size = allocatedMemory.size();
+			index = size == 0 ? 0 : random.nextInt(size);
+			switch (random.nextInt(3)) {
+			case 0:
+				if (size < LIVE_BLOCKS) {
+					block = blocks.allocate(BLOCK_SIZES[random.nextInt(BLOCK_SIZES.length)]);
+					blocks.mark(block, owner);
+					allocatedMemory.add(block);
+				}
+				break;
+			case 1:
+				if (size != 0) {
+					block = allocatedMemory.get(index);
+					allocatedMemory.set(index, allocatedMemory.get(size - 1));
+					allocatedMemory.remove(size - 1);
+					blocks.free(block);
+				}
+				break;
+			case 2:
+				if (size != 0) {
+					block = allocatedMemory.get(index);
+					// блок не выдан другому потоку
+					if (blocks.getMark(block) != owner) {
+						errors.incrementAndGet();
+					}
+					blocks.clear(block);
+				}
+			}
+		}
+		leftovers.addAll(allocatedMemory);
+	}
+
+	private static long getGcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += gc.getCollectionTime();
+		}
+		return time;
+	}
+
+	private static long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += gc.getCollectionCount();
+		}
+		return count;
+	}
+
+	/**
+	 * @return время нагрузки и время сборок мусора за нее, мс
+	 */
+	private static <B> long[] profile(String name, final Blocks<B> blocks) throws InterruptedException {
+		final Queue<B> leftovers = new ConcurrentLinkedQueue<B>();
+		final AtomicInteger errors = new AtomicInteger();
+		List<Callable<Void>> threads = Lists.newArrayList();
+		for (int i = 0; i < PROCESS_NUM; ++i) {
+			final byte owner = (byte) (i + 1);
+			threads.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					action(blocks, owner, leftovers, errors);
+					return null;
+				}
+			});
+		}
+		System.gc();
+		long gcTime = getGcTime();
+		long gcCount = getGcCount();
+		long startTime = System.currentTimeMillis();
+		ExecutorService threadPool = Executors.newFixedThreadPool(PROCESS_NUM);
+		try {
+			threadPool.invokeAll(threads);
+		} finally {
+			threadPool.shutdown();
+		}
+		for (B block : leftovers) {
+			blocks.free(block);
+		}
+		long time = System.currentTimeMillis() - startTime;
+		gcTime = getGcTime() - gcTime;
+		gcCount = getGcCount() - gcCount;
+		assertEquals(0, errors.get());
+		System.out.println(String.format("%s: %d ms (%d ops/ms), GC %d times, %d ms", name, time,
+				(long) ITERATIONS * PROCESS_NUM / Math.max(1, time), gcCount, gcTime));
+		return new long[] { time, gcTime };
+	}
+
+	@Test
+	public void slabs() {
+		HeapSlabAllocator heap = new HeapSlabAllocator();
+		byte[] block = heap.allocate(100);
+		assertEquals(256, block.length);
+		heap.free(block);
+		assertSame(block, heap.allocate(256));
+		assertEquals(768, heap.allocate(513).length);
+		assertEquals(2, heap.getSlabs());
+		assertEquals(SlabAllocator.MAGAZINE_SIZE * (256 + 768), heap.getReservedBytes());
+		try {
+			heap.allocate(1025);
+			throw new AssertionError();
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			// блок меньше класса выдал бы потом allocate(256) 100 байт
+			heap.free(new byte[100]);
+			throw new AssertionError();
+		} catch (IllegalArgumentException e) {
+		}
+		DirectSlabAllocator direct = new DirectSlabAllocator();
+		ByteBuffer buffer = direct.allocate(1000);
+		assertEquals(1024, buffer.capacity());
+		assertEquals(1024, buffer.remaining());
+		// освобожденные в другом магазине блоки возвращаются через склад
+		List<byte[]> blocks = Lists.newArrayList();
+		for (int i = 0; i < SlabAllocator.MAGAZINE_SIZE * 3; ++i) {
+			blocks.add(heap.allocate(1024));
+		}
+		for (byte[] b : blocks) {
+			heap.free(b);
+		}
+		int slabs = heap.getSlabs();
+		for (int i = 0; i < SlabAllocator.MAGAZINE_SIZE * 3; ++i) {
+			heap.allocate(1024);
+		}
+		assertEquals(slabs, heap.getSlabs());
+	}
+
+	@Test
+	public void profile() throws InterruptedException {
+		System.out.println("\n\n	AllocatorTest:");
+		// первые прогоны - прогрев JIT
+		profile("new byte[] (warm-up)", new NewBlocks());
+		profile("Heap slabs (warm-up)", new HeapBlocks());
+		long[] plain = profile("new byte[]", new NewBlocks());
+		long[] heap = profile("Heap slabs", new HeapBlocks());
+		profile("Direct slabs", new DirectBlocks());
+		System.out.println(String.format("Result: %d < %d", heap[1], plain[1]));
+	}
+}
@@ -0,0 +1,95 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CacheTest {
+	private static final long MAX_SIZE = 64 << 20;
+
+	@Test
+	public void levels() {
+		// 4 Кб - 1 Мб: 2 нс, 2 - 8 Мб: 40 нс (через подъем), дальше - память
+		MachineProfile profile = CacheProfiler.getProfile(
+				Arrays.asList(4L << 10, 8L << 10, 16L << 10, 32L << 10, 64L << 10, 128L << 10, 256L << 10,
+						512L << 10),
+				Arrays.asList(2.0, 2.1, 1.9, 2.0, 20.0, 40.0, 42.0, 150.0), 64);
+		assertEquals(2, profile.getCacheLevels());
+		assertEquals(32 << 10, profile.getCacheSize(1));
+		assertEquals(2.0, profile.getCacheLatency(1), 0);
+		assertEquals(256 << 10, profile.getCacheSize(2));
+		assertEquals(150.0, profile.getMemoryLatency(), 0);
+		assertEquals(32, profile.getTileSide(1, 8, 3));
+		assertEquals(128, profile.getTileSide(2, 8, 1));
+	}
+
+	@Test
+	public void noLevels() throws IOException {
+		// задержка растет плавно - скачков нет
+		MachineProfile profile = CacheProfiler.getProfile(Arrays.asList(4L << 10, 8L << 10, 16L << 10),
+				Arrays.asList(2.0, 2.5, 3.0), 64);
+		assertEquals(0, profile.getCacheLevels());
+		assertEquals(64, profile.getTileSide(1, 8, 1));
+		File file = File.createTempFile("machine", ".properties");
+		try {
+			try {
+				profile.save(file);
+				fail();
+			} catch (IllegalStateException e) {
+				// профиль без уровней не сохраняется
+			}
+			OutputStream out = new FileOutputStream(file);
+			out.write("line.size=64\ncache.levels=0\nmemory.latency=3.0\n".getBytes());
+			out.close();
+			try {
+				MachineProfile.load(file);
+				fail();
+			} catch (IOException e) {
+				// такой файл считается испорченным
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void profile() throws IOException {
+		try {
+			// 8 Гб - уже больше int[]
+			CacheProfiler.profile(CacheProfiler.MAX_SIZE * 2, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// отказ до всех замеров
+		}
+		System.out.println("\n\n	CacheTest:");
+		MachineProfile profile = CacheProfiler.profile(MAX_SIZE, System.out);
+		System.out.println(profile);
+		assertTrue(profile.isMeasured());
+		assertEquals(1, Integer.bitCount(profile.getLineSize()));
+		assertTrue(profile.getCacheLevels() > 0);
+		for (int level = 2; level <= profile.getCacheLevels(); ++level) {
+			assertTrue(profile.getCacheSize(level) > profile.getCacheSize(level - 1));
+			assertTrue(profile.getCacheLatency(level) > profile.getCacheLatency(level - 1));
+		}
+
+		File file = File.createTempFile("machine", ".properties");
+		try {
+			profile.save(file);
+			MachineProfile loaded = MachineProfile.load(file);
+			assertTrue(loaded.isMeasured());
+			assertEquals(profile.getLineSize(), loaded.getLineSize());
+			assertEquals(profile.getCacheLevels(), loaded.getCacheLevels());
+			assertEquals(profile.getCacheSize(1), loaded.getCacheSize(1));
+			assertEquals(profile.getMemoryLatency(), loaded.getMemoryLatency(), 0);
+		} finally {
+			file.delete();
+		}
+		System.out.println(String.format("Result: %.1f < %.1f", profile.getCacheLatency(1), profile.getMemoryLatency()));
+	}
+}
@@ -0,0 +1,87 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class CounterTest {
+	private static final int ITERATIONS = 1000000;
+	private static final int PROCESS_NUM = 15;
+
+	/**
+	 * Запускает PROCESS_NUM потоков с action(номер потока) и ждет их
+	 *
+	 * @return время в мс
+	 */
+	private static long profile(final Action action) throws InterruptedException {
+		Thread[] threads = new Thread[PROCESS_NUM];
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < PROCESS_NUM; ++i) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					action.run(index);
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < PROCESS_NUM; ++i) {
+			threads[i].join();
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	private interface Action {
+		void run(int thread);
+	}
+
+	@Test
+	public void counters() throws InterruptedException {
+		System.out.println("\n\n	CounterTest:");
+		final AtomicLong atomic = new AtomicLong();
+		final StripedCounter striped = new StripedCounter();
+		final PaddedCounters padded = new PaddedCounters(PROCESS_NUM);
+		final PaddedSequence sequence = new PaddedSequence();
+
+		long atomicTime = profile(new Action() {
+			public void run(int thread) {
+				for (int i = 0; i < ITERATIONS; ++i) {
+					atomic.incrementAndGet();
+				}
+			}
+		});
+		long stripedTime = profile(new Action() {
+			public void run(int thread) {
+				for (int i = 0; i < ITERATIONS; ++i) {
+					striped.increment();
+				}
+			}
+		});
+		long paddedTime = profile(new Action() {
+			public void run(int thread) {
+				for (int i = 0; i < ITERATIONS; ++i) {
+					padded.increment(thread);
+				}
+			}
+		});
+		profile(new Action() {
+			public void run(int thread) {
+				for (int i = 0; i < ITERATIONS; ++i) {
+					sequence.incrementAndGet();
+				}
+			}
+		});
+		assertEquals((long) PROCESS_NUM * ITERATIONS, atomic.get());
+		assertEquals((long) PROCESS_NUM * ITERATIONS, striped.sum());
+		assertEquals((long) PROCESS_NUM * ITERATIONS, padded.sum());
+		assertEquals(ITERATIONS, padded.get(0));
+		assertEquals((long) PROCESS_NUM * ITERATIONS, sequence.get());
+		assertEquals((long) PROCESS_NUM * ITERATIONS, striped.sumThenReset());
+		assertEquals(0, striped.sum());
+
+		System.out.println(String.format("AtomicLong: %d ms", atomicTime));
+		System.out.println(String.format("Striped counter (%d stripes): %d ms", striped.getStripes(), stripedTime));
+		System.out.println(String.format("Padded per-thread counters: %d ms", paddedTime));
+		System.out.println(String.format("Result: %d < %d", stripedTime, atomicTime));
+	}
+}
@@ -0,0 +1,63 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ExecutorTest {
+	private static final int TASKS = 600;
+	private static final int PROCESS_NUM = 30;
+
+	@Test
+	public void profile() throws InterruptedException {
+		System.out.println("\n\n	ExecutorTest:");
+		if (ExecutorProfiler.virtualThreads() == null) {
+			System.out.println("Virtual threads are not available (JDK 21+), skipped");
+		}
+		ExecutorProfiler.TaskType[] mix = ExecutorProfiler.TaskType.values();
+		// прогрев JIT
+		ExecutorProfiler.profile(ExecutorProfiler.fixedPool(), ExecutorProfiler.getMix(TASKS, mix), PROCESS_NUM);
+		ExecutorProfiler.Report fixed = null;
+		ExecutorProfiler.Report forkJoin = null;
+		List<ExecutorProfiler.ProfiledTask> tasks;
+		ExecutorProfiler.Report report;
+		for (ExecutionStrategy strategy : ExecutorProfiler.getStrategies()) {
+			tasks = ExecutorProfiler.getMix(TASKS, mix);
+			report = ExecutorProfiler.profile(strategy, tasks, PROCESS_NUM);
+			System.out.println(report);
+			for (ExecutorProfiler.ProfiledTask task : tasks) {
+				// все задачи выполнены
+				assertTrue(task.endTime != 0);
+			}
+			assertTrue(report.getLatency(0.5) <= report.getLatency(0.99));
+			assertTrue(report.getLatency(1) <= report.getTime());
+			if ("fixed pool".equals(strategy.getName())) {
+				fixed = report;
+			} else if ("fork/join".equals(strategy.getName())) {
+				forkJoin = report;
+			}
+		}
+		assertEquals(TASKS, fixed.tasks);
+		System.out.println(String.format("Result: %d < %d", forkJoin.getTime() / 1000000, fixed.getTime() / 1000000));
+	}
+
+	/**
+	 * Пустая пачка выполняется без задач, а профилировать ее нельзя
+	 */
+	@Test
+	public void empty() throws InterruptedException {
+		List<ExecutorProfiler.ProfiledTask> tasks = Collections.emptyList();
+		for (ExecutionStrategy strategy : ExecutorProfiler.getStrategies()) {
+			strategy.execute(tasks, 2);
+		}
+		try {
+			ExecutorProfiler.profile(ExecutorProfiler.forkJoin(), tasks, 2);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// у пустой пачки нет задержек
+		}
+	}
+}
@@ -1,7 +1,16 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
@@ -10,6 +19,29 @@ import com.google.common.collect.Lists;
 public class MatrixTest {
 	private static final int DIMENSION = 1024;
 	private static final int PROCESS_NUM = 4;
+	/**
+	 * размер для сравнения с примитивными матрицами: 1024 для Element-матриц слишком долго
+	 */
+	private static final int COMPARE_DIMENSION = 256;
+	/**
+	 * не кратно размерам плиток, чтобы проверить края
+	 */
+	private static final int TILED_CHECK_DIMENSION = 300;
+	private static final int TILED_DIMENSION = 512;
+	private static final int STRASSEN_CHECK_DIMENSION = 128;
+	private static final int PARALLEL_DIMENSION = 1024;
+	private static final int STRASSEN_THRESHOLD = 256;
+	private static final int OFF_HEAP_TILE = 64;
+	private static final int MAPPED_DIMENSION = 1024;
+	/**
+	 * не степень 2 и не кратно блоку
+	 */
+	private static final int BLOCKED_DIMENSION = 1000;
+	private static final int BLOCK_SIZE = 32;
+	/**
+	 * доля ненулевых элементов разреженных матриц
+	 */
+	private static final double SPARSE_DENSITY = 0.005;
 
 	public static abstract class AbstractMatrix<T extends Element> {
 		protected int dimension;
@@ -39,6 +71,8 @@ public class MatrixTest {
 				threadPool.invokeAll(threads);
 			} catch (InterruptedException e) {
 				throw new RuntimeException(e);
+			} finally {
+				threadPool.shutdown();
 			}
 
 			return System.currentTimeMillis() - startTime;
@@ -115,7 +149,7 @@ public class MatrixTest {
 		
 		/**
 		 * 
-		 * @param dimension - степень 2 и sqrt(dimension) - есть целое число
+		 * @param dimension - степень 4, т.е. степень 2 и sqrt(dimension) - есть целое число
 		 */
 		public BlockedMatrix(int dimension) {
 			super(dimension);
@@ -124,6 +158,10 @@ public class MatrixTest {
 				dimension >>= 1;
 				++blockSizeLog2;
 			}
+			if (dimension != 1 || (blockSizeLog2 & 1) != 0) {
+				// для остальных размеров - BlockedDoubleMatrix
+				throw new IllegalArgumentException("Dimension must be a power of 4");
+			}
 			blockSizeLog2 >>= 1;
 			int blockSize = (1 << blockSizeLog2); 
 			matrix = new Element[blockSize][blockSize][blockSize][blockSize];
@@ -142,6 +180,28 @@ public class MatrixTest {
 		
 	}
 
+	/**
+	 * Матрица из int вне кучи: в куче живут только IntElement, выдаваемые getCell
+	 */
+	public class DirectMatrix extends AbstractMatrix<IntElement> {
+		IntBuffer matrix;
+
+		public DirectMatrix(int dimension) {
+			super(dimension);
+			matrix = ByteBuffer.allocateDirect(dimension * dimension * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+
+		@Override
+		public IntElement getCell(int i, int j) {
+			return new IntElement(matrix.get(i * dimension + j));
+		}
+
+		@Override
+		public void setCell(int i, int j, IntElement element) {
+			matrix.put(i * dimension + j, element.intValue());
+		}
+	}
+
 	public static class IntElement extends Element {
 		int element;
 
@@ -209,4 +269,476 @@ public class MatrixTest {
 		System.out.println(String.format("Blocked matrix %d ms",res1));
 		System.out.println(String.format("Result: %d < %d",res1, res2));
 	}
-}
\ No newline at end of file
+	
+	@Test
+	public void primitive() throws MatrixTest.AbstractMatrix.MatrixException {
+		System.out.println("\n\n	MatrixTest (primitive):");
+		AbstractMatrix<IntElement> blocked = new BlockedMatrix<IntElement>(COMPARE_DIMENSION);
+		AbstractMatrix<IntElement> usual = new Matrix<IntElement>(COMPARE_DIMENSION);
+		AbstractMatrix<IntElement> result = new Matrix<IntElement>(COMPARE_DIMENSION);
+		fillMatrix(blocked);
+		fillMatrix(usual);
+		fillMatrix(result);
+		long blockedTime = blocked.multiply(blocked, result);
+		long usualTime = usual.multiply(usual, result);
+
+		IntMatrix matrix = new IntMatrix(COMPARE_DIMENSION);
+		IntMatrix intResult = new IntMatrix(COMPARE_DIMENSION);
+		for (int i = 0; i < COMPARE_DIMENSION; ++i) {
+			for (int j = 0; j < COMPARE_DIMENSION; ++j) {
+				matrix.setCell(i, j, i * COMPARE_DIMENSION + j);
+			}
+		}
+		// первый прогон прогревает JIT
+		matrix.multiply(matrix, intResult);
+		long primitiveTime = matrix.multiply(matrix, intResult);
+		for (int i = 0; i < COMPARE_DIMENSION; ++i) {
+			for (int j = 0; j < COMPARE_DIMENSION; ++j) {
+				assertEquals(result.getCell(i, j).intValue(), intResult.getCell(i, j));
+			}
+		}
+
+		LongMatrix longMatrix = new LongMatrix(COMPARE_DIMENSION);
+		LongMatrix longResult = new LongMatrix(COMPARE_DIMENSION);
+		DoubleMatrix doubleMatrix = new DoubleMatrix(COMPARE_DIMENSION);
+		DoubleMatrix doubleResult = new DoubleMatrix(COMPARE_DIMENSION);
+		for (int i = 0; i < COMPARE_DIMENSION; ++i) {
+			for (int j = 0; j < COMPARE_DIMENSION; ++j) {
+				longMatrix.setCell(i, j, i - j);
+				doubleMatrix.setCell(i, j, i - j);
+			}
+		}
+		long longTime = longMatrix.multiply(longMatrix, longResult);
+		long doubleTime = doubleMatrix.multiply(doubleMatrix, doubleResult);
+		long expected;
+		for (int i = 0; i < COMPARE_DIMENSION; ++i) {
+			for (int j = 0; j < COMPARE_DIMENSION; ++j) {
+				expected = 0;
+				for (int k = 0; k < COMPARE_DIMENSION; ++k) {
+					expected += (long) (i - k) * (k - j);
+				}
+				assertEquals(expected, longResult.getCell(i, j));
+				assertEquals(expected, doubleResult.getCell(i, j), 0);
+			}
+		}
+
+		System.out.println(String.format("Normal matrix %d ms", usualTime));
+		System.out.println(String.format("Blocked matrix %d ms", blockedTime));
+		System.out.println(String.format("Int matrix %d ms (x%.1f to normal, x%.1f to blocked)", primitiveTime,
+				(double) usualTime / Math.max(1, primitiveTime), (double) blockedTime / Math.max(1, primitiveTime)));
+		System.out.println(String.format("Long matrix %d ms, double matrix %d ms", longTime, doubleTime));
+		System.out.println(String.format("Result: %d < %d", primitiveTime, Math.min(usualTime, blockedTime)));
+	}
+
+	@Test
+	public void tiled() {
+		System.out.println("\n\n	MatrixTest (tiled):");
+		int n = TILED_CHECK_DIMENSION;
+		IntMatrix intMatrix = new IntMatrix(n);
+		DoubleMatrix doubleMatrix = new DoubleMatrix(n);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				intMatrix.setCell(i, j, i * n + j);
+				doubleMatrix.setCell(i, j, 1.0 / (i + j + 1));
+			}
+		}
+		IntMatrix intExpected = new IntMatrix(n);
+		DoubleMatrix doubleExpected = new DoubleMatrix(n);
+		intMatrix.multiply(intMatrix, intExpected, NaiveKernel.INSTANCE);
+		doubleMatrix.multiply(doubleMatrix, doubleExpected, NaiveKernel.INSTANCE);
+		IntMatrix intResult = new IntMatrix(n);
+		DoubleMatrix doubleResult = new DoubleMatrix(n);
+		for (MatrixKernel kernel : new MatrixKernel[] { new TiledKernel(16, 64, false), new TiledKernel(32, 128, true),
+				new TiledKernel(64, 256, true), KernelTuner.getTunedKernel() }) {
+			intMatrix.multiply(intMatrix, intResult, kernel);
+			doubleMatrix.multiply(doubleMatrix, doubleResult, kernel);
+			for (int i = 0; i < n; ++i) {
+				for (int j = 0; j < n; ++j) {
+					assertEquals(intExpected.getCell(i, j), intResult.getCell(i, j));
+					// порядок сложения тот же, что и у простого ядра
+					assertEquals(doubleExpected.getCell(i, j), doubleResult.getCell(i, j), 0);
+				}
+			}
+		}
+
+		n = TILED_DIMENSION;
+		DoubleMatrix matrix = new DoubleMatrix(n);
+		DoubleMatrix result = new DoubleMatrix(n);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				matrix.setCell(i, j, i - j);
+			}
+		}
+		matrix.multiply(matrix, result, NaiveKernel.INSTANCE);
+		long naiveTime = matrix.multiply(matrix, result, NaiveKernel.INSTANCE);
+		matrix.multiply(matrix, result, KernelTuner.getTunedKernel());
+		long tiledTime = matrix.multiply(matrix, result, KernelTuner.getTunedKernel());
+		System.out.println(String.format("Naive i-j-k %d ms", naiveTime));
+		System.out.println(String.format("Tiled i-k-j (%s) %d ms", KernelTuner.getTunedKernel(), tiledTime));
+		System.out.println(String.format("Result: %d < %d", tiledTime, naiveTime));
+	}
+
+	@Test
+	public void strassen() {
+		int n = STRASSEN_CHECK_DIMENSION;
+		MatrixMultiplier multiplier = new MatrixMultiplier(new ForkJoinPool(), KernelTuner.getTunedKernel(), 32);
+		IntMatrix intMatrix = new IntMatrix(n);
+		LongMatrix longMatrix = new LongMatrix(n);
+		DoubleMatrix doubleMatrix = new DoubleMatrix(n);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				intMatrix.setCell(i, j, i * n + j);
+				longMatrix.setCell(i, j, i * n - j);
+				doubleMatrix.setCell(i, j, 1.0 / (i + j + 1));
+			}
+		}
+		IntMatrix intExpected = new IntMatrix(n);
+		IntMatrix intResult = new IntMatrix(n);
+		LongMatrix longExpected = new LongMatrix(n);
+		LongMatrix longResult = new LongMatrix(n);
+		DoubleMatrix doubleExpected = new DoubleMatrix(n);
+		DoubleMatrix doubleResult = new DoubleMatrix(n);
+		intMatrix.multiply(intMatrix, intExpected, NaiveKernel.INSTANCE);
+		longMatrix.multiply(longMatrix, longExpected, NaiveKernel.INSTANCE);
+		doubleMatrix.multiply(doubleMatrix, doubleExpected, NaiveKernel.INSTANCE);
+		intMatrix.multiply(intMatrix, intResult, multiplier);
+		longMatrix.multiply(longMatrix, longResult, multiplier);
+		doubleMatrix.multiply(doubleMatrix, doubleResult, multiplier);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				assertEquals(intExpected.getCell(i, j), intResult.getCell(i, j));
+				assertEquals(longExpected.getCell(i, j), longResult.getCell(i, j));
+				assertEquals(doubleExpected.getCell(i, j), doubleResult.getCell(i, j), 1e-9);
+			}
+		}
+	}
+
+	/**
+	 * Кривая масштабирования: от 1 до числа ядер потоков
+	 */
+	@Test
+	public void scaling() {
+		System.out.println("\n\n	MatrixTest (fork-join):");
+		int n = PARALLEL_DIMENSION;
+		DoubleMatrix matrix = new DoubleMatrix(n);
+		DoubleMatrix result = new DoubleMatrix(n);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				matrix.setCell(i, j, i - j);
+			}
+		}
+		int cores = Runtime.getRuntime().availableProcessors();
+		long single = 0;
+		long time = 0;
+		long strassenTime = 0;
+		for (int threads = 1; threads <= cores; ++threads) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			MatrixMultiplier multiplier = new MatrixMultiplier(pool, KernelTuner.getTunedKernel(), 0);
+			matrix.multiply(matrix, result, multiplier);
+			time = matrix.multiply(matrix, result, multiplier);
+			if (threads == 1) {
+				single = time;
+			}
+			multiplier = new MatrixMultiplier(pool, KernelTuner.getTunedKernel(), STRASSEN_THRESHOLD);
+			matrix.multiply(matrix, result, multiplier);
+			strassenTime = matrix.multiply(matrix, result, multiplier);
+			pool.shutdown();
+			System.out.println(String.format("%2d threads: tiled %d ms (x%.2f), Strassen %d ms", threads, time,
+					(double) single / Math.max(1, time), strassenTime));
+		}
+		System.out.println(String.format("Result: %d < %d", strassenTime, time));
+	}
+
+	@Test
+	public void vector() {
+		System.out.println("\n\n	MatrixTest (vector):");
+		if (!KernelTuner.isVectorAvailable()) {
+			System.out.println("jdk.incubator.vector is not available, skipped");
+			return;
+		}
+		TiledKernel tiled = KernelTuner.getTunedKernel();
+		MatrixKernel vector = KernelTuner.getBestKernel();
+		int n = TILED_CHECK_DIMENSION;
+		IntMatrix intMatrix = new IntMatrix(n);
+		LongMatrix longMatrix = new LongMatrix(n);
+		DoubleMatrix doubleMatrix = new DoubleMatrix(n);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				intMatrix.setCell(i, j, i * n + j);
+				longMatrix.setCell(i, j, (long) i * n * n - j);
+				doubleMatrix.setCell(i, j, 1.0 / (i + j + 1));
+			}
+		}
+		IntMatrix intExpected = new IntMatrix(n);
+		IntMatrix intResult = new IntMatrix(n);
+		LongMatrix longExpected = new LongMatrix(n);
+		LongMatrix longResult = new LongMatrix(n);
+		DoubleMatrix doubleExpected = new DoubleMatrix(n);
+		DoubleMatrix doubleResult = new DoubleMatrix(n);
+		intMatrix.multiply(intMatrix, intExpected, tiled);
+		longMatrix.multiply(longMatrix, longExpected, tiled);
+		doubleMatrix.multiply(doubleMatrix, doubleExpected, tiled);
+		intMatrix.multiply(intMatrix, intResult, vector);
+		longMatrix.multiply(longMatrix, longResult, vector);
+		doubleMatrix.multiply(doubleMatrix, doubleResult, vector);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				assertEquals(intExpected.getCell(i, j), intResult.getCell(i, j));
+				assertEquals(longExpected.getCell(i, j), longResult.getCell(i, j));
+				assertEquals(doubleExpected.getCell(i, j), doubleResult.getCell(i, j),
+						Math.abs(doubleExpected.getCell(i, j)) * 1e-12);
+			}
+		}
+
+		n = TILED_DIMENSION;
+		DoubleMatrix matrix = new DoubleMatrix(n);
+		DoubleMatrix result = new DoubleMatrix(n);
+		IntMatrix ints = new IntMatrix(n);
+		IntMatrix intsResult = new IntMatrix(n);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				matrix.setCell(i, j, i - j);
+				ints.setCell(i, j, i - j);
+			}
+		}
+		matrix.multiply(matrix, result, tiled);
+		long tiledTime = matrix.multiply(matrix, result, tiled);
+		matrix.multiply(matrix, result, vector);
+		long vectorTime = matrix.multiply(matrix, result, vector);
+		ints.multiply(ints, intsResult, tiled);
+		long intTiledTime = ints.multiply(ints, intsResult, tiled);
+		ints.multiply(ints, intsResult, vector);
+		long intVectorTime = ints.multiply(ints, intsResult, vector);
+		System.out.println(String.format("Scalar (%s): double %d ms, int %d ms", tiled, tiledTime, intTiledTime));
+		System.out.println(String.format("Vector (%s): double %d ms, int %d ms", vector, vectorTime, intVectorTime));
+		System.out.println(String.format("Result: %d < %d", vectorTime, tiledTime));
+	}
+
+	@Test
+	public void offHeap() throws MatrixTest.AbstractMatrix.MatrixException, IOException {
+		System.out.println("\n\n	MatrixTest (off-heap):");
+		int n = STRASSEN_CHECK_DIMENSION;
+		AbstractMatrix<IntElement> direct = new DirectMatrix(n);
+		AbstractMatrix<IntElement> directResult = new DirectMatrix(n);
+		AbstractMatrix<IntElement> usual = new Matrix<IntElement>(n);
+		AbstractMatrix<IntElement> usualResult = new Matrix<IntElement>(n);
+		fillMatrix(direct);
+		fillMatrix(usual);
+		fillMatrix(directResult);
+		fillMatrix(usualResult);
+		direct.multiply(direct, directResult);
+		usual.multiply(usual, usualResult);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				assertEquals(usualResult.getCell(i, j).intValue(), directResult.getCell(i, j).intValue());
+			}
+		}
+
+		n = TILED_CHECK_DIMENSION;
+		OffHeapMatrix matrix = OffHeapMatrix.allocate(n);
+		OffHeapMatrix result = OffHeapMatrix.allocate(n);
+		DoubleMatrix heap = new DoubleMatrix(n);
+		DoubleMatrix heapResult = new DoubleMatrix(n);
+		matrix.setTile(OFF_HEAP_TILE);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				matrix.setCell(i, j, i - j);
+				heap.setCell(i, j, i - j);
+			}
+		}
+		matrix.multiply(matrix, result);
+		heap.multiply(heap, heapResult, NaiveKernel.INSTANCE);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				// целые суммы считаются в double точно
+				assertEquals(heapResult.getCell(i, j), result.getCell(i, j), 0);
+			}
+		}
+
+		n = MAPPED_DIMENSION;
+		File left = File.createTempFile("left", ".matrix");
+		File right = File.createTempFile("right", ".matrix");
+		File product = File.createTempFile("product", ".matrix");
+		try {
+			Runtime runtime = Runtime.getRuntime();
+			System.gc();
+			long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+			OffHeapMatrix mappedLeft = OffHeapMatrix.map(left, n);
+			OffHeapMatrix mappedRight = OffHeapMatrix.map(right, n);
+			OffHeapMatrix mappedProduct = OffHeapMatrix.map(product, n);
+			System.gc();
+			long heapGrowth = runtime.totalMemory() - runtime.freeMemory() - heapBefore;
+			for (int i = 0; i < n; ++i) {
+				for (int j = 0; j < n; ++j) {
+					mappedLeft.setCell(i, j, i - j);
+					mappedRight.setCell(i, j, 1.0 / (i + j + 1));
+				}
+			}
+			long time = mappedLeft.multiply(mappedRight, mappedProduct);
+			mappedProduct.force();
+			double cell = mappedProduct.getCell(n - 1, 0);
+			mappedLeft.close();
+			mappedRight.close();
+			mappedProduct.close();
+			assertEquals((long) n * n * 8, product.length());
+			OffHeapMatrix reopened = OffHeapMatrix.map(product, n);
+			assertEquals(cell, reopened.getCell(n - 1, 0), 0);
+			reopened.close();
+			System.out.println(String.format("Mapped %d x %d (%d MB in 3 files, tile %d): %d ms",
+					n, n, 3L * n * n * 8 >> 20, mappedLeft.getTile(), time));
+			System.out.println(String.format("Heap growth: %d KB", heapGrowth >> 10));
+			System.out.println(String.format("Result: %d < %d", heapGrowth >> 10, 3L * n * n * 8 >> 10));
+		} finally {
+			left.delete();
+			right.delete();
+			product.delete();
+		}
+	}
+
+	@Test
+	public void blocked() {
+		System.out.println("\n\n	MatrixTest (blocked layout):");
+		int m = TILED_CHECK_DIMENSION;
+		int k = 200;
+		int n = 170;
+		BlockedDoubleMatrix left = new BlockedDoubleMatrix(m, k, BLOCK_SIZE, true);
+		BlockedDoubleMatrix right = new BlockedDoubleMatrix(k, n, BLOCK_SIZE, false);
+		BlockedDoubleMatrix result = new BlockedDoubleMatrix(m, n, BLOCK_SIZE, true);
+		for (int i = 0; i < m; ++i) {
+			for (int j = 0; j < k; ++j) {
+				left.setCell(i, j, i - j);
+			}
+		}
+		for (int i = 0; i < k; ++i) {
+			for (int j = 0; j < n; ++j) {
+				right.setCell(i, j, i * j % 7);
+			}
+		}
+		left.multiply(right, result);
+		double expected;
+		for (int i = 0; i < m; ++i) {
+			for (int j = 0; j < n; ++j) {
+				expected = 0;
+				for (int l = 0; l < k; ++l) {
+					expected += left.getCell(i, l) * right.getCell(l, j);
+				}
+				// целые суммы считаются в double точно
+				assertEquals(expected, result.getCell(i, j), 0);
+			}
+		}
+
+		n = BLOCKED_DIMENSION;
+		DoubleMatrix plain = new DoubleMatrix(n);
+		DoubleMatrix plainResult = new DoubleMatrix(n);
+		BlockedDoubleMatrix byRows = new BlockedDoubleMatrix(n, n, BlockedDoubleMatrix.DEFAULT_BLOCK_SIZE, false);
+		BlockedDoubleMatrix byRowsResult = new BlockedDoubleMatrix(n, n, BlockedDoubleMatrix.DEFAULT_BLOCK_SIZE, false);
+		BlockedDoubleMatrix morton = new BlockedDoubleMatrix(n, n);
+		BlockedDoubleMatrix mortonResult = new BlockedDoubleMatrix(n, n);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				plain.setCell(i, j, 1.0 / (i + j + 1));
+				byRows.setCell(i, j, 1.0 / (i + j + 1));
+				morton.setCell(i, j, 1.0 / (i + j + 1));
+			}
+		}
+		plain.multiply(plain, plainResult);
+		long plainTime = plain.multiply(plain, plainResult);
+		byRows.multiply(byRows, byRowsResult);
+		long byRowsTime = byRows.multiply(byRows, byRowsResult);
+		morton.multiply(morton, mortonResult);
+		long mortonTime = morton.multiply(morton, mortonResult);
+		for (int i = 0; i < n; i += 7) {
+			for (int j = 0; j < n; j += 7) {
+				assertEquals(plainResult.getCell(i, j), mortonResult.getCell(i, j), plainResult.getCell(i, j) * 1e-12);
+			}
+		}
+		System.out.println(String.format("%d x %d: row-major %d ms, blocks by rows %d ms, Morton blocks %d ms",
+				n, n, plainTime, byRowsTime, mortonTime));
+		System.out.println(String.format("Result: %d < %d", mortonTime, plainTime));
+	}
+
+	/**
+	 * Плотная матрица с долей density ненулевых целых элементов
+	 */
+	private static DoubleMatrix getSparseDense(int n, double density, Random random) {
+		DoubleMatrix dense = new DoubleMatrix(n);
+		for (int l = 0; l < n * n * density; ++l) {
+			dense.setCell(random.nextInt(n), random.nextInt(n), random.nextInt(19) - 9);
+		}
+		return dense;
+	}
+
+	@Test
+	public void sparse() {
+		System.out.println("\n\n	MatrixTest (sparse):");
+		Random random = new Random(42);
+		int n = TILED_CHECK_DIMENSION;
+		DoubleMatrix left = getSparseDense(n, SPARSE_DENSITY * 10, random);
+		DoubleMatrix right = getSparseDense(n, SPARSE_DENSITY * 10, random);
+		CsrMatrix csr = CsrMatrix.of(left);
+		CscMatrix csc = CscMatrix.of(right);
+		DoubleMatrix expected = new DoubleMatrix(n);
+		left.multiply(right, expected, NaiveKernel.INSTANCE);
+		// целые суммы считаются в double точно
+		DoubleMatrix dense = csr.toDense();
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				assertEquals(left.getCell(i, j), dense.getCell(i, j), 0);
+				assertEquals(left.getCell(i, j), csr.getCell(i, j), 0);
+				assertEquals(right.getCell(i, j), csc.getCell(i, j), 0);
+			}
+		}
+		DoubleMatrix result = new DoubleMatrix(n);
+		csr.multiply(right, result);
+		CsrMatrix product = csr.multiply(csc.toCsr());
+		CscMatrix cscProduct = csr.toCsc().multiply(csc);
+		for (int i = 0; i < n; ++i) {
+			for (int j = 0; j < n; ++j) {
+				assertEquals(expected.getCell(i, j), result.getCell(i, j), 0);
+				assertEquals(expected.getCell(i, j), product.getCell(i, j), 0);
+				assertEquals(expected.getCell(i, j), cscProduct.getCell(i, j), 0);
+			}
+		}
+		double[] vector = new double[n];
+		for (int j = 0; j < n; ++j) {
+			vector[j] = j % 5 - 2;
+		}
+		double[] byRows = new double[n];
+		double[] byColumns = new double[n];
+		csr.multiply(vector, byRows);
+		csr.toCsc().multiply(vector, byColumns);
+		double sum;
+		for (int i = 0; i < n; ++i) {
+			sum = 0;
+			for (int j = 0; j < n; ++j) {
+				sum += left.getCell(i, j) * vector[j];
+			}
+			assertEquals(sum, byRows[i], 0);
+			assertEquals(sum, byColumns[i], 0);
+		}
+		// повторы складываются, нули не хранятся
+		CsrMatrix triplets = CsrMatrix.of(2, 3, new int[] { 1, 0, 1, 1 }, new int[] { 2, 1, 2, 0 },
+				new double[] { 1, 5, 2, 0 });
+		assertEquals(2, triplets.getNonzeros());
+		assertEquals(3, triplets.getCell(1, 2), 0);
+		assertEquals(5, triplets.getCell(0, 1), 0);
+
+		n = PARALLEL_DIMENSION;
+		left = getSparseDense(n, SPARSE_DENSITY, random);
+		right = getSparseDense(n, SPARSE_DENSITY, random);
+		csr = CsrMatrix.of(left);
+		CsrMatrix csrRight = CsrMatrix.of(right);
+		result = new DoubleMatrix(n);
+		left.multiply(right, result);
+		long denseTime = left.multiply(right, result);
+		csr.multiply(right, result);
+		long sparseDenseTime = csr.multiply(right, result);
+		csr.multiply(csrRight);
+		long startTime = System.currentTimeMillis();
+		product = csr.multiply(csrRight);
+		long sparseTime = System.currentTimeMillis() - startTime;
+		System.out.println(String.format("%d x %d, %d nonzeros: dense %d ms, sparse x dense %d ms, sparse x sparse %d ms (%d nonzeros)",
+				n, n, csr.getNonzeros(), denseTime, sparseDenseTime, sparseTime, product.getNonzeros()));
+		System.out.println(String.format("Result: %d < %d", sparseTime, denseTime));
+	}
+}
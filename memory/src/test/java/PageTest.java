@@ -1,3 +1,5 @@
+import java.util.Random;
+
 import org.junit.Test;
 
 
@@ -5,20 +7,30 @@ import org.junit.Test;
 public class PageTest {
 	
 	private static final int ITERATIONS = 33554432;
+	/**
+	 * индексы считаются заранее и идут по кругу: Math.random() в цикле стоил дороже обращения к памяти
+	 */
+	private static final int INDEXES = 1 << 20;
 	
 	@Test
 	public void pageTest(){
 		System.out.println("\n\n	PageTest:");
-		int maxMemory = (int) Runtime.getRuntime().freeMemory() - 500; // сколько памяти доступно jvm, чуть уменьшил что бы не нарваться на gc, вдруг  Math.random(), где-то память выделяет
+		int maxMemory = (int) Math.min(Runtime.getRuntime().freeMemory() - 500 - 2 * 4 * INDEXES, Integer.MAX_VALUE - ITERATIONS); // сколько памяти доступно jvm, чуть уменьшил что бы не нарваться на gc, и место под индексы
+		int[] successive = new int[INDEXES];
+		int[] unsuccessive = new int[INDEXES];
+		Random random = new Random(42);
+		for (int i = 0; i < INDEXES; ++i) {
+			successive[i] = i % maxMemory;
+			unsuccessive[i] = random.nextInt(maxMemory);
+		}
 		byte[] memory = new byte[maxMemory];
 		long startTime, endTime;
 		int honesty;
 		
 		startTime = System.currentTimeMillis();
 		for(int i = 0; i < ITERATIONS; ++i){
-			honesty = i%maxMemory;// что бы избежать оптимизации неиспользуемой переменной
-			memory[honesty] = (byte) i;
-			honesty = (int) (Math.random() * maxMemory);// для чистоты эксперимента
+			honesty = successive[i & (INDEXES - 1)] + (i / INDEXES) * INDEXES;// подряд по всей памяти
+			memory[honesty % maxMemory] = (byte) i;
 		}
 		endTime = System.currentTimeMillis();
 		long result1 = endTime - startTime;
@@ -26,9 +38,8 @@ public class PageTest {
 		
 		startTime = System.currentTimeMillis();
 		for(int i = 0; i < ITERATIONS; ++i){
-			honesty = (int) (Math.random() * maxMemory);
-			memory[honesty] = (byte) i;
-			honesty = i%maxMemory;
+			honesty = unsuccessive[i & (INDEXES - 1)] + (i / INDEXES) * INDEXES;// та же арифметика, что и подряд
+			memory[honesty % maxMemory] = (byte) i;
 		}
 		endTime = System.currentTimeMillis();
 		long result2 = endTime - startTime;
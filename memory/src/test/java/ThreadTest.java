@@ -65,6 +65,7 @@ public class ThreadTest {
 			threads.add(thread);
 		}
 		threadPool.invokeAll(threads);
+		threadPool.shutdown();
 		long threadsEndTime = System.currentTimeMillis();
 
 		System.out.println("Threads");
@@ -73,14 +74,23 @@ public class ThreadTest {
 
 		ForkJoinPool forkPool = new ForkJoinPool(PROCESS_NUM);
 		long forkStartTime = System.currentTimeMillis();
+		final List<RecursiveAction> actions = Lists.newArrayList();
 		for (int i = 0; i < PROCESS_NUM; ++i) {
-			forkPool.invoke(new RecursiveAction() {// may be invoked by pool only once -> create new instance 
+			actions.add(new RecursiveAction() {// may be invoked by pool only once -> create new instance 
 				@Override
 				protected void compute() {
 					action();
 				}
 			});
 		}
+		// все действия сразу, а не по одному invoke - иначе они выполняются последовательно
+		forkPool.invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll(actions);
+			}
+		});
+		forkPool.shutdown();
 		long forkEndTime = System.currentTimeMillis();
 
 		System.out.println("Forks");
@@ -1,4 +1,4 @@
-﻿import java.io.BufferedReader;
+import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -14,6 +14,17 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.Lists;
 import com.google.common.collect.TreeMultiset;
 
 public class Reader {
@@ -25,11 +36,29 @@ public class Reader {
 	private static final String NO_MEM = "Память кончилась. ";
 	private static final String EXC_PATTERN = "Ошибка: \'%s\'\nСтек трейс:\n \"%s\" ";
 	private static final String VIRTUAL_EXC_PATTERN = "Ошибка виртуальной машины: \'%s\' ";
+	private static final String INTERRUPTED = "Обход прерван. ";
+	
+	/**
+	 * файлов в очереди на поток, дальше обход ждет обработчиков 
+	 */
+	private static final int QUEUE_PER_THREAD = 64;
+	/**
+	 * как часто ожидающие очереди проверяют, не упал ли другой поток 
+	 */
+	private static final long POLL_MS = 10;
+	/**
+	 * конец очереди, по одному на обработчик 
+	 */
+	private static final Path END = Paths.get("");
 	
 	public static void main(String[] args) {
 		Reader reader = new Reader();
 		try {
-			reader.findSafe(args[0]);
+			if (args.length > 1) {
+				reader.findParallel(args[0], Integer.parseInt(args[1]));
+			} else {
+				reader.findSafe(args[0]);
+			}
 		} catch (OutOfMemoryError e) {
 			log(e, NO_MEM);
 		} finally {
@@ -58,7 +87,7 @@ public class Reader {
 				public FileVisitResult visitFile(Path file,
 						BasicFileAttributes attrs) {
 					try {
-						processFile(file.toFile());
+						processFile(file.toFile(), numbers);
 					} catch (Exception e) {
 						log(e, BAD_FILE);
 					}
@@ -70,11 +99,126 @@ public class Reader {
 		}
 	}
 
+	/**
+	 * То же, что {@link #findSafe(String)}, но файлы разбирают threads потоков пула ForkJoinPool:
+	 * обход кладет файлы в ограниченную очередь, каждый поток копит числа в своем списке,
+	 * списки сливаются в общий контейнер в конце (и при падении тоже - найденное не теряется).
+	 * Ошибка в файле, как и раньше, только пишется в лог; Error (нехватка памяти) останавливает
+	 * обход и все потоки и пробрасывается дальше.
+	 * @param directory
+	 * @param threads - сколько файлов разбирается одновременно
+	 */
+	public void findParallel(String directory, int threads) {
+		Path path = Paths.get(directory);
+		if(!path.toFile().isDirectory()) {
+			log(String.format(NOT_DIR_PATTERN, directory));
+			return;
+		}
+		final BlockingQueue<Path> queue = new ArrayBlockingQueue<Path>(threads * QUEUE_PER_THREAD);
+		final AtomicReference<Error> error = new AtomicReference<Error>();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		List<ForkJoinTask<List<DeliriumInteger>>> workers = Lists.newArrayList();
+		for (int i = 0; i < threads; ++i) {
+			workers.add(pool.submit(new Worker(queue, error)));
+		}
+		try {
+			try {
+				Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(Path file,
+							BasicFileAttributes attrs) {
+						return put(queue, file, error) ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+					}
+				});
+			} catch (IOException e) {
+				log(String.format(ACCESS_DIR_PATTERN, directory));
+			}
+			for (int i = 0; i < threads; ++i) {
+				if (!put(queue, END, error)) {
+					// обработчик упал или обход прерван: оставшиеся файлы уже не нужны,
+					// после очистки место для концов очереди есть (кладет в нее только обход)
+					queue.clear();
+					for (int j = 0; j < threads; ++j) {
+						queue.offer(END);
+					}
+					break;
+				}
+			}
+		} finally {
+			for (ForkJoinTask<List<DeliriumInteger>> worker : workers) {
+				numbers.addAll(worker.join());
+			}
+			pool.shutdown();
+		}
+		if (error.get() != null) {
+			throw error.get();
+		}
+	}
+	
+	/**
+	 * Кладет файл в очередь, пока никто из обработчиков не упал
+	 * @return false - обработчик упал или поток прерван, обход надо прекратить
+	 */
+	private static boolean put(BlockingQueue<Path> queue, Path file, AtomicReference<Error> error) {
+		try {
+			while (error.get() == null) {
+				if (queue.offer(file, POLL_MS, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+		} catch (InterruptedException e) {
+			log(INTERRUPTED);
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+	
+	/**
+	 * Разбирает файлы из очереди до {@link Reader#END} или до чужой ошибки 
+	 */
+	@SuppressWarnings("serial")
+	private class Worker extends RecursiveTask<List<DeliriumInteger>> {
+		private final BlockingQueue<Path> queue;
+		private final AtomicReference<Error> error;
+		
+		Worker(BlockingQueue<Path> queue, AtomicReference<Error> error) {
+			this.queue = queue;
+			this.error = error;
+		}
+
+		@Override
+		protected List<DeliriumInteger> compute() {
+			List<DeliriumInteger> found = Lists.newArrayList();
+			Path file;
+			try {
+				while (error.get() == null) {
+					file = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+					if (file == END) {
+						break;
+					}
+					if (file == null) {
+						continue;
+					}
+					try {
+						processFile(file.toFile(), found);
+					} catch (Exception e) {
+						log(e, BAD_FILE);
+					}
+				}
+			} catch (InterruptedException e) {
+				log(INTERRUPTED);
+			} catch (Error e) {
+				error.compareAndSet(null, e);
+			}
+			return found;
+		}
+	}
+
 	/**
 	 * обрабатывает очередную строчку файла 
 	 * @return
 	 */
-	private void processLine(String line) {
+	private void processLine(String line, Collection<DeliriumInteger> numbers) {
 		int i = 0; 
 		while(i<line.length() && Character.isDigit(line.charAt(i))){
 			i++;
@@ -88,11 +232,11 @@ public class Reader {
 	 * обрабатывает очередной файл 
 	 * @throws IOException - если файл не открылся или не удалось получить очередную строчку 
 	 */
-	private void processFile(File file) throws IOException {
+	private void processFile(File file, Collection<DeliriumInteger> numbers) throws IOException {
 		BufferedReader curFileReader = new DeliriumReader(new FileReader(file));
 		String line;
 		while((line = curFileReader.readLine()) != null){
-			processLine(line);
+			processLine(line, numbers);
 		}
 	}
 	